@@ -41,6 +41,13 @@
 #endif
 #include "external.h"
 #include "kaffe_jni.h"
+#include "exception.h"
+#include "stackTrace.h"
+#include "classArchive.h"
+#include "verifier/verify-cache.h"
+#include "verifier/verify-pool.h"
+#include "verifier/verify.h"
+#include "stats.h"
 
 #if defined(HAVE_GETTEXT)
 #include <libintl.h>
@@ -840,6 +847,139 @@ options(char** argv, int argc)
 		else if (strcmp(argv[i], "-nodeadlock") == 0) {
 			KaffeVM_setDeadlockDetection(0);
 		}
+		else if (strcmp(argv[i], "-Xfastthrow") == 0) {
+			char *end;
+			long threshold;
+
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xfastthrow option requires "
+					"a throw count.\n"));
+				exit(EXIT_FAILURE);
+			}
+			threshold = strtol(argv[i], &end, 10);
+			if (*end != '\0' || threshold < 0) {
+				fprintf(stderr,
+					"%s", _("Error: -Xfastthrow requires a "
+					"non-negative integer.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setFastThrowThreshold((jint)threshold);
+		}
+		else if (strcmp(argv[i], "-Xsample") == 0) {
+			char *end;
+			long hz;
+
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xsample option requires "
+					"a sampling rate.\n"));
+				exit(EXIT_FAILURE);
+			}
+			hz = strtol(argv[i], &end, 10);
+			if (*end != '\0' || hz <= 0 || hz > 1000000) {
+				fprintf(stderr,
+					"%s", _("Error: -Xsample requires a "
+					"rate between 1 and 1000000.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setSampleRate((int)hz);
+		}
+		else if (strcmp(argv[i], "-Xsample_file") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xsample_file option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setSampleFile(argv[i]);
+		}
+		else if (strcmp(argv[i], "-Xallocsample") == 0) {
+			char *end;
+			long long interval;
+
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xallocsample option requires "
+					"a number of bytes.\n"));
+				exit(EXIT_FAILURE);
+			}
+			interval = strtoll(argv[i], &end, 10);
+			if (*end != '\0' || interval <= 0) {
+				fprintf(stderr,
+					"%s", _("Error: -Xallocsample requires a "
+					"positive integer.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setAllocSampleInterval((jlong)interval);
+		}
+		else if (strcmp(argv[i], "-Xallocsample_file") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xallocsample_file option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setAllocSiteFile(argv[i]);
+		}
+		else if (strcmp(argv[i], "-Xclassarchive") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xclassarchive option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setClassArchive(argv[i]);
+		}
+		else if (strcmp(argv[i], "-Xclassarchive_dump") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xclassarchive_dump option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setClassArchiveDump(argv[i]);
+		}
+		else if (strcmp(argv[i], "-Xverifycache") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xverifycache option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setVerifyCache(argv[i]);
+		}
+		else if (strcmp(argv[i], "-Xverifythreads") == 0) {
+			char *end;
+			long threads;
+
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -Xverifythreads option requires "
+					"a number of threads.\n"));
+				exit(EXIT_FAILURE);
+			}
+			threads = strtol(argv[i], &end, 10);
+			if (*end != '\0' || threads < 0 || threads > 64) {
+				fprintf(stderr,
+					"%s", _("Error: -Xverifythreads requires a "
+					"number between 0 and 64.\n"));
+				exit(EXIT_FAILURE);
+			}
+			KaffeVM_setVerifyThreads((int)threads);
+		}
+		else if (strcmp(argv[i], "-Xlazyverify") == 0) {
+			KaffeVM_setLazyVerify(true);
+		}
 #if defined(KAFFE_STATS)
                 else if (strcmp(argv[i], "-vmstats") == 0) {
 			extern void statsSetMaskStr(char *);
@@ -852,6 +992,36 @@ options(char** argv, int argc)
                         }
                         statsSetMaskStr(argv[i]);
                 }
+		else if (strcmp(argv[i], "-vmstats_file") == 0) {
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -vmstats_file option requires "
+					"a file name.\n"));
+				exit(EXIT_FAILURE);
+			}
+			statsSetExportFile(argv[i]);
+		}
+		else if (strcmp(argv[i], "-vmstats_interval") == 0) {
+			char *end;
+			long ms;
+
+			i++;
+			if (argv[i] == 0) { /* forgot second arg */
+				fprintf(stderr,
+					"%s", _("Error: -vmstats_interval option requires "
+					"a number of milliseconds.\n"));
+				exit(EXIT_FAILURE);
+			}
+			ms = strtol(argv[i], &end, 10);
+			if (*end != '\0' || ms <= 0 || ms > 86400000) {
+				fprintf(stderr,
+					"%s", _("Error: -vmstats_interval requires a "
+					"value between 1 and 86400000.\n"));
+				exit(EXIT_FAILURE);
+			}
+			statsSetExportInterval((int)ms);
+		}
 #endif
 #if defined(KAFFE_VMDEBUG)
                 else if (strcmp(argv[i], "-vmdebug") == 0) {
@@ -946,7 +1116,18 @@ usage(void)
 			  "	-verbosejit		 Print message during JIT code generation\n"
 			  "	-verbosemem		 Print detailed memory allocation statistics\n"
 			  "	-verbosecall		 Print detailed call flow information\n"
-			  "	-nodeadlock		 Disable deadlock detection\n"));
+			  "	-nodeadlock		 Disable deadlock detection\n"
+			  "	-Xfastthrow <count>	 Throw stackless exceptions from VM-internal\n"
+			  "				 sites after <count> regular throws\n"
+			  "	-Xsample <hz>		 Sample Java stacks <hz> times per second of CPU time\n"
+			  "	-Xsample_file <file>	 Where to write the samples [Default: kaffe-samples.txt]\n"
+			  "	-Xallocsample <bytes>	 Record the allocation site once every <bytes> per thread\n"
+			  "	-Xallocsample_file <file> Where to write the allocation sites [Default: kaffe-allocs.txt]\n"
+			  "	-Xclassarchive <file>	 Load boot classes from the class archive <file>\n"
+			  "	-Xclassarchive_dump <file> Write the boot classes loaded to the class archive <file>\n"
+			  "	-Xverifycache <file>	 Skip verifying classes that passed in an earlier run\n"
+			  "	-Xverifythreads <n>	 Verify the methods of large classes on <n> more threads\n"
+			  "	-Xlazyverify		 Verify each method when it is first invoked\n"));
 #if defined(KAFFE_PROFILER)
 	fprintf(stderr, "%s", _("	-prof			 Enable profiling of Java methods\n"));
 #endif
@@ -972,6 +1153,9 @@ usage(void)
         fprintf(stderr, "%s", _("	-debug-fd <descriptor>	 Descriptor to send debug info to\n"));
 #ifdef KAFFE_STATS
         fprintf(stderr, "%s", _("	-vmstats <flag{,flag}>	 Print VM statistics.  Set flag=all for all\n"));
+        fprintf(stderr, "%s", _("	-vmstats_file <file>	 Export VM statistics to <file>, as JSON if it ends\n"
+				"				 in .json and as Prometheus text otherwise\n"
+				"	-vmstats_interval <ms>	 Rewrite the -vmstats_file every <ms> milliseconds\n"));
 #endif
 #if defined(USE_GMP)
         fprintf(stderr, "%s", _("	-Xnative-big-math	 Use GMP for faster, native bignum calculations\n"));
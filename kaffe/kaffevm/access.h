@@ -50,6 +50,10 @@
 #define	KFLAG_TRANSLATED	0x08
 #define	KFLAG_VERIFIED		0x10
 #define KFLAG_ANONYMOUS         0x20
+/* only for method: pass 3 verification is left for the first invocation */
+#define	KFLAG_VERIFY_PENDING	0x40
+/* only for method: and it failed, see verifyMethodLazily */
+#define	KFLAG_VERIFY_FAILED	0x80
 
 typedef enum {
 	ACC_TYPE_CLASS,
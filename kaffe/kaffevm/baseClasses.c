@@ -36,6 +36,7 @@
 #include "gc.h"
 #include "md.h"
 #include "gcj/gcj.h"
+#include "jsignal.h"
 #include "xprofiler.h"
 #if defined(KAFFE_FEEDBACK)
 #include "feedback.h"
@@ -43,8 +44,12 @@
 #include "debugFile.h"
 #include "fileSections.h"
 #include "verify-type.h"
+#include "verify-cache.h"
+#include "verify-pool.h"
 #include "jar.h"
 #include "jni_funcs.h"
+#include "stackTrace.h"
+#include "stats.h"
 
 Utf8Const* init_name;
 Utf8Const* final_name;
@@ -170,6 +175,18 @@ getStringClass(void)
   return StringClass;
 }
 
+/*
+ * SIGQUIT asks both the statistics exporter and the sampling profiler
+ * for a report.  A signal has only one handler, so this one owns it
+ * and each of them only sets a flag for its daemon.
+ */
+static void
+dumpRequestHandler(SIGNAL_ARGS(sig UNUSED, ctx UNUSED))
+{
+	statsRequestDump();
+	KaffeVM_requestSampleDump();
+}
+
 /*
  * Initialise the machine.
  *
@@ -180,6 +197,8 @@ initialiseKaffe(void)
 {
         /* Set default thread stack size if not set */
 	int threadStackSize;
+	bool exporting;
+	bool sampling;
 
 	/* Machine specific initialisation first */
 #if defined(INIT_MD)
@@ -303,6 +322,13 @@ initialiseKaffe(void)
 	/* Init stuff for the java security model */
 	initialiseSecurity();
 
+	/* Start the statistics exporter and sampling profiler if requested */
+	exporting = initStatsExport();
+	sampling = initSampling();
+	if (exporting || sampling) {
+		registerAsyncSignalHandler(SIGQUIT, dumpRequestHandler);
+	}
+
 	/* Now enable collector */
 	KGC_enable(main_collector);
 }
@@ -342,6 +368,8 @@ initBaseClasses(void)
 	/* Primitive types */
 	initTypes();
 	initVerifierPrimTypes();
+	initVerifyCache();
+	initVerifyPool();
 
 	loadStaticClass(&ObjectClass, OBJECTCLASS);
 	loadStaticClass(&SerialClass, SERIALCLASS);
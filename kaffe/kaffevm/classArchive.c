@@ -0,0 +1,555 @@
+/*
+ * classArchive.c
+ * Shared archive of the boot class files.
+ *
+ * A training run started with -Xclassarchive_dump records every class
+ * the bootstrap loader reads from a jar and writes them all to one file
+ * when it exits.  Later runs started with -Xclassarchive map that file
+ * read only and take the boot classes straight from the mapping, so
+ * they neither open nor index the boot jars and inflate nothing.  The
+ * mapped pages are shared by all the VMs using the archive.
+ *
+ * The archive holds class files, not parsed classes: classes, methods
+ * and constant pools live in the garbage collected heap and are full of
+ * pointers, so they are still built by readClass in each VM.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "debug.h"
+#include "config-std.h"
+#include "config-io.h"
+#include "config-mem.h"
+#include "gtypes.h"
+#include "files.h"
+#include "jsyscall.h"
+#include "kaffe/jmalloc.h"
+#include "kaffe_jni.h"
+#include "locks.h"
+#include "defs.h"
+#include "stats.h"
+#include "classpath.h"
+#include "classArchive.h"
+
+#define	CDA_MAGIC	"KAFFECDA"
+#define	CDA_VERSION	1
+
+/*
+ * The archive is written in the byte order of the VM that wrote it;
+ * the version word doubles as the byte order check.  All offsets are
+ * from the start of the file.
+ */
+typedef struct _cdaHeader {
+	char		magic[8];
+	uint32		version;
+	uint32		size;		/* of the whole file */
+	uint32		nsources;	/* boot class path entries */
+	uint32		sources;	/* offset of the cdaSources */
+	uint32		count;		/* classes in the table */
+	uint32		tableSize;	/* a power of two, over twice count */
+	uint32		table;		/* offset of the cdaClasses */
+	uint32		pad;
+} cdaHeader;
+
+/* A boot class path entry as it was when the archive was written */
+typedef struct _cdaSource {
+	uint32		path;
+	uint32		pad;
+	uint64		size;
+	int64		mtime;
+} cdaSource;
+
+/* A slot of the open addressed class table; name is 0 if it is free */
+typedef struct _cdaClass {
+	uint32		hash;
+	uint32		name;
+	uint32		data;
+	uint32		length;
+} cdaClass;
+
+/* A class recorded for the archive being dumped */
+typedef struct _cdaRecord {
+	struct _cdaRecord*	next;
+	cdaClass*		slot;	/* NULL if the name was seen before */
+	size_t			length;
+	char*			name;
+	unsigned char*		data;
+} cdaRecord;
+
+static const char*		archiveFile;
+static const char*		dumpFile;
+
+static const unsigned char*	archiveBase;
+static const cdaHeader*		archiveHeader;
+static const cdaSource*		archiveSources;
+static const cdaClass*		archiveTable;
+
+static iStaticLock		recordLock;
+static bool			recording;
+static cdaRecord*		records;
+static int			nrecords;
+
+static counter			archiveHits;
+
+void
+KaffeVM_setClassArchive(const char* file)
+{
+	archiveFile = file;
+}
+
+void
+KaffeVM_setClassArchiveDump(const char* file)
+{
+	dumpFile = file;
+}
+
+static uint32
+hashClassName(const char* name)
+{
+	uint32 h = 0;
+
+	while (*name != '\0') {
+		h = h * 31 + (unsigned char)*name++;
+	}
+	return (h);
+}
+
+static bool
+statSource(const char* path, uint64* size, int64* mtime)
+{
+	struct stat sbuf;
+
+	if (KSTAT(path, &sbuf) != 0) {
+		return (false);
+	}
+	*size = (uint64)sbuf.st_size;
+	*mtime = (int64)sbuf.st_mtime;
+	return (true);
+}
+
+/*
+ * Check the mapped archive: every offset must lie in the file, the
+ * table must hold as many classes as the header says, and every source
+ * must be unchanged since the archive was written.
+ */
+static const char*
+checkClassArchive(const unsigned char* base, size_t size)
+{
+	const cdaHeader* hdr;
+	const cdaSource* src;
+	const cdaClass* cls;
+	uint64 ssize;
+	int64 mtime;
+	uint32 used;
+	uint32 i;
+
+	hdr = (const cdaHeader*)base;
+	if (size < sizeof(cdaHeader)
+	    || memcmp(hdr->magic, CDA_MAGIC, sizeof(hdr->magic)) != 0
+	    || hdr->version != CDA_VERSION) {
+		return ("not a class archive of this VM");
+	}
+	if (hdr->size != size
+	    || hdr->sources > size
+	    || hdr->nsources > (size - hdr->sources) / sizeof(cdaSource)
+	    || hdr->table > size
+	    || hdr->tableSize > (size - hdr->table) / sizeof(cdaClass)
+	    || hdr->tableSize == 0
+	    || (hdr->tableSize & (hdr->tableSize - 1)) != 0
+	    || hdr->count >= hdr->tableSize
+	    || (hdr->sources & 7) != 0
+	    || (hdr->table & 7) != 0) {
+		return ("the archive is truncated or corrupt");
+	}
+
+	src = (const cdaSource*)(base + hdr->sources);
+	for (i = 0; i < hdr->nsources; i++) {
+		if (src[i].path >= size
+		    || memchr(base + src[i].path, '\0', size - src[i].path) == NULL) {
+			return ("the archive is truncated or corrupt");
+		}
+		if (!statSource((const char*)base + src[i].path, &ssize, &mtime)
+		    || ssize != src[i].size
+		    || mtime != src[i].mtime) {
+			return ("the boot class path has changed");
+		}
+	}
+
+	cls = (const cdaClass*)(base + hdr->table);
+	used = 0;
+	for (i = 0; i < hdr->tableSize; i++) {
+		if (cls[i].name == 0) {
+			continue;
+		}
+		used++;
+		if (cls[i].name >= size
+		    || memchr(base + cls[i].name, '\0', size - cls[i].name) == NULL
+		    || cls[i].data > size
+		    || cls[i].length > size - cls[i].data) {
+			return ("the archive is truncated or corrupt");
+		}
+	}
+
+	/* lookups probe until a free slot, so there must be one */
+	if (used != hdr->count) {
+		return ("the archive is truncated or corrupt");
+	}
+	return (NULL);
+}
+
+static void
+mapClassArchive(void)
+{
+	struct stat sbuf;
+	unsigned char* base;
+	const char* why;
+	size_t size;
+	int fd;
+	int rc;
+
+	rc = KOPEN(archiveFile, O_RDONLY|O_BINARY, 0, &fd);
+	if (rc != 0) {
+		why = SYS_ERROR(rc);
+		goto fail;
+	}
+	rc = KFSTAT(fd, &sbuf);
+	if (rc != 0) {
+		KCLOSE(fd);
+		why = SYS_ERROR(rc);
+		goto fail;
+	}
+	size = (size_t)sbuf.st_size;
+	if (size < sizeof(cdaHeader)) {
+		KCLOSE(fd);
+		why = "not a class archive of this VM";
+		goto fail;
+	}
+
+#if defined(HAVE_MMAP)
+	base = mmap(NULL, size, PROT_READ, MAP_SHARED, fd, 0);
+	KCLOSE(fd);
+	if (base == MAP_FAILED) {
+		why = SYS_ERROR(errno);
+		goto fail;
+	}
+#else
+	{
+		size_t pos;
+		ssize_t n;
+
+		/* Without mmap every VM keeps its own copy */
+		base = KMALLOC(size);
+		if (base == NULL) {
+			KCLOSE(fd);
+			why = "out of memory";
+			goto fail;
+		}
+		for (pos = 0; pos < size; pos += (size_t)n) {
+			rc = KREAD(fd, base + pos, size - pos, &n);
+			if (rc != 0 || n <= 0) {
+				KCLOSE(fd);
+				KFREE(base);
+				why = rc != 0 ? SYS_ERROR(rc) : "short read";
+				goto fail;
+			}
+		}
+		KCLOSE(fd);
+	}
+#endif
+
+	why = checkClassArchive(base, size);
+	if (why != NULL) {
+#if defined(HAVE_MMAP)
+		munmap(base, size);
+#else
+		KFREE(base);
+#endif
+		goto fail;
+	}
+
+	archiveHeader = (const cdaHeader*)base;
+	archiveSources = (const cdaSource*)(base + archiveHeader->sources);
+	archiveTable = (const cdaClass*)(base + archiveHeader->table);
+	archiveBase = base;
+
+DBG(INIT,
+	dprintf("Mapped class archive %s: %u classes\n",
+		archiveFile, (unsigned)archiveHeader->count);		);
+	return;
+
+fail:
+	/* A stale archive is expected after an upgrade; just load normally */
+	if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+		dprintf("Not using class archive %s: %s\n", archiveFile, why);
+	}
+}
+
+/*
+ * Insert a record into the table being built; owners says which record
+ * took each slot.  Returns false if the name is already there.
+ */
+static bool
+insertRecord(cdaClass* table, cdaRecord** owners, uint32 tableSize,
+	     cdaRecord* rec)
+{
+	uint32 hash;
+	uint32 slot;
+
+	hash = hashClassName(rec->name);
+	for (slot = hash & (tableSize - 1);
+	     owners[slot] != NULL;
+	     slot = (slot + 1) & (tableSize - 1)) {
+		if (table[slot].hash == hash
+		    && strcmp(owners[slot]->name, rec->name) == 0) {
+			return (false);
+		}
+	}
+	owners[slot] = rec;
+	table[slot].hash = hash;
+	table[slot].length = (uint32)rec->length;
+	rec->slot = &table[slot];
+	return (true);
+}
+
+/*
+ * Write the recorded classes, in the order they were loaded.  The file
+ * is written under a temporary name and renamed, so VMs mapping the old
+ * archive are not disturbed.  Called with recordLock held.
+ */
+static bool
+writeClassArchive(const char* file)
+{
+	static const char zeros[8];
+	char tmp[MAXPATHLEN];
+	cdaHeader hdr;
+	cdaSource* sources;
+	cdaClass* table;
+	cdaRecord** owners;
+	classpathEntry* ptr;
+	cdaRecord* rec;
+	cdaRecord* next;
+	uint32 tableSize;
+	uint32 nsources;
+	uint32 pos;
+	uint32 pad;
+	uint32 i;
+	FILE* fp;
+	bool ok;
+
+	/* records were pushed newest first */
+	rec = records;
+	records = NULL;
+	for (; rec != NULL; rec = next) {
+		next = rec->next;
+		rec->next = records;
+		records = rec;
+	}
+
+	nsources = 0;
+	for (ptr = classpath; ptr != NULL; ptr = ptr->next) {
+		nsources++;
+	}
+	tableSize = 16;
+	while (tableSize <= 2 * (uint32)nrecords) {
+		tableSize <<= 1;
+	}
+
+	ok = false;
+	fp = NULL;
+	sources = KMALLOC(sizeof(cdaSource) * (nsources + 1));
+	table = KMALLOC(sizeof(cdaClass) * tableSize);
+	owners = KMALLOC(sizeof(cdaRecord*) * tableSize);
+	if (sources == NULL || table == NULL || owners == NULL) {
+		goto done;
+	}
+
+	memset(&hdr, 0, sizeof(hdr));
+	memcpy(hdr.magic, CDA_MAGIC, sizeof(hdr.magic));
+	hdr.version = CDA_VERSION;
+	hdr.nsources = nsources;
+	hdr.sources = sizeof(cdaHeader);
+	hdr.tableSize = tableSize;
+	hdr.table = hdr.sources + nsources * sizeof(cdaSource);
+
+	/* Lay out the paths and names, then the class files */
+	pos = hdr.table + tableSize * sizeof(cdaClass);
+	for (i = 0, ptr = classpath; ptr != NULL; i++, ptr = ptr->next) {
+		if (!statSource(ptr->path, &sources[i].size, &sources[i].mtime)) {
+			goto done;
+		}
+		sources[i].path = pos;
+		pos += strlen(ptr->path) + 1;
+	}
+	for (rec = records; rec != NULL; rec = rec->next) {
+		if (insertRecord(table, owners, tableSize, rec)) {
+			rec->slot->name = pos;
+			pos += strlen(rec->name) + 1;
+			hdr.count++;
+		}
+	}
+	for (rec = records; rec != NULL; rec = rec->next) {
+		if (rec->slot != NULL) {
+			pos = (pos + 7) & ~7;
+			rec->slot->data = pos;
+			pos += rec->length;
+		}
+	}
+	hdr.size = pos;
+
+	snprintf(tmp, sizeof(tmp), "%s.tmp", file);
+	fp = fopen(tmp, "wb");
+	if (fp == NULL) {
+		goto done;
+	}
+	ok = fwrite(&hdr, sizeof(hdr), 1, fp) == 1
+	    && fwrite(sources, sizeof(cdaSource), nsources, fp) == nsources
+	    && fwrite(table, sizeof(cdaClass), tableSize, fp) == tableSize;
+	for (ptr = classpath; ok && ptr != NULL; ptr = ptr->next) {
+		ok = fwrite(ptr->path, 1, strlen(ptr->path) + 1, fp)
+		    == strlen(ptr->path) + 1;
+	}
+	for (rec = records; ok && rec != NULL; rec = rec->next) {
+		if (rec->slot != NULL) {
+			ok = fwrite(rec->name, 1, strlen(rec->name) + 1, fp)
+			    == strlen(rec->name) + 1;
+		}
+	}
+	for (rec = records; ok && rec != NULL; rec = rec->next) {
+		if (rec->slot != NULL) {
+			pad = rec->slot->data - (uint32)ftell(fp);
+			ok = fwrite(zeros, 1, pad, fp) == pad
+			    && fwrite(rec->data, 1, rec->length, fp) == rec->length;
+		}
+	}
+	ok = (fclose(fp) == 0) && ok;
+	if (ok && rename(tmp, file) != 0) {
+		ok = false;
+	}
+	if (!ok) {
+		remove(tmp);
+	}
+
+done:
+	if (sources != NULL) {
+		KFREE(sources);
+	}
+	if (table != NULL) {
+		KFREE(table);
+	}
+	if (owners != NULL) {
+		KFREE(owners);
+	}
+	return (ok);
+}
+
+static void
+writeClassArchiveAtExit(void)
+{
+	lockStaticMutex(&recordLock);
+	recording = false;
+	if (!writeClassArchive(dumpFile)) {
+		dprintf("Could not write class archive %s\n", dumpFile);
+	}
+	else if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+		dprintf("Wrote %d classes to class archive %s\n",
+			nrecords, dumpFile);
+	}
+	unlockStaticMutex(&recordLock);
+}
+
+void
+initClassArchive(void)
+{
+	if (archiveFile != NULL) {
+		mapClassArchive();
+	}
+	if (dumpFile != NULL) {
+		initStaticLock(&recordLock);
+		recording = true;
+		atexit(writeClassArchiveAtExit);
+	}
+}
+
+bool
+isClassArchiveMapped(void)
+{
+	return (archiveBase != NULL);
+}
+
+bool
+classArchiveMatches(void)
+{
+	classpathEntry* ptr;
+	uint32 i;
+
+	if (archiveBase == NULL) {
+		return (false);
+	}
+	for (i = 0, ptr = classpath; ptr != NULL; i++, ptr = ptr->next) {
+		if (i == archiveHeader->nsources
+		    || strcmp((const char*)archiveBase + archiveSources[i].path,
+			      ptr->path) != 0) {
+			return (false);
+		}
+	}
+	return (i == archiveHeader->nsources);
+}
+
+const unsigned char*
+lookupClassArchive(const char* cname, size_t* len)
+{
+	uint32 hash;
+	uint32 mask;
+	uint32 slot;
+
+	hash = hashClassName(cname);
+	mask = archiveHeader->tableSize - 1;
+	for (slot = hash & mask; archiveTable[slot].name != 0; slot = (slot + 1) & mask) {
+		if (archiveTable[slot].hash == hash
+		    && strcmp((const char*)archiveBase + archiveTable[slot].name, cname) == 0) {
+			hitCounter(&archiveHits, "classarchive-hits");
+			*len = archiveTable[slot].length;
+			return (archiveBase + archiveTable[slot].data);
+		}
+	}
+	return (NULL);
+}
+
+void
+recordClassArchive(const char* cname, const unsigned char* data, size_t len)
+{
+	cdaRecord* rec;
+	size_t nlen;
+
+	if (!recording) {
+		return;
+	}
+
+	nlen = strlen(cname) + 1;
+	rec = KMALLOC(sizeof(cdaRecord) + nlen + len);
+	if (rec == NULL) {
+		return;
+	}
+	rec->name = (char*)(rec + 1);
+	rec->data = (unsigned char*)rec->name + nlen;
+	rec->length = len;
+	memcpy(rec->name, cname, nlen);
+	memcpy(rec->data, data, len);
+
+	lockStaticMutex(&recordLock);
+	if (recording) {
+		rec->next = records;
+		records = rec;
+		nrecords++;
+		rec = NULL;
+	}
+	unlockStaticMutex(&recordLock);
+	if (rec != NULL) {
+		KFREE(rec);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * classArchive.h
+ * Shared archive of the boot class files.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#ifndef __classarchive_h
+#define __classarchive_h
+
+#include "gtypes.h"
+
+/*
+ * Map the archive in the given file when the VM starts.  Must be called
+ * before the VM is initialised.
+ */
+extern void KaffeVM_setClassArchive(const char* file);
+
+/*
+ * Record every class the bootstrap loader reads from a jar, and write
+ * them to the given archive file when the VM exits.  Must be called
+ * before the VM is initialised.
+ */
+extern void KaffeVM_setClassArchiveDump(const char* file);
+
+/*
+ * Map the archive and start recording, as asked for by the two calls
+ * above.  Called by initClasspath once the boot class path is known.
+ */
+extern void initClassArchive(void);
+
+/*
+ * True if an archive is mapped.
+ */
+extern bool isClassArchiveMapped(void);
+
+/*
+ * True if the archive was written with the current boot class path, or
+ * with one the current path is a prefix of.  Called with the classpath
+ * lock held whenever the class path has changed.
+ */
+extern bool classArchiveMatches(void);
+
+/*
+ * Find the class file of the named class ("java/lang/Object") in the
+ * archive.  The data is read only and lives as long as the VM does.
+ */
+extern const unsigned char* lookupClassArchive(const char* cname,
+					       size_t* len);
+
+/*
+ * Remember a class file read from a jar for the archive being dumped.
+ * Does nothing unless -Xclassarchive_dump was given.
+ */
+extern void recordClassArchive(const char* cname,
+			       const unsigned char* data,
+			       size_t len);
+
+#endif
@@ -62,7 +62,7 @@ static bool buildDispatchTable(Hjava_lang_Class*, errorInfo *info);
 static bool buildInterfaceDispatchTable(Hjava_lang_Class*, errorInfo *);
 static bool checkForAbstractMethods(Hjava_lang_Class* class, errorInfo *einfo);
 static bool prepareInterface(Hjava_lang_Class*, errorInfo*);
-static bool computeInterfaceImplementationIndex(Hjava_lang_Class*, errorInfo*);
+static bool buildInterfaceHash(Hjava_lang_Class*, errorInfo*);
 static bool allocStaticFields(Hjava_lang_Class*, errorInfo *einfo);
 static bool resolveObjectFields(Hjava_lang_Class*, errorInfo *einfo);
 static bool resolveStaticFields(Hjava_lang_Class*, errorInfo *einfo);
@@ -72,6 +72,10 @@ static parsed_signature_t *duplicateParsedSignature (parsed_signature_t *, error
 
 static struct Hjava_security_ProtectionDomain  *defaultProtectionDomain;
 
+#if defined(KAFFE_STATS)
+static counter classesLoaded;
+#endif
+
 
 void
 initialiseSecurity (void)
@@ -347,8 +351,7 @@ retry:
 				goto done;
 			}
 
-			success = computeInterfaceImplementationIndex(class,
-								      einfo);
+			success = buildInterfaceHash(class, einfo);
 		} else {
 			success = prepareInterface(class, einfo);
 		}
@@ -991,6 +994,7 @@ internalSetupClass(Hjava_lang_Class* cl, Utf8Const* name, int flags,
 	cl->interface_len = 0;
 	assert(cl->state < CSTATE_LOADED);
 	cl->state = CSTATE_LOADED;
+	hitCounter(&classesLoaded, "classes-loaded");
 	cl->loader = loader;
 	cl->this_index = this_index;
 	cl->inner_classes = NULL;
@@ -1996,6 +2000,147 @@ resolveStaticFields(Hjava_lang_Class* class, errorInfo *einfo)
 	return true;
 }
 
+/*
+ * The methods of a class that a subclass can override, hashed by name
+ * and signature, together with the method behind each slot of the
+ * class's dispatch table.  A subclass copies the index of its
+ * superclass and adds its own methods, so that finding the dispatch
+ * table index of each of its methods does not walk the methods of all
+ * its superclasses.
+ */
+typedef struct _methodIndex {
+	unsigned int		size;	/* entries in hash, a power of two */
+	unsigned int		count;	/* entries in use */
+	uintp*			hash;	/* Method* | METHODINDEX_SPLIT */
+	Method*			slots[1]; /* method of each dtable slot */
+} methodIndex;
+
+/* Set in a hash entry when the methods of that name and signature in
+ * the class and its superclasses do not all share one dispatch table
+ * index, as when a package private method is not overridden by the
+ * same method of another package.  Such methods are looked up by
+ * walking the superclasses, which honours their access.
+ */
+#define	METHODINDEX_SPLIT	((uintp)1)
+#define	METHODINDEX_METHOD(E)	((Method*)((E) & ~METHODINDEX_SPLIT))
+
+/*
+ * Find the hash entry of a method's name and signature, or the empty
+ * entry where it goes.  The hash is never more than half full.
+ */
+static uintp*
+findMethodIndexEntry(methodIndex* mi, Method* meth)
+{
+	unsigned int mask = mi->size - 1;
+	unsigned int i;
+
+	i = ((unsigned int)utf8ConstHashValue(meth->name) * 31U
+	     + (unsigned int)utf8ConstHashValue(METHOD_SIG(meth))) & mask;
+	for (;; i = (i + 1) & mask) {
+		Method* mt = METHODINDEX_METHOD(mi->hash[i]);
+
+		if (mt == NULL
+		    || (utf8ConstEqual(mt->name, meth->name)
+			&& utf8ConstEqual(METHOD_SIG(mt), METHOD_SIG(meth)))) {
+			return (&mi->hash[i]);
+		}
+	}
+}
+
+/*
+ * Build the method index of a class from the one of its superclass,
+ * once its methods have their dispatch table indices.  A class whose
+ * superclass has no index, such as one compiled by gcj, gets none
+ * either, so the methods of its subclasses are looked up by walking
+ * the superclasses.
+ */
+static bool
+buildMethodIndex(Hjava_lang_Class* class, errorInfo* einfo)
+{
+	methodIndex* smi = NULL;
+	methodIndex* mi;
+	unsigned int count;
+	unsigned int size;
+	unsigned int j;
+	Method* meth;
+	int i;
+
+	if (class->superclass != NULL) {
+		smi = getSuperclass(class)->methodIndex;
+		if (smi == NULL) {
+			return (true);
+		}
+	}
+
+	count = CLASS_NMETHODS(class);
+	if (smi != NULL) {
+		count += smi->count;
+	}
+	for (size = 8; size < 2 * count; size <<= 1)
+		;
+
+	mi = gc_malloc(sizeof(methodIndex) + class->msize * sizeof(Method*)
+		       + size * sizeof(uintp), KGC_ALLOC_CLASSMISC);
+	if (mi == NULL) {
+		postOutOfMemory(einfo);
+		return (false);
+	}
+	mi->size = size;
+	mi->hash = (uintp*)&mi->slots[class->msize];
+
+	if (smi != NULL) {
+		memcpy(mi->slots, smi->slots,
+		       getSuperclass(class)->msize * sizeof(Method*));
+		for (j = 0; j < smi->size; j++) {
+			if (smi->hash[j] != 0) {
+				*findMethodIndexEntry(mi,
+					METHODINDEX_METHOD(smi->hash[j]))
+					= smi->hash[j];
+			}
+		}
+		mi->count = smi->count;
+	}
+
+	meth = Kaffe_get_class_methods(class);
+	i = CLASS_NMETHODS(class);
+	for (; --i >= 0; meth++) {
+		uintp* entry;
+		Method* mt;
+		bool split;
+
+		if (meth->idx >= 0) {
+			mi->slots[meth->idx] = meth;
+		}
+
+		/* the methods getInheritedMethodIndex skips */
+		if (METHOD_IS_STATIC(meth) || METHOD_IS_PRIVATE(meth)
+		    || utf8ConstEqual(meth->name, constructor_name)) {
+			continue;
+		}
+
+		entry = findMethodIndexEntry(mi, meth);
+		mt = METHODINDEX_METHOD(*entry);
+		if (mt == NULL) {
+			*entry = (uintp)meth;
+			mi->count++;
+			continue;
+		}
+
+		/* The method overrides the nearest one of a superclass.
+		 * Two methods of the same class cannot both be found,
+		 * so the first one is kept.
+		 */
+		split = (*entry & METHODINDEX_SPLIT) != 0 || mt->idx != meth->idx;
+		if (mt->class != class) {
+			mt = meth;
+		}
+		*entry = (uintp)mt | (split ? METHODINDEX_SPLIT : 0);
+	}
+
+	class->methodIndex = mi;
+	return (true);
+}
+
 /*
  * Check whether there exists a method with the same name and signature
  * ``meth'' in class ``clazz'' or any of its superclasses.
@@ -2005,6 +2150,25 @@ resolveStaticFields(Hjava_lang_Class* class, errorInfo *einfo)
 bool
 getInheritedMethodIndex(Hjava_lang_Class *super, Method *meth)
 {
+	/* The method index holds the nearest method of each name and
+	 * signature.  Use it unless that method cannot be accessed or
+	 * hides another index.
+	 */
+	if (super != NULL && super->methodIndex != NULL
+	    && !utf8ConstEqual(meth->name, constructor_name)) {
+		uintp entry = *findMethodIndexEntry(super->methodIndex, meth);
+		Method* mt = METHODINDEX_METHOD(entry);
+
+		if (mt == NULL) {
+			return (false);
+		}
+		if ((entry & METHODINDEX_SPLIT) == 0
+		    && checkAccess(meth->class, mt->class, mt->accflags)) {
+			meth->idx = mt->idx;
+			return (true);
+		}
+	}
+
 	/* Search superclasses for equivalent method name.
 	 * If found extract its index nr.
 	 */
@@ -2104,6 +2268,10 @@ buildDispatchTable(Hjava_lang_Class* class, errorInfo *einfo)
 		}
 	}
 
+	if (!buildMethodIndex(class, einfo)) {
+		return (false);
+	}
+
 	class->vtable = (dispatchTable*)gc_malloc(sizeof(dispatchTable) +
 		class->msize * sizeof(void*), KGC_ALLOC_DISPATCHTABLE);
 
@@ -2135,6 +2303,20 @@ buildDispatchTable(Hjava_lang_Class* class, errorInfo *einfo)
 	/* trampolines are also needed for all virtual inherited
 	 * methods so they can be patched up independently
 	 */
+	if (class->methodIndex != NULL) {
+		Method** slots = class->methodIndex->slots;
+
+		for (i = 0; i < class->msize; i++) {
+			if (mtab[i] != 0 || slots[i] == NULL) {
+				continue;
+			}
+			if (engine_buildTrampoline(slots[i], &mtab[i],
+						   einfo) == 0) {
+				return (false);
+			}
+		}
+		return (true);
+	}
 	for (cc = class->superclass; cc != 0; cc = cc->superclass) {
 		meth = Kaffe_get_class_methods(cc);
 		i = CLASS_NMETHODS(cc);
@@ -2283,146 +2465,52 @@ buildInterfaceDispatchTable(Hjava_lang_Class* class, errorInfo *einfo)
 }
 
 /*
- * Compute the interface implementation index for this class.
- * The impl_index is an index for each class that is used to index the
- * implementor table of the interface when dispatching an interface
- * method.  See soft_lookupinterfacemethod in soft.c
- * It points directly at the first itable2dtable index for the section
- * that describes the interface (which is what's now redundantly stored
- * in if2itable[x].)
- *
- * This allows interface lookup in constant time.
+ * Hash the itable2dtable sections of this class by interface, so that
+ * soft_lookupinterfacemethod finds the section of an interface in
+ * constant time.  The table belongs to the class alone: implementing
+ * an interface touches neither the interface nor its other
+ * implementors, and takes no lock.
  */
 static bool
-computeInterfaceImplementationIndex(Hjava_lang_Class* clazz, errorInfo* einfo)
+buildInterfaceHash(Hjava_lang_Class* clazz, errorInfo* einfo)
 {
-	int j, k;
-	unsigned int i;
-	int found_i;
-	bool rc = false;
-	Hjava_lang_Class** ifcs;
-
-	/* find an impl_index for this class
-	 * Note that we only find a suitable impl_index with regard to the
-	 * interfaces this class implements, not a globally unique one.
-	 *
-	 * In other words, two classes implementing disjoint sets of
-	 * interfaces may end up with the same impl_index.  For this reason,
-	 * the impl_index at this point cannot be used to implement the
-	 * equivalent of instanceof <interface>
-	 *
-	 * We assume that a verifier design is possible that will ensure
-	 * that a run-time object indeed implements an interface at the
-	 * time when soft_lookupinterfacemethod is invoked.  We do not have
-	 * such a verifier at this point.
-	 */
+	unsigned short* hash;
+	unsigned int mask;
+	unsigned int size;
+	unsigned int h;
+	int j;
 
 	if (clazz->total_interface_len == 0) {
 		return (true);
 	}
 
-	/* We are manipulating the implementor tables of all implemented
-	 * interfaces.  We must lock them.  To avoid deadlock, lets lock
-	 * them in ascending order.
-	 */
-	ifcs = KMALLOC(clazz->total_interface_len * sizeof(Hjava_lang_Class*));
-	memcpy(ifcs, clazz->interfaces,
-		clazz->total_interface_len * sizeof(Hjava_lang_Class*));
-
-	/* this is bubble-sort */
-	do {
-		k = 0;
-		for (j = 0; j < clazz->total_interface_len - 1; j++) {
-			Hjava_lang_Class* iface_j = ifcs[j];
-			Hjava_lang_Class* iface_j1 = ifcs[j+1];
-			if ((uintp)iface_j > (uintp)iface_j1) {
-				k = 1;
-				ifcs[j] = iface_j1;
-				ifcs[j+1] = iface_j;
-			}
-		}
-	} while (k);
-
-	for (j = 0; j < clazz->total_interface_len; j++) {
-		lockClass(ifcs[j]);
-	}
-
-	i = 0;
-	do {
-		found_i = 1;
-		for (j = 0; j < clazz->total_interface_len; j++) {
-			Hjava_lang_Class* iface = clazz->interfaces[j];
-	    		uintp len = 0;
-
-			if (iface->implementors != NULL) {
-				/* This is how many entries follow, so the
-				 * array has a[0] + 1 elements. We have to convert
-				 * the value from pointer type (which is at least 16 bits
-				 * as previously).
-				 */
-			        len = (uintp)iface->implementors[0];
-			}
-			if (i >= len || iface->implementors[i+1] == NULL) {
-				continue;	/* this one would work */
-			} else {
-				found_i = 0;
-				break;
-			}
-		}
-		i++;
-	} while (!found_i);
-
-	/* 'i' is a suitable index --- note we incremented i before leaving
-	 * the loop above.
-	 */
-	clazz->impl_index = i;
+	for (size = 4; size < 2 * (unsigned int)clazz->total_interface_len;
+	     size <<= 1)
+		;
+	hash = gc_malloc(size * sizeof(unsigned short), KGC_ALLOC_CLASSMISC);
+	if (hash == NULL) {
+		postOutOfMemory(einfo);
+		return (false);
+	}
+	mask = size - 1;
 
-	/* Now patch all interfaces to point back to their itable2dtable
-	 * regions in the dispatch table of this implementing class.
-	 */
 	for (j = 0; j < clazz->total_interface_len; j++) {
 		Hjava_lang_Class* iface = clazz->interfaces[j];
-		uintp len;
 
-		/* make sure the implementor table is big enough */
-		if (iface->implementors == NULL || i > (uintp)iface->implementors[0]) {
-			if (iface->implementors == NULL) {
-				len = (i + 1) + 4; /* 4 is slack only */
-				iface->implementors = (void ***)gc_malloc(len * sizeof(void **), KGC_ALLOC_CLASSMISC);
-			} else {
-				/* double in size */
-				len = (uintp)(iface->implementors[0] + 1) * 2;
-				if (len <= i) {
-					len = (i + 1) + 4;
-				}
-				iface->implementors = (void ***)gc_realloc(
-					iface->implementors,
-					len * sizeof(void **), KGC_ALLOC_CLASSMISC);
-			}
-
-			if (iface->implementors == NULL) {
-				postOutOfMemory(einfo);
-				goto done;
+		for (h = Kaffe_hash_interface(iface); hash[h & mask] != 0; h++) {
+			/* the list of interfaces may hold duplicates */
+			if (clazz->itable2dtable[hash[h & mask]] == iface) {
+				break;
 			}
-			/* NB: we assume KMALLOC/KREALLOC zero memory out */
-			iface->implementors[0] = (void *)(len - 1);
-
-			/* New entries are magically marked as unused by the GC
-			 * as it fills the memory with 0.
-			 */
 		}
-
-		assert(i < (uintp)iface->implementors[0] + 1);
-		iface->implementors[i] = &(clazz->itable2dtable[clazz->if2itable[j]]);
+		if (hash[h & mask] == 0) {
+			hash[h & mask] = clazz->if2itable[j];
+		}
 	}
-	rc = true;
 
-done:
-	for (j = clazz->total_interface_len - 1; j >= 0; j--) {
-		unlockClass(ifcs[j]);
-	}
-	KFREE(ifcs);
-	return (rc);
+	clazz->itable_mask = mask;
+	clazz->itable_hash = hash;
+	return (true);
 }
 
 /* Check for undefined abstract methods if class is not abstract.
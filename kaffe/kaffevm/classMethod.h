@@ -27,6 +27,9 @@
 
 #define	MAXMETHOD		64
 
+/* SHA-256 of a class file, or all zero if none was taken */
+#define	CLASS_DIGEST_SIZE	32
+
 /* Class state */
 typedef enum {
 	CSTATE_FAILED = -1,
@@ -107,6 +110,7 @@ struct Hjava_lang_Class {
         constIndex              enclosingMethodIndex;
 	unsigned int		packageLength;
 	char*			sourcefile;	/* source file name if known */
+	uint8			digest[CLASS_DIGEST_SIZE]; /* for -Xverifycache */
 	accessFlags		accflags;
         kaffeClassFlags         kFlags;        
 
@@ -146,6 +150,8 @@ struct Hjava_lang_Class {
 	short			nsfields;
 
 	struct _dispatchTable*	vtable;
+	/* the overridable methods by name and signature, see buildDispatchTable */
+	struct _methodIndex*	methodIndex;
 
 	/* all interfaces supported by this class */
         struct Hjava_lang_Class** interfaces;
@@ -153,9 +159,10 @@ struct Hjava_lang_Class {
 	void**			itable2dtable;
 	short			interface_len;
 	unsigned short		total_interface_len;
-	/* pointers to all itable2dtable entries of classes implementing this interface */
-	void***			implementors;	/* interfaces only */
-        unsigned int		impl_index;    /* index of the class in the implementors array. */
+	/* itable2dtable offsets of the sections of each interface, hashed
+	 * by interface, 0 for an empty entry.  See Kaffe_get_itable. */
+	unsigned short*		itable_hash;
+	unsigned short		itable_mask;	/* entries in itable_hash - 1 */
 
 	Hjava_lang_ClassLoader*	loader;
 
@@ -210,6 +217,8 @@ typedef struct Hjava_lang_Class Hjava_lang_Class;
 
 #define METHOD_TRANSLATED(M)		((M)->kFlags & KFLAG_TRANSLATED)
 #define METHOD_JITTED(M)		((M)->kFlags & KFLAG_JITTED)
+#define METHOD_VERIFY_PENDING(M)	((M)->kFlags & KFLAG_VERIFY_PENDING)
+#define METHOD_VERIFY_FAILED(M)		((M)->kFlags & KFLAG_VERIFY_FAILED)
 
 #define	METHOD_NATIVECODE(M)		(((M)->idx == -1) ? \
 		((M)->ncode) : \
@@ -533,6 +542,49 @@ Kaffe_set_array_element_type(struct Hjava_lang_Class * arrayclazz,
   arrayclazz->cache.element_type = element_type;
 }
 
+/**
+ * hash an interface for the itable_hash of its implementing classes.
+ *
+ * @param iface the interface
+ */
+static inline
+unsigned int
+Kaffe_hash_interface(const struct Hjava_lang_Class * iface)
+{
+  uintp h = (uintp)iface >> 4;
+
+  return (unsigned int)(h ^ (h >> 9));
+}
+
+/**
+ * get the section of a class's itable2dtable that dispatches the
+ * methods of an interface.  The section starts with the interface,
+ * the code of interface method idx is at idx + 1.
+ *
+ * @param clazz a prepared class
+ * @param iface the interface
+ * @return the section, or NULL if the class does not implement iface
+ */
+static inline
+void **
+Kaffe_get_itable(const struct Hjava_lang_Class * clazz,
+		 const struct Hjava_lang_Class * iface)
+{
+  unsigned int h;
+  unsigned short off;
+
+  if (clazz->itable_hash == NULL)
+    return NULL;
+
+  for (h = Kaffe_hash_interface(iface);
+       (off = clazz->itable_hash[h & clazz->itable_mask]) != 0; h++)
+    {
+      if (clazz->itable2dtable[off] == iface)
+	return &clazz->itable2dtable[off];
+    }
+  return NULL;
+}
+
 /**
  * get array cache of a primitive class.
  * 
@@ -551,7 +551,7 @@ statClass(Hjava_lang_Class *clazz, int *total)
 		miscfixed += SIZE_IFNONZERO(clazz->itable2dtable);
 		miscfixed += SIZE_IFNONZERO(clazz->gc_layout);
 		miscfixed += SIZE_IFNONZERO(clazz->sourcefile);
-		miscfixed += SIZE_IFNONZERO(clazz->implementors);
+		miscfixed += SIZE_IFNONZERO(clazz->itable_hash);
 		miscfixed += SIZE_IFNONZERO(clazz->inner_classes);
 	}
 	if (!CLASS_IS_ARRAY(clazz) && !CLASS_IS_PRIMITIVE(clazz)) {
@@ -11,18 +11,27 @@
 #ifndef __classpath_h
 #define __classpath_h
 
-#include <zzip/zzip.h>
+#include "jar.h"
 
 #define IS_ZIP(B) \
 	((B)[0] == 'P' && (B)[1] == 'K')
 #define	IS_SOFILE(B) \
 	((B)[0] == 0x7f && (B)[1] == 'E' && (B)[2] == 'L' && (B)[3] == 'F')
 
+/*
+ * The list is only ever added to, so it is walked without locking.
+ * Entries are linked in fully built under the classpath lock.  The
+ * jarFile of a CP_ZIPFILE entry is opened under the same lock when the
+ * entry is indexed, and is read without locking after that.
+ */
 typedef struct _classpathEntry {
         int     type;
         char*   path;
+        int     indexed;        /* packages has been filled in */
+        int     npackages;
+        char**  packages;       /* packages found in a CP_ZIPFILE */
         union {
-                ZZIP_DIR*        jar;
+                jarFile*        jar;
                 struct {
                         int     loaded;
                 } sof;
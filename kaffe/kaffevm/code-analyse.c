@@ -32,6 +32,7 @@
 #include "soft.h"
 #include "md.h"
 #include "gc.h"
+#include "verify.h"
 
 static void mergeFrame(codeinfo*, int, int, frameElement*, Method*);
 static void updateLocals(codeinfo*, int32, frameElement*);
@@ -1723,6 +1724,12 @@ DBG(CODEANALYSE,
 		return false;
 	}
 
+	/* Classes linked with -Xlazyverify are verified method by method */
+	*pcodeinfo = NULL;
+	if (METHOD_VERIFY_PENDING(meth) && !verifyMethodLazily(meth, einfo)) {
+		return false;
+	}
+
 	codeInfo = gc_malloc(sizeof(codeinfo) + meth->c.bcode.codelen*sizeof(perPCInfo),
 			     KGC_ALLOC_CODEANALYSE);
 	*pcodeinfo = codeInfo;
@@ -2143,3 +2150,684 @@ analyzeCatchClause(jexceptionEntry* eptr, Hjava_lang_Class* class, errorInfo *ei
 	/* Catch clause is okay. */
 	return true;
 }
+
+#if defined(TRANSLATOR)
+
+/*
+ * Counted loops.
+ *
+ * Find loops of the form
+ *
+ *	for (i = <non-negative constant>; i < a.length; i++) {
+ *		... a[i] ...
+ *	}
+ *
+ * where neither i nor a is assigned in the loop body, and mark the
+ * array accesses a[i] in the body with FLAG_NOCHECKINDEX.  The loop
+ * condition is the only way into the body, so 0 <= i < a.length holds
+ * throughout it, and since i is only ever incremented by one after it
+ * has been checked it can't overflow.
+ *
+ * Both the shape javac emits (condition at the top, goto at the
+ * bottom) and the one other compilers emit (goto to a condition at the
+ * bottom) are recognised.  Wide instructions never match.
+ */
+
+/* Symbolic operand stack values */
+#define	SV_OTHER		0
+#define	SV_INDEX		1
+#define	SV_ARRAY		2
+#define	SV_THIS			3
+
+/*
+ * Return the instruction before PC, or -1.
+ */
+static
+int32
+prevInsn(codeinfo* codeInfo, int32 pc)
+{
+	for (pc--; pc >= 0 && !IS_STARTOFINSTRUCTION(pc); pc--)
+		;
+	return (pc);
+}
+
+static
+bool
+isWideInsn(codeinfo* codeInfo, Method* meth, int32 pc)
+{
+	int32 ppc;
+
+	ppc = prevInsn(codeInfo, pc);
+	return (ppc >= 0 && INSN(ppc) == WIDE);
+}
+
+/*
+ * Return the local loaded by the iload or aload (depending on OP) at PC,
+ * or -1.
+ */
+static
+int
+loadedLocal(Method* meth, int32 pc, int op, bool wide)
+{
+	if (wide) {
+		return (-1);
+	}
+	if (INSN(pc) == op) {
+		return (meth->c.bcode.code[pc+1]);
+	}
+	if (op == ILOAD && INSN(pc) >= ILOAD_0 && INSN(pc) <= ILOAD_3) {
+		return (INSN(pc) - ILOAD_0);
+	}
+	if (op == ALOAD && INSN(pc) >= ALOAD_0 && INSN(pc) <= ALOAD_3) {
+		return (INSN(pc) - ALOAD_0);
+	}
+	return (-1);
+}
+
+/*
+ * Return the first local written by the instruction at PC and the
+ * number of locals written in *WIDTH, or -1.
+ */
+static
+int
+storedLocal(Method* meth, int32 pc, bool wide, int* width)
+{
+	int op;
+
+	op = INSN(pc);
+	*width = 1;
+	switch (op) {
+	case LSTORE:	case DSTORE:
+		*width = 2;
+		/* FALLTHROUGH */
+	case ISTORE:	case FSTORE:	case ASTORE:
+	case IINC:
+		if (wide) {
+			return ((uint16)WORD(pc+1));
+		}
+		return (meth->c.bcode.code[pc+1]);
+	case LSTORE_0:	case LSTORE_1:	case LSTORE_2:	case LSTORE_3:
+		*width = 2;
+		return (op - LSTORE_0);
+	case DSTORE_0:	case DSTORE_1:	case DSTORE_2:	case DSTORE_3:
+		*width = 2;
+		return (op - DSTORE_0);
+	case ISTORE_0:	case ISTORE_1:	case ISTORE_2:	case ISTORE_3:
+		return (op - ISTORE_0);
+	case FSTORE_0:	case FSTORE_1:	case FSTORE_2:	case FSTORE_3:
+		return (op - FSTORE_0);
+	case ASTORE_0:	case ASTORE_1:	case ASTORE_2:	case ASTORE_3:
+		return (op - ASTORE_0);
+	default:
+		return (-1);
+	}
+}
+
+/*
+ * Check whether anything outside [START, END) may branch into it, other
+ * than the instruction at ALLOWED.
+ */
+static
+bool
+enteredFromOutside(codeinfo* codeInfo, Method* meth, int32 start, int32 end,
+		   int32 allowed)
+{
+	int32 pc;
+	int32 tabpc;
+	int32 idx;
+	uint32 i;
+
+	if (meth->exception_table != NULL) {
+		for (i = 0; i < meth->exception_table->length; i++) {
+			tabpc = meth->exception_table->entry[i].handler_pc;
+			if (tabpc >= start && tabpc < end) {
+				return (true);
+			}
+		}
+	}
+
+	for (pc = 0; pc < codeInfo->codelen; pc++) {
+		if (!IS_STARTOFINSTRUCTION(pc) || (FLAGS(pc) & FLAG_JUMP) == 0 ||
+		    (pc >= start && pc < end) || pc == allowed) {
+			continue;
+		}
+		switch (INSN(pc)) {
+		case GOTO_W:	case JSR_W:
+			tabpc = pc + DWORD(pc+1);
+			if (tabpc >= start && tabpc < end) {
+				return (true);
+			}
+			break;
+		case TABLESWITCH:
+			tabpc = (pc + 4) & -4;
+			if (pc + DWORD(tabpc) >= start && pc + DWORD(tabpc) < end) {
+				return (true);
+			}
+			idx = DWORD(tabpc+8)-DWORD(tabpc+4)+1;
+			for (; idx > 0; idx--) {
+				if (pc+DWORD(tabpc+idx*4+8) >= start &&
+				    pc+DWORD(tabpc+idx*4+8) < end) {
+					return (true);
+				}
+			}
+			break;
+		case LOOKUPSWITCH:
+			tabpc = (pc + 4) & -4;
+			if (pc + DWORD(tabpc) >= start && pc + DWORD(tabpc) < end) {
+				return (true);
+			}
+			idx = DWORD(tabpc+4);
+			for (; idx > 0; idx--) {
+				if (pc+DWORD(tabpc+idx*8+4) >= start &&
+				    pc+DWORD(tabpc+idx*8+4) < end) {
+					return (true);
+				}
+			}
+			break;
+		default:
+			/* if<cond>, goto and jsr */
+			tabpc = pc + WORD(pc+1);
+			if (tabpc >= start && tabpc < end) {
+				return (true);
+			}
+			break;
+		}
+	}
+	return (false);
+}
+
+/*
+ * Check that the instructions at PC and before set local LCL to a
+ * non-negative constant and are only reached by falling through.
+ */
+static
+bool
+isNonNegativeInit(codeinfo* codeInfo, Method* meth, int32 pc, int lcl)
+{
+	int width;
+
+	if (pc < 0 || IS_STARTOFBASICBLOCK(pc) ||
+	    (INSN(pc) != ISTORE &&
+	     (INSN(pc) < ISTORE_0 || INSN(pc) > ISTORE_3)) ||
+	    isWideInsn(codeInfo, meth, pc) ||
+	    storedLocal(meth, pc, false, &width) != lcl) {
+		return (false);
+	}
+	pc = prevInsn(codeInfo, pc);
+	if (pc < 0) {
+		return (false);
+	}
+	switch (INSN(pc)) {
+	case ICONST_0:	case ICONST_1:	case ICONST_2:
+	case ICONST_3:	case ICONST_4:	case ICONST_5:
+		return (true);
+	case BIPUSH:
+		return (BYTE(pc+1) >= 0);
+	case SIPUSH:
+		return (WORD(pc+1) >= 0);
+	default:
+		return (false);
+	}
+}
+
+/*
+ * Check that nothing in [START, END) other than the increment at INC
+ * writes local I or local A, and that there are no subroutines.
+ */
+static
+bool
+isLoopInvariant(codeinfo* codeInfo, Method* meth, int32 start, int32 end,
+		int32 inc, int i, int a)
+{
+	int32 pc;
+	int lcl;
+	int width;
+	bool wide;
+
+	wide = isWideInsn(codeInfo, meth, start);
+	for (pc = start; pc < end; pc++) {
+		if (!IS_STARTOFINSTRUCTION(pc)) {
+			continue;
+		}
+		switch (INSN(pc)) {
+		case JSR:	case JSR_W:	case RET:
+			return (false);
+		default:
+			break;
+		}
+		lcl = storedLocal(meth, pc, wide, &width);
+		if (lcl >= 0 && pc != inc &&
+		    ((i >= lcl && i < lcl + width) ||
+		     (a >= lcl && a < lcl + width))) {
+			return (false);
+		}
+		wide = (INSN(pc) == WIDE);
+	}
+	return (true);
+}
+
+/*
+ * Return the number of words of the field or method argument list
+ * (if ARGS isn't NULL) described by the constant pool entry IDX of
+ * type TAG, and the size of the field or return value, or -1.
+ */
+static
+int
+memberrefSize(Method* meth, constIndex idx, int tag, int* args)
+{
+	constants* pool;
+	const char* sig;
+
+	pool = CLASS_CONSTANTS(meth->class);
+	if (CONST_TAG(idx, pool) != tag) {
+		return (-1);
+	}
+	sig = WORD2UTF(pool->data[FIELDREF_SIGNATURE(idx, pool)])->data;
+	if (args != NULL) {
+		*args = sizeofSig(&sig, false);
+	}
+	return (sizeofSigChar(*sig, false));
+}
+
+/*
+ * Walk the code in [START, END) tracking where the operand stack values
+ * come from.  Mark the accesses to array A indexed by I (if not -1) with
+ * FLAG_NOCHECKINDEX, and the field accesses and non-virtual calls on
+ * the object in local SELF (if not -1) with FLAG_NONNULLOBJ.
+ */
+static
+void
+trackOperands(codeinfo* codeInfo, Method* meth, int32 start, int32 end,
+	      int i, int a, int self)
+{
+	uint8* stk;
+	int sp;
+	int32 pc;
+	int pop;
+	int push;
+	int val;
+	int lcl;
+	bool wide;
+
+	stk = gc_malloc(meth->stacksz + 1, KGC_ALLOC_CODEANALYSE);
+	if (stk == NULL) {
+		return;
+	}
+
+/* Pushing past the top can't happen in verified code */
+#define	SVPUSH(V)	do { if (sp < meth->stacksz) { stk[sp++] = (V); } } while (0)
+#define	SVPEEK(N)	(sp > (N) ? stk[sp - 1 - (N)] : SV_OTHER)
+
+	sp = 0;
+	wide = false;
+	for (pc = start; pc < end; pc++) {
+		if (!IS_STARTOFINSTRUCTION(pc)) {
+			continue;
+		}
+		if (IS_STARTOFBASICBLOCK(pc) || IS_STARTOFEXCEPTION(pc)) {
+			sp = 0;
+		}
+
+		val = SV_OTHER;
+		pop = 0;
+		push = 0;
+		switch (INSN(pc)) {
+		case NOP:
+		case IINC:
+		case GOTO:
+			break;
+
+		case ACONST_NULL:
+		case ICONST_M1:	case ICONST_0:	case ICONST_1:	case ICONST_2:
+		case ICONST_3:	case ICONST_4:	case ICONST_5:
+		case FCONST_0:	case FCONST_1:	case FCONST_2:
+		case BIPUSH:	case SIPUSH:
+		case LDC1:	case LDC2:
+		case FLOAD:
+		case FLOAD_0:	case FLOAD_1:	case FLOAD_2:	case FLOAD_3:
+			push = 1;
+			break;
+
+		case ILOAD:
+		case ILOAD_0:	case ILOAD_1:	case ILOAD_2:	case ILOAD_3:
+			push = 1;
+			if (i >= 0 && loadedLocal(meth, pc, ILOAD, wide) == i) {
+				val = SV_INDEX;
+			}
+			break;
+
+		case ALOAD:
+		case ALOAD_0:	case ALOAD_1:	case ALOAD_2:	case ALOAD_3:
+			push = 1;
+			lcl = loadedLocal(meth, pc, ALOAD, wide);
+			if (lcl >= 0 && lcl == a) {
+				val = SV_ARRAY;
+			}
+			else if (lcl >= 0 && lcl == self) {
+				val = SV_THIS;
+			}
+			break;
+
+		case LCONST_0:	case LCONST_1:
+		case DCONST_0:	case DCONST_1:
+		case LDC2W:
+		case LLOAD:	case DLOAD:
+		case LLOAD_0:	case LLOAD_1:	case LLOAD_2:	case LLOAD_3:
+		case DLOAD_0:	case DLOAD_1:	case DLOAD_2:	case DLOAD_3:
+			push = 2;
+			break;
+
+		case IALOAD:	case FALOAD:	case AALOAD:
+		case BALOAD:	case CALOAD:	case SALOAD:
+			if (SVPEEK(0) == SV_INDEX && SVPEEK(1) == SV_ARRAY) {
+				FLAGS(pc) |= FLAG_NOCHECKINDEX;
+			}
+			pop = 2;
+			push = 1;
+			break;
+
+		case LALOAD:	case DALOAD:
+			if (SVPEEK(0) == SV_INDEX && SVPEEK(1) == SV_ARRAY) {
+				FLAGS(pc) |= FLAG_NOCHECKINDEX;
+			}
+			pop = 2;
+			push = 2;
+			break;
+
+		case IASTORE:	case FASTORE:	case AASTORE:
+		case BASTORE:	case CASTORE:	case SASTORE:
+			if (SVPEEK(1) == SV_INDEX && SVPEEK(2) == SV_ARRAY) {
+				FLAGS(pc) |= FLAG_NOCHECKINDEX;
+			}
+			pop = 3;
+			break;
+
+		case LASTORE:	case DASTORE:
+			if (SVPEEK(2) == SV_INDEX && SVPEEK(3) == SV_ARRAY) {
+				FLAGS(pc) |= FLAG_NOCHECKINDEX;
+			}
+			pop = 4;
+			break;
+
+		case ISTORE:	case FSTORE:	case ASTORE:
+		case ISTORE_0:	case ISTORE_1:	case ISTORE_2:	case ISTORE_3:
+		case FSTORE_0:	case FSTORE_1:	case FSTORE_2:	case FSTORE_3:
+		case ASTORE_0:	case ASTORE_1:	case ASTORE_2:	case ASTORE_3:
+		case POP:
+		case IFEQ:	case IFNE:	case IFLT:
+		case IFGE:	case IFGT:	case IFLE:
+		case IFNULL:	case IFNONNULL:
+			pop = 1;
+			break;
+
+		case LSTORE:	case DSTORE:
+		case LSTORE_0:	case LSTORE_1:	case LSTORE_2:	case LSTORE_3:
+		case DSTORE_0:	case DSTORE_1:	case DSTORE_2:	case DSTORE_3:
+		case POP2:
+		case IF_ICMPEQ: case IF_ICMPNE:
+		case IF_ICMPLT: case IF_ICMPGE:
+		case IF_ICMPGT: case IF_ICMPLE:
+		case IF_ACMPEQ: case IF_ACMPNE:
+			pop = 2;
+			break;
+
+		case DUP:
+			val = SVPEEK(0);
+			push = 1;
+			break;
+
+		case IADD:	case ISUB:	case IMUL:	case IDIV:
+		case IREM:	case ISHL:	case ISHR:	case IUSHR:
+		case IAND:	case IOR:	case IXOR:
+		case FADD:	case FSUB:	case FMUL:	case FDIV:
+		case FREM:	case FCMPL:	case FCMPG:
+		case L2I:	case L2F:	case D2I:	case D2F:
+			pop = 2;
+			push = 1;
+			break;
+
+		case LADD:	case LSUB:	case LMUL:	case LDIV:
+		case LREM:	case LAND:	case LOR:	case LXOR:
+		case DADD:	case DSUB:	case DMUL:	case DDIV:
+		case DREM:
+			pop = 4;
+			push = 2;
+			break;
+
+		case LSHL:	case LSHR:	case LUSHR:
+			pop = 3;
+			push = 2;
+			break;
+
+		case LCMP:	case DCMPL:	case DCMPG:
+			pop = 4;
+			push = 1;
+			break;
+
+		case INEG:	case FNEG:
+		case I2F:	case F2I:
+		case INT2BYTE:	case INT2CHAR:	case INT2SHORT:
+		case ARRAYLENGTH:
+			pop = 1;
+			push = 1;
+			break;
+
+		case LNEG:	case DNEG:
+		case L2D:	case D2L:
+			pop = 2;
+			push = 2;
+			break;
+
+		case I2L:	case I2D:	case F2L:	case F2D:
+			pop = 1;
+			push = 2;
+			break;
+
+		case GETSTATIC:
+			push = memberrefSize(meth, (constIndex)WORD(pc+1),
+					     CONSTANT_Fieldref, NULL);
+			if (push < 0) {
+				push = 0;
+				sp = 0;
+			}
+			break;
+
+		case PUTSTATIC:
+			pop = memberrefSize(meth, (constIndex)WORD(pc+1),
+					    CONSTANT_Fieldref, NULL);
+			if (pop < 0) {
+				pop = 0;
+				sp = 0;
+			}
+			break;
+
+		case GETFIELD:
+			if (SVPEEK(0) == SV_THIS) {
+				FLAGS(pc) |= FLAG_NONNULLOBJ;
+			}
+			pop = 1;
+			push = memberrefSize(meth, (constIndex)WORD(pc+1),
+					     CONSTANT_Fieldref, NULL);
+			if (push < 0) {
+				push = 0;
+				sp = 0;
+			}
+			break;
+
+		case PUTFIELD:
+			pop = memberrefSize(meth, (constIndex)WORD(pc+1),
+					    CONSTANT_Fieldref, NULL);
+			if (pop < 0) {
+				pop = 0;
+				sp = 0;
+				break;
+			}
+			if (SVPEEK(pop) == SV_THIS) {
+				FLAGS(pc) |= FLAG_NONNULLOBJ;
+			}
+			pop += 1;
+			break;
+
+		case INVOKEVIRTUAL:
+		case INVOKESPECIAL:
+		case INVOKESTATIC:
+			push = memberrefSize(meth, (constIndex)WORD(pc+1),
+					     CONSTANT_Methodref, &pop);
+			if (push < 0) {
+				pop = 0;
+				push = 0;
+				sp = 0;
+				break;
+			}
+			if (INSN(pc) != INVOKESTATIC) {
+				if (SVPEEK(pop) == SV_THIS) {
+					FLAGS(pc) |= FLAG_NONNULLOBJ;
+				}
+				pop += 1;
+			}
+			break;
+
+		default:
+			/* Don't know what's below the top any more */
+			sp = 0;
+			break;
+		}
+
+		sp = (sp > pop ? sp - pop : 0);
+		for (; push > 0; push--) {
+			SVPUSH(val);
+		}
+		wide = (INSN(pc) == WIDE);
+	}
+
+#undef	SVPUSH
+#undef	SVPEEK
+
+	gc_free(stk);
+}
+
+/*
+ * Find counted loops over arrays and mark the array accesses in them
+ * which can't be out of bounds.
+ */
+void
+analyzeCountedLoops(Method* meth, codeinfo* codeInfo)
+{
+	int32 pc;
+	int32 top;
+	int32 body;
+	int32 cond;
+	int32 inc;
+	int32 entry;
+	int32 n;
+	int i;
+	int a;
+
+	for (pc = 0; pc < codeInfo->codelen; pc++) {
+		if (!IS_STARTOFINSTRUCTION(pc) || (FLAGS(pc) & FLAG_JUMP) == 0 ||
+		    WORD(pc+1) >= 0) {
+			continue;
+		}
+
+		if (INSN(pc) == GOTO) {
+			/*
+			 * top:	iload i; aload a; arraylength; if_icmpge exit
+			 *	<body>
+			 *	iinc i 1
+			 *	goto top
+			 * exit:
+			 */
+			top = pc + WORD(pc+1);
+			i = loadedLocal(meth, top, ILOAD,
+					isWideInsn(codeInfo, meth, top));
+			n = top + INSNLEN(top);
+			a = loadedLocal(meth, n, ALOAD, false);
+			n += INSNLEN(n);
+			if (i < 0 || a < 0 || INSN(n) != ARRAYLENGTH) {
+				continue;
+			}
+			n += INSNLEN(n);
+			if (INSN(n) != IF_ICMPGE ||
+			    n + WORD(n+1) != pc + INSNLEN(pc)) {
+				continue;
+			}
+			body = n + INSNLEN(n);
+			inc = prevInsn(codeInfo, pc);
+			entry = prevInsn(codeInfo, top);
+			if (inc < body || INSN(inc) != IINC ||
+			    isWideInsn(codeInfo, meth, inc) ||
+			    meth->c.bcode.code[inc+1] != i || BYTE(inc+2) != 1 ||
+			    !isNonNegativeInit(codeInfo, meth, entry, i) ||
+			    enteredFromOutside(codeInfo, meth, top,
+					       pc + INSNLEN(pc), -1) ||
+			    !isLoopInvariant(codeInfo, meth, top,
+					     pc + INSNLEN(pc), inc, i, a)) {
+				continue;
+			}
+		}
+		else if (INSN(pc) == IF_ICMPLT) {
+			/*
+			 *	goto cond
+			 * body: <body>
+			 *	iinc i 1
+			 * cond: iload i; aload a; arraylength; if_icmplt body
+			 */
+			body = pc + WORD(pc+1);
+			n = prevInsn(codeInfo, pc);
+			if (n < 0 || INSN(n) != ARRAYLENGTH) {
+				continue;
+			}
+			n = prevInsn(codeInfo, n);
+			a = (n < 0 ? -1 : loadedLocal(meth, n, ALOAD, false));
+			cond = (n < 0 ? -1 : prevInsn(codeInfo, n));
+			i = (cond < 0 ? -1 : loadedLocal(meth, cond, ILOAD,
+					isWideInsn(codeInfo, meth, cond)));
+			if (i < 0 || a < 0) {
+				continue;
+			}
+			inc = prevInsn(codeInfo, cond);
+			entry = prevInsn(codeInfo, body);
+			if (inc < body || INSN(inc) != IINC ||
+			    isWideInsn(codeInfo, meth, inc) ||
+			    meth->c.bcode.code[inc+1] != i || BYTE(inc+2) != 1 ||
+			    entry < 0 || INSN(entry) != GOTO ||
+			    IS_STARTOFBASICBLOCK(entry) ||
+			    entry + WORD(entry+1) != cond ||
+			    !isNonNegativeInit(codeInfo, meth,
+					       prevInsn(codeInfo, entry), i) ||
+			    enteredFromOutside(codeInfo, meth, body,
+					       pc + INSNLEN(pc), entry) ||
+			    !isLoopInvariant(codeInfo, meth, body,
+					     pc + INSNLEN(pc), inc, i, a)) {
+				continue;
+			}
+		}
+		else {
+			continue;
+		}
+
+DBG(CODEANALYSE,
+		dprintf("%s.%s%s: counted loop over local %d with index %d at pc %d-%d\n",
+			meth->class->name->data, meth->name->data,
+			METHOD_SIGD(meth), a, i, body, inc);
+    );
+
+		trackOperands(codeInfo, meth, body, inc, i, a, -1);
+	}
+}
+
+/*
+ * Mark the field accesses and non-virtual calls on 'this', which can't
+ * be null, provided the method never assigns to local 0.
+ */
+void
+analyzeNonNullReceivers(Method* meth, codeinfo* codeInfo)
+{
+	if (METHOD_IS_STATIC(meth) ||
+	    !isLoopInvariant(codeInfo, meth, 0, codeInfo->codelen, -1, 0, 0)) {
+		return;
+	}
+	trackOperands(codeInfo, meth, 0, codeInfo->codelen, -1, -1, 0);
+}
+
+#endif /* defined(TRANSLATOR) */
@@ -91,6 +91,8 @@ typedef struct codeinfo {
 #define	FLAG_NEEDVERIFY			0x0040
 #define	FLAG_DONEVERIFY			0x0080
 #define	FLAG_STARTOFINSTRUCTION		0x0100
+#define	FLAG_NOCHECKINDEX		0x0200
+#define	FLAG_NONNULLOBJ			0x0400
 
 #define	FLAGS(_pc)			codeInfo->perPC[_pc].flags
 #define	STACKPOINTER(_pc)		codeInfo->perPC[_pc].stackPointer
@@ -149,6 +151,8 @@ typedef struct codeinfo {
 #define	IS_NEEDVERIFY(pc)		(FLAGS(pc) & FLAG_NEEDVERIFY)
 #define	IS_DONEVERIFY(pc)		(FLAGS(pc) & FLAG_DONEVERIFY)
 #define	IS_STARTOFINSTRUCTION(pc)	(FLAGS(pc) & FLAG_STARTOFINSTRUCTION)
+#define	IS_NOCHECKINDEX(pc)		(FLAGS(pc) & FLAG_NOCHECKINDEX)
+#define	IS_NONNULLOBJ(pc)		(FLAGS(pc) & FLAG_NONNULLOBJ)
 #define	IS_UNREACHABLE(pc)		((IS_STARTOFBASICBLOCK(pc) || \
 					  IS_STARTOFEXCEPTION(pc)) && \
 					  !IS_DONEVERIFY(pc))
@@ -260,6 +264,10 @@ typedef struct codeinfo {
 struct _jmethodID;
 bool analyzeMethod(struct _jmethodID*, codeinfo**, errorInfo*);
 void tidyAnalyzeMethod(codeinfo**);
+#if defined(TRANSLATOR)
+void analyzeCountedLoops(struct _jmethodID*, codeinfo*);
+void analyzeNonNullReceivers(struct _jmethodID*, codeinfo*);
+#endif
 
 extern const uint8 insnLen[];
 
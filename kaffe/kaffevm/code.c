@@ -27,8 +27,24 @@
 #include "readClass.h"
 #include "exception.h"
 
+/*
+ * The caller (readAttributes) has checked that the len bytes of an
+ * attribute are in the buffer; the tables in it must fit in len.
+ */
+static bool
+attributeTooShort(Method* m, const char* attr, errorInfo *einfo)
+{
+	postExceptionMessage(einfo,
+			     JAVA_LANG(ClassFormatError),
+			     "%s (Method \"%s\" has a truncated %s attribute)",
+			     CLASS_CNAME(m->class),
+			     m->name->data,
+			     attr);
+	return false;
+}
+
 bool
-addCode(Method* m, size_t len UNUSED, classFile* fp, errorInfo *einfo)
+addCode(Method* m, size_t len, classFile* fp, errorInfo *einfo)
 {
 	bool retval = false;
 	Code c;
@@ -36,7 +52,9 @@ addCode(Method* m, size_t len UNUSED, classFile* fp, errorInfo *einfo)
 	u2 i2;
 	u2 elen;
 
-	/* no checkBufSize calls necessary, done in caller (readAttributes) */
+	if (len < 2+2+4) {
+		return attributeTooShort(m, "Code", einfo);
+	}
 
 	readu2(&c.max_stack, fp);
 	readu2(&c.max_locals, fp);
@@ -49,6 +67,11 @@ addCode(Method* m, size_t len UNUSED, classFile* fp, errorInfo *einfo)
 		);
 	
 	if ((c.code_length > 0) && (c.code_length < 65536)) {
+		if (len < 2+2+4 + (size_t)c.code_length + 2
+		    || len < 2+2+4 + (size_t)c.code_length + 2
+			     + 8 * (size_t)getu2(fp->cur + c.code_length)) {
+			return attributeTooShort(m, "Code", einfo);
+		}
 		c.code = gc_malloc(c.code_length, KGC_ALLOC_BYTECODE);
 		if (c.code == 0) {
 			postOutOfMemory(einfo);
@@ -130,15 +153,16 @@ addCode(Method* m, size_t len UNUSED, classFile* fp, errorInfo *einfo)
  * Read in line numbers assocated with code.
  */
 bool
-addLineNumbers(Method* m, size_t len UNUSED, classFile* fp, errorInfo *info)
+addLineNumbers(Method* m, size_t len, classFile* fp, errorInfo *info)
 {
 	lineNumbers* lines;
 	int i;
 	u2 nr;
 	u2 data;
 
-	/* no checkBufSize, done in caller (readAttributes) */
-
+	if (len < 2 || len < 2 + 4 * (size_t)getu2(fp->cur)) {
+		return attributeTooShort(m, "LineNumberTable", info);
+	}
 	readu2(&nr, fp);
 
 	lines = gc_malloc(sizeof(lineNumbers)+sizeof(lineNumberEntry) * nr, KGC_ALLOC_LINENRTABLE);
@@ -185,7 +209,7 @@ addLineNumbers(Method* m, size_t len UNUSED, classFile* fp, errorInfo *info)
 }
 
 bool
-addLocalVariables(Method *m, size_t len UNUSED, classFile *fp, errorInfo *info)
+addLocalVariables(Method *m, size_t len, classFile *fp, errorInfo *info)
 {
 	constants *pool = CLASS_CONSTANTS(m->class);
 	localVariables *lv;
@@ -193,6 +217,9 @@ addLocalVariables(Method *m, size_t len UNUSED, classFile *fp, errorInfo *info)
 	u2 nr;
 	u2 data;
 
+	if (len < 2 || len < 2 + 10 * (size_t)getu2(fp->cur)) {
+		return attributeTooShort(m, "LocalVariableTable", info);
+	}
 	readu2(&nr, fp);
 
 	lv = gc_malloc(sizeof(localVariables) +
@@ -218,7 +245,8 @@ addLocalVariables(Method *m, size_t len UNUSED, classFile *fp, errorInfo *info)
 		readu2(&data, fp);
 		lv->entry[i].index = data;
 
-		if (pool->tags[lv->entry[i].name_index] != CONSTANT_Utf8) {
+		if (lv->entry[i].name_index >= pool->size
+		    || pool->tags[lv->entry[i].name_index] != CONSTANT_Utf8) {
 			postExceptionMessage(info,
 					     JAVA_LANG(ClassFormatError),
 					     "invalid local variable "
@@ -226,7 +254,8 @@ addLocalVariables(Method *m, size_t len UNUSED, classFile *fp, errorInfo *info)
 					     lv->entry[i].name_index);
 			return false;
 		}
-		if (pool->tags[lv->entry[i].descriptor_index] !=
+		if (lv->entry[i].descriptor_index >= pool->size
+		    || pool->tags[lv->entry[i].descriptor_index] !=
 		    CONSTANT_Utf8) {
 			postExceptionMessage(info,
 					     JAVA_LANG(ClassFormatError),
@@ -254,15 +283,16 @@ addLocalVariables(Method *m, size_t len UNUSED, classFile *fp, errorInfo *info)
  * Read in (checked) exceptions declared for a method
  */
 bool
-addCheckedExceptions(Method* m, size_t len UNUSED, classFile* fp,
+addCheckedExceptions(Method* m, size_t len, classFile* fp,
 		     errorInfo *info)
 {
 	int i;
 	u2 nr;
 	constIndex *idx;
 
-	/* no checkBufSize, done in caller (readAttributes) */
-
+	if (len < 2 || len < 2 + 2 * (size_t)getu2(fp->cur)) {
+		return attributeTooShort(m, "Exceptions", info);
+	}
 	readu2(&nr, fp);
 	if (nr == 0) {
 		return true;
@@ -55,9 +55,15 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 	u1* tags;
 	unsigned int i;
 	unsigned int j;
+	unsigned int nutf8;
+	const char** utf8s;
+	u2* utf8lens;
+	u2* utf8slots;
+	Utf8Const** utf8consts;
+	const unsigned char* p;
 	u1 type;
 	u2 len;
-	u2 d2, d2b;
+	u2 d2;
 	u4 d4, d4b;
 	u2 poolsize;
 	const char* className = "unknown";  /* CLASS_CNAME(this) won't work until after constant pool is read... */
@@ -83,15 +89,31 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 	info->tags = tags;
 	info->size = poolsize;
 
+	/*
+	 * The Utf8 entries are collected in one pass over the pool and
+	 * interned together at the end.
+	 */
+	utf8s = KMALLOC((sizeof(const char*) + sizeof(Utf8Const*)
+			 + 2 * sizeof(u2)) * poolsize);
+	if (utf8s == NULL) {
+		info->size = 0;
+		postOutOfMemory(einfo);
+		return false;
+	}
+	utf8consts = (Utf8Const**)&utf8s[poolsize];
+	utf8lens = (u2*)&utf8consts[poolsize];
+	utf8slots = &utf8lens[poolsize];
+	nutf8 = 0;
+
 	pool[0] = 0;
 	tags[0] = CONSTANT_Unknown;
 	for (i = 1; i < info->size; i++) {
-	        const char * str;
-
-		if (! checkBufSize(fp, 1, className, einfo))
+		/* Every entry has a tag and at least two bytes */
+		if (! checkBufSize(fp, 3, className, einfo))
 			goto fail;
 
-		readu1(&type, fp);
+		p = fp->cur;
+		type = p[0];
 		DBG(READCLASS,
 		    dprintf("Constant[%d] type %d\n", i, type);
 			);
@@ -99,34 +121,28 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 
 		switch (type) {
 		case CONSTANT_Utf8:
-			if (! checkBufSize(fp, 2, className, einfo))
-				goto fail;
-
-			readu2(&len, fp);
-
+			len = getu2(p + 1);
+			seekm(fp, 3);
 			if (! checkBufSize(fp, len, className, einfo))
 				goto fail;
 
-			str = (const char *) fp->cur;
-
-			if (!utf8ConstIsValidUtf8(str, len)) {
+			if (!utf8ConstIsValidUtf8((const char *) fp->cur, len)) {
 				postExceptionMessage(einfo,
 					JAVA_LANG(ClassFormatError), 
 					"Invalid UTF-8 constant");
 				goto fail;
 			}
-			pool[i] = (ConstSlot) utf8ConstNew(str, len);
-			if (!pool[i]) {
-				postOutOfMemory(einfo);
-				goto fail;
-			}
+			pool[i] = 0;
+			utf8s[nutf8] = (const char *) fp->cur;
+			utf8lens[nutf8] = len;
+			utf8slots[nutf8] = i;
+			nutf8++;
 			seekm(fp, len);
 			break;
 		case CONSTANT_Class:
 		case CONSTANT_String:
-			if (! checkBufSize(fp, 2, className, einfo))
-				goto fail;
-			readu2(&d2, fp);
+			d2 = getu2(p + 1);
+			seekm(fp, 3);
 			if ( (d2 == 0) || (d2 >= info->size) )
 			{
 				postExceptionMessage(
@@ -144,26 +160,26 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 		case CONSTANT_Methodref:
 		case CONSTANT_InterfaceMethodref:
 		case CONSTANT_NameAndType:
-			if (! checkBufSize(fp, 4, className, einfo))
+			if (! checkBufSize(fp, 5, className, einfo))
 				goto fail;
-			readu2(&d2, fp);
-			readu2(&d2b, fp);
-			pool[i] = (d2b << 16) | d2;
+			pool[i] = (getu2(p + 3) << 16) | getu2(p + 1);
+			seekm(fp, 5);
 			break;
 
 		case CONSTANT_Integer:
 		case CONSTANT_Float:
-			if (! checkBufSize(fp, 4, className, einfo))
+			if (! checkBufSize(fp, 5, className, einfo))
 				goto fail;
-			readu4(&d4, fp);
-			pool[i] = d4;
+			pool[i] = getu4(p + 1);
+			seekm(fp, 5);
 			break;
 
 		case CONSTANT_Long:
-			if (! checkBufSize(fp, 8, className, einfo))
+			if (! checkBufSize(fp, 9, className, einfo))
 				goto fail;
-			readu4(&d4, fp);
-			readu4(&d4b, fp);
+			d4 = getu4(p + 1);
+			d4b = getu4(p + 5);
+			seekm(fp, 9);
 #if SIZEOF_VOID_P == 8
 			pool[i] = WORDS_TO_LONG(d4, d4b);
 			i++;
@@ -177,10 +193,11 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 			break;
 
 		case CONSTANT_Double:
-			if (! checkBufSize(fp, 8, className, einfo))
+			if (! checkBufSize(fp, 9, className, einfo))
 				goto fail;
-			readu4(&d4, fp);
-			readu4(&d4b, fp);
+			d4 = getu4(p + 1);
+			d4b = getu4(p + 5);
+			seekm(fp, 9);
 
 #if SIZEOF_VOID_P == 8
 			if(check_if_need_to_switch_words_in_jdouble())
@@ -209,17 +226,19 @@ readConstantPool(Hjava_lang_Class* this, classFile* fp, errorInfo *einfo)
 				JAVA_LANG(ClassFormatError), 
 					     "Invalid constant type %d in class",
 					     type);
-fail:
-			info->size = 0;
-			for (j = 0 ; j < i; ++j) {
-				if (tags[j] == CONSTANT_Utf8) {
-					utf8ConstRelease((Utf8Const*)pool[j]);
-				}
-			}
-			return false;
+			goto fail;
 		}
 	}
 
+	if (!utf8ConstNewArray(utf8consts, utf8s, utf8lens, nutf8)) {
+		postOutOfMemory(einfo);
+		goto fail;
+	}
+	for (j = 0; j < nutf8; j++) {
+		pool[utf8slots[j]] = (ConstSlot) utf8consts[j];
+	}
+	KFREE(utf8s);
+
 	/* Perform some constant pool optimisations to allow for the
 	 * use of pre-compiled classes.
 	 */
@@ -247,4 +266,10 @@ fail:
 		}
 	}
 	return true;
+
+fail:
+	/* No Utf8 entry has been interned yet */
+	info->size = 0;
+	KFREE(utf8s);
+	return false;
 }
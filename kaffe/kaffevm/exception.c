@@ -51,6 +51,8 @@
 #include "machine.h"
 #include "slots.h"
 #include "gcj/gcj.h"
+#include "gc.h"
+#include "stats.h"
 
 #include "java_lang_Throwable.h"
 #include "java_lang_VMThrowable.h"
@@ -349,6 +351,178 @@ throwExternalException(Hjava_lang_Throwable* eobj)
 	dispatchException(eobj, (stackTraceInfo*)buildStackTrace(NULL));
 }
 
+/*
+ * Fast throws.
+ *
+ * Once a VM-internal throw site has fired more than fastThrowThreshold
+ * times, further throws from it reuse a single preallocated exception
+ * whose stack trace is empty.  This saves allocating the exception, running
+ * its constructor and recording its backtrace, which matters for code that
+ * uses NullPointerException or ArrayIndexOutOfBoundsException for control
+ * flow.  A negative threshold (the default) disables fast throws.
+ *
+ * The counters are not synchronized, so they are only approximate when
+ * several threads throw from the same site at once.
+ */
+static jint fastThrowThreshold = -1;
+static jlong fastThrowCount[FASTTHROW_NSITES];
+static jlong fastThrowOmitted[FASTTHROW_NSITES];
+static Hjava_lang_Throwable* fastThrowable[FASTTHROW_NSITES];
+
+/**
+ * Set the number of throws after which a throw site reuses its
+ * preallocated exception.
+ *
+ * @param threshold number of regular throws, or a negative value to
+ *        disable fast throws.
+ */
+void
+KaffeVM_setFastThrowThreshold(jint threshold)
+{
+	fastThrowThreshold = threshold;
+}
+
+jint
+KaffeVM_getFastThrowThreshold(void)
+{
+	return (fastThrowThreshold);
+}
+
+/**
+ * Number of exceptions thrown from a site, fast or not.
+ */
+jlong
+KaffeVM_getFastThrowCount(fastThrowSite site)
+{
+	assert(site < FASTTHROW_NSITES);
+	return (fastThrowCount[site]);
+}
+
+/**
+ * Number of exceptions thrown from a site without a stack trace.
+ */
+jlong
+KaffeVM_getFastThrowOmitted(fastThrowSite site)
+{
+	assert(site < FASTTHROW_NSITES);
+	return (fastThrowOmitted[site]);
+}
+
+static Hjava_lang_Throwable*
+newStacklessThrowable(fastThrowSite site)
+{
+	Hjava_lang_Throwable* eobj;
+	Hjava_lang_VMThrowable* vmstate;
+	stackTraceInfo* info;
+
+	switch (site) {
+	case FASTTHROW_NULLPOINTER:
+		eobj = NullPointerException;
+		break;
+	case FASTTHROW_BADARRAYINDEX:
+		eobj = ArrayIndexOutOfBoundsException;
+		break;
+	case FASTTHROW_DIVZERO:
+		eobj = ArithmeticException;
+		break;
+	case FASTTHROW_CLASSCAST:
+		eobj = NEW_LANG_EXCEPTION(ClassCastException);
+		break;
+	case FASTTHROW_ARRAYSTORE:
+		eobj = NEW_LANG_EXCEPTION(ArrayStoreException);
+		break;
+	default:
+		assert(!!!"Unexpected fast throw site");
+		return (NULL);
+	}
+
+	/* Replace the trace recorded by the constructor by an empty one */
+	info = gc_malloc(sizeof(stackTraceInfo), KGC_ALLOC_NOWALK);
+	if (info == NULL) {
+		return (NULL);
+	}
+	info[0].pc = 0;
+	info[0].fp = 0;
+	info[0].meth = ENDOFSTACK;
+
+	vmstate = unhand(eobj)->vmState;
+	if (vmstate == NULL) {
+		vmstate = (Hjava_lang_VMThrowable*)newObject(javaLangVMThrowable);
+		unhand(eobj)->vmState = vmstate;
+	}
+	unhand(vmstate)->vmdata = (Hjava_lang_Object*)info;
+
+	if (!gc_add_ref(eobj)) {
+		return (NULL);
+	}
+	return (eobj);
+}
+
+/**
+ * Count a throw from a VM-internal site and return the preallocated
+ * exception for it if the site is hot.
+ *
+ * @param site the throw site.
+ *
+ * @return the stackless exception to throw, or NULL if the caller should
+ *         create and throw a regular exception.
+ */
+Hjava_lang_Throwable*
+getFastThrowable(fastThrowSite site)
+{
+	Hjava_lang_Throwable* eobj;
+
+	assert(site < FASTTHROW_NSITES);
+
+	fastThrowCount[site]++;
+	if (fastThrowThreshold < 0 || fastThrowCount[site] <= fastThrowThreshold) {
+		return (NULL);
+	}
+
+	eobj = fastThrowable[site];
+	if (eobj == NULL) {
+		eobj = newStacklessThrowable(site);
+		if (eobj == NULL) {
+			return (NULL);
+		}
+		/* Another thread may have beaten us to it */
+		if (fastThrowable[site] != NULL) {
+			gc_rm_ref(eobj);
+			eobj = fastThrowable[site];
+		}
+		else {
+			fastThrowable[site] = eobj;
+		}
+	}
+	fastThrowOmitted[site]++;
+	return (eobj);
+}
+
+#if defined(KAFFE_STATS)
+static counter fastthrow;
+
+static const char* fastThrowSiteName[FASTTHROW_NSITES] = {
+	"nullpointer",
+	"badarrayindex",
+	"divzero",
+	"classcast",
+	"arraystore"
+};
+
+static void
+fastThrowReport(void)
+{
+	int i;
+
+	dprintf("%-30s %12s %12s\n", "#SITE", "THROWN", "STACKLESS");
+	for (i = 0; i < FASTTHROW_NSITES; i++) {
+		dprintf("%-30s %12lld %12lld\n", fastThrowSiteName[i],
+			(long long)fastThrowCount[i],
+			(long long)fastThrowOmitted[i]);
+	}
+}
+#endif
+
 static void
 dispatchException(Hjava_lang_Throwable* eobj, stackTraceInfo* baseFrame)
 {
@@ -512,6 +686,8 @@ DBG(INIT,
     );
 	/* Catch signals we need to convert to exceptions */
 	KTHREAD(initexceptions)(nullException, floatingException, stackOverflowException);
+
+	registerUserCounter(&fastthrow, "fastthrow", fastThrowReport);
 }
 
 /*
@@ -545,6 +721,14 @@ nullException(struct _exceptionFrame *frame)
 	Hjava_lang_VMThrowable* vmstate;
 	Hjava_lang_Object* backtrace;
 
+	npe = getFastThrowable(FASTTHROW_NULLPOINTER);
+	if (npe != NULL) {
+#if defined(HAVE_GCJ_SUPPORT)
+		FAKE_THROW_FRAME();
+#endif /* defined(HAVE_GCJ_SUPPORT) */
+		dispatchException(npe, (stackTraceInfo*)buildStackTrace(frame));
+	}
+
 	npe = (Hjava_lang_Throwable*)newObject(javaLangNullPointerException);
 	vmstate = (Hjava_lang_VMThrowable*)newObject(javaLangVMThrowable);
 	backtrace = buildStackTrace(frame);
@@ -567,6 +751,14 @@ floatingException(struct _exceptionFrame *frame)
 	Hjava_lang_VMThrowable* vmstate;
 	Hjava_lang_Object* backtrace;
 
+	ae = getFastThrowable(FASTTHROW_DIVZERO);
+	if (ae != NULL) {
+#if defined(HAVE_GCJ_SUPPORT)
+		FAKE_THROW_FRAME();
+#endif /* defined(HAVE_GCJ_SUPPORT) */
+		dispatchException(ae, (stackTraceInfo*)buildStackTrace(frame));
+	}
+
 	ae = (Hjava_lang_Throwable*)newObject(javaLangArithmeticException);
 	vmstate = (Hjava_lang_VMThrowable*)newObject(javaLangVMThrowable);
 	backtrace = buildStackTrace(frame);
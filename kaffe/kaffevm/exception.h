@@ -103,12 +103,32 @@ typedef struct VmExceptHandler {
 
 #define VMEXCEPTHANDLER_KAFFEJNI_HANDLER ((struct _jmethodID*)1)
 
+/*
+ * VM-internal throw sites which may reuse a preallocated exception
+ * without a stack trace once they have fired often enough.
+ * See KaffeVM_setFastThrowThreshold().
+ */
+typedef enum {
+	FASTTHROW_NULLPOINTER = 0,
+	FASTTHROW_BADARRAYINDEX,
+	FASTTHROW_DIVZERO,
+	FASTTHROW_CLASSCAST,
+	FASTTHROW_ARRAYSTORE,
+	FASTTHROW_NSITES
+} fastThrowSite;
+
 void throwException(struct Hjava_lang_Throwable*); 
 void throwExternalException(struct Hjava_lang_Throwable*);
 struct Hjava_lang_Throwable* error2Throwable(struct _errorInfo* einfo);
 
 void unhandledException(struct Hjava_lang_Throwable *eobj);
 
+void KaffeVM_setFastThrowThreshold(jint threshold);
+jint KaffeVM_getFastThrowThreshold(void);
+jlong KaffeVM_getFastThrowCount(fastThrowSite site);
+jlong KaffeVM_getFastThrowOmitted(fastThrowSite site);
+struct Hjava_lang_Throwable* getFastThrowable(fastThrowSite site);
+
 extern void initExceptions(void);
 
 bool vmExcept_isJNIFrame(VmExceptHandler* eh);
@@ -22,6 +22,10 @@
 #include "gtypes.h"
 #include "errors.h"
 
+#ifdef HAVE_STRING_H
+#include <string.h>
+#endif
+
 typedef enum ClassFileType {
 	CP_NULLCLASS = -1,
 	CP_INVALID  = 0,
@@ -47,35 +51,87 @@ extern void classFileInit(classFile* cf,
 			  const unsigned char* buf,
 			  size_t len,
 			  ClassFileType cft);
+/*
+ * Post a ClassFormatError for a truncated class file in einfo.
+ * Always returns false.
+ */
+extern bool classFileTruncated(const char* cfname,
+			       errorInfo* einfo);
+
+/*
+ * The readers below do not check the size of the buffer.  Parsers
+ * check a whole fixed size part of the class file once with
+ * checkBufSize, then decode it with the inline readers.
+ */
+
 /*
  * Check that the needed number of bytes are available.  If
  * not a ClassFormatError is posted in einfo.
  */
-extern bool checkBufSize(classFile* cf, 
-			 u4 need,
-			 const char* cfname,
-			 errorInfo* einfo);
+static inline bool
+checkBufSize(classFile* cf, u4 need, const char* cfname, errorInfo* einfo)
+{
+	assert(cf != NULL);
+	assert(cf->type != CP_INVALID);
+
+	if ((size_t)(cf->base + cf->size - cf->cur) < need) {
+		return classFileTruncated(cfname, einfo);
+	}
+	return true;
+}
+
+/* Decode a big-endian pair of bytes */
+static inline u2
+getu2(const unsigned char* p)
+{
+	return (u2)((p[0] << 8) | p[1]);
+}
+
+/* Decode a big-endian four-byte word */
+static inline u4
+getu4(const unsigned char* p)
+{
+	return (((u4)p[0]) << 24) | (((u4)p[1]) << 16)
+		| (((u4)p[2]) << 8) | ((u4)p[3]);
+}
 
 /* Read a single unsigned byte from cf */
-extern void readu1(u1* c, 
-		   classFile* cf);
+static inline void
+readu1(u1* c, classFile* cf)
+{
+	*c = cf->cur[0];
+	cf->cur += 1;
+}
 
 /* Read a pair of unsigned bytes from cf */
-extern void readu2(u2* c, 
-		   classFile* cf);
+static inline void
+readu2(u2* c, classFile* cf)
+{
+	*c = getu2(cf->cur);
+	cf->cur += 2;
+}
 
 /* Read a four-byte unsigned word from cf */
-extern void readu4(u4* c,
-		   classFile* cf);
+static inline void
+readu4(u4* c, classFile* cf)
+{
+	*c = getu4(cf->cur);
+	cf->cur += 4;
+}
 
 /* Read an arbitrary chunk from cf */
-extern void readm(void* dest,
-		  size_t len,
-		  size_t size,
-		  classFile* cf);
+static inline void
+readm(void* dest, size_t len, size_t size, classFile* cf)
+{
+	memcpy(dest, cf->cur, len*size);
+	cf->cur += len*size;
+}
 
 /* Skip over an arbitrary chunk of cf */
-extern void seekm(classFile*cf,
-		  size_t len);
+static inline void
+seekm(classFile* cf, size_t len)
+{
+	cf->cur += len;
+}
 
 #endif /* kaffe_kaffevm_file_h */
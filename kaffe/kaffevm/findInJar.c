@@ -31,11 +31,13 @@
 #include "jsyscall.h"
 #include "jni.h"
 #include "classpath.h"
+#include "classArchive.h"
 #include "stringSupport.h"
 #include "stats.h"
 #include "access.h"
 #include "gcj/gcj.h"
 #include "defs.h"
+#include "hashtab.h"
 
 #if defined(HAVE_SYS_TYPES_H)
 #include <sys/types.h>
@@ -64,11 +66,12 @@ static int getClasspathType(const char*);
 static void discoverClasspath(const char*);
 static void makeClasspath(char*);
 static void findClassInJar(char*, classFile*, struct _errorInfo*);
+static bool findClassInArchive(const char*, classFile*);
 static int insertClasspath(const char* cp, int prepend);
 
 #if defined(HANDLE_MANIFEST_CLASSPATH)
 static int isEntryInClasspath(const char*);
-static char* getManifestMainAttribute(ZZIP_DIR*, const char*);
+static char* getManifestMainAttribute(jarFile*, const char*);
 static void handleManifestClassPath (classpathEntry *);
 #endif
 
@@ -114,12 +117,15 @@ DBG(GCJ,	dprintf(__FUNCTION__": adding class %s to pool@%p\n",
 DBG(CLASSLOOKUP,
 	dprintf("Scanning for class %s\n", cname);		);
 
-	buf = checkPtr(KMALLOC(strlen(cname) + 8));
-	sprintf(buf, "%s.class", cname);
+	/* Boot classes in the class archive need no class path search */
+	if (!findClassInArchive(cname, &hand)) {
+		buf = checkPtr(KMALLOC(strlen(cname) + 8));
+		sprintf(buf, "%s.class", cname);
 
-	/* Find class in Jar file */
-	findClassInJar(buf, &hand, einfo);
-	KFREE(buf);
+		/* Find class in Jar file */
+		findClassInJar(buf, &hand, einfo);
+		KFREE(buf);
+	}
 	if (hand.type == CP_NULLCLASS) {
 		discardErrorInfo(einfo);
 		postExceptionMessage(einfo, JAVA_LANG(ClassFormatError),
@@ -150,8 +156,12 @@ DBG(CLASSLOOKUP,
 		utf8ConstAssign(class->name, centry->name);
 		class->centry = centry;
 		class = readClass(class, &hand, NULL, einfo);
+		if (class != NULL && hand.type == CP_ZIPFILE) {
+			recordClassArchive(cname, hand.base, hand.size);
+		}
 
-		if (hand.base != NULL) {
+		/* stored jar entries are read in place and own no memory */
+		if (hand.mem != NULL) {
 #if defined(KAFFE_STATS)
 			if (hand.type == CP_ZIPFILE) {
 				addToCounter(&jarmem, "vmmem-jar files", 1,
@@ -182,7 +192,355 @@ DBG(CLASSLOOKUP,
 	return (NULL);
 }
 
-static iStaticLock	jarlock;
+/* Serialises changes to the classpath list, see classpath.h */
+static iStaticLock	classpathLock;
+
+/*
+ * Package index.  Each package maps to the classpath entries that may
+ * hold its classes, in classpath order: every jar containing the
+ * package and every directory.  Packages no jar contains use cpDirs.
+ * The index is rebuilt under classpathLock on the first lookup after
+ * the classpath changed.
+ */
+typedef struct _cpPackage {
+	const char*		name;
+	int			nentries;
+	int			size;
+	classpathEntry**	entries;
+	struct _cpPackage*	next;
+} cpPackage;
+
+/*
+ * Names that were found nowhere.  Only names whose search involved no
+ * directory are remembered, since files may appear in a directory at
+ * any time.
+ */
+typedef struct _cpMiss {
+	struct _cpMiss*		next;
+	char*			name;
+} cpMiss;
+
+#define	CP_MISS_MAX	4096
+
+static hashtab_t	cpIndex;
+static cpPackage*	cpPackages;
+static cpPackage	cpDirs;
+static int		cpGeneration;		/* bumped on every change */
+static int		cpIndexGeneration = -1;
+static hashtab_t	cpMisses;
+static cpMiss*		cpMissList;
+static int		cpMissCount;
+
+static int
+hashName(const char* name)
+{
+	int h = 0;
+
+	while (*name != '\0') {
+		h = h * 31 + (unsigned char)*name++;
+	}
+	return (h);
+}
+
+static int
+cpNameHash(const void* name)
+{
+	return (hashName((const char*)name));
+}
+
+static int
+cpNameComp(const void* name1, const void* name2)
+{
+	return (strcmp((const char*)name1, (const char*)name2));
+}
+
+static int
+cpPackageHash(const void* pkg)
+{
+	return (hashName(((const cpPackage*)pkg)->name));
+}
+
+static int
+cpPackageComp(const void* pkg1, const void* pkg2)
+{
+	return (strcmp(((const cpPackage*)pkg1)->name,
+		       ((const cpPackage*)pkg2)->name));
+}
+
+static int
+cpMissHash(const void* miss)
+{
+	return (hashName(((const cpMiss*)miss)->name));
+}
+
+static int
+cpMissComp(const void* miss1, const void* miss2)
+{
+	return (strcmp(((const cpMiss*)miss1)->name,
+		       ((const cpMiss*)miss2)->name));
+}
+
+static void
+appendEntry(cpPackage* pkg, classpathEntry* ptr)
+{
+	if (pkg->nentries == pkg->size) {
+		pkg->size = pkg->size == 0 ? 4 : pkg->size * 2;
+		pkg->entries = checkPtr(KREALLOC(pkg->entries,
+			sizeof(classpathEntry*) * pkg->size));
+	}
+	pkg->entries[pkg->nentries++] = ptr;
+}
+
+static cpPackage*
+findPackage(const char* name)
+{
+	cpPackage key;
+
+	key.name = name;
+	return (hashFind(cpIndex, &key));
+}
+
+/*
+ * Add a package to the index.  It starts out with the directories
+ * that precede the jar it was found in.
+ */
+static cpPackage*
+newPackage(const char* name)
+{
+	cpPackage* pkg;
+	int i;
+
+	pkg = checkPtr(KMALLOC(sizeof(cpPackage)));
+	pkg->name = name;
+	for (i = 0; i < cpDirs.nentries; i++) {
+		appendEntry(pkg, cpDirs.entries[i]);
+	}
+	pkg->next = cpPackages;
+	cpPackages = pkg;
+	checkPtr(hashAdd(cpIndex, pkg));
+	return (pkg);
+}
+
+/*
+ * Open a jar and record the packages it contains.  This is done once
+ * per jar, the package names are kept in the classpath entry.  Call
+ * with classpathLock held.
+ */
+static void
+indexJar(classpathEntry* ptr)
+{
+	hashtab_t seen;
+	const char* entryName;
+	const char* slash;
+	char* name;
+	size_t len;
+	int i;
+
+	if (ptr->indexed) {
+		return;
+	}
+	ptr->indexed = 1;
+
+	ptr->u.jar = openJarFile(ptr->path);
+	if (ptr->u.jar == 0) {
+		return;
+	}
+#if defined(HANDLE_MANIFEST_CLASSPATH)
+	/* handle Manifest Class-Path attribute */
+	handleManifestClassPath (ptr);
+#endif
+
+	seen = checkPtr(hashInit(cpNameHash, cpNameComp, NULL, NULL));
+	for (i = 0; i < ptr->u.jar->count; i++) {
+		entryName = ptr->u.jar->entries[i].name;
+		slash = strrchr(entryName, '/');
+		if (slash != NULL && slash[1] == '\0') {
+			continue;	/* a directory */
+		}
+		len = slash != NULL ? (size_t)(slash - entryName) : 0;
+		name = checkPtr(KMALLOC(len + 1));
+		strncpy(name, entryName, len);
+		name[len] = '\0';
+		if (checkPtr(hashAdd(seen, name)) != name) {
+			KFREE(name);
+			continue;
+		}
+		if ((ptr->npackages & (ptr->npackages - 1)) == 0) {
+			ptr->packages = checkPtr(KREALLOC(ptr->packages,
+				sizeof(char*) * (ptr->npackages == 0 ?
+						 1 : ptr->npackages * 2)));
+		}
+		ptr->packages[ptr->npackages++] = name;
+	}
+	hashDestroy(seen);
+}
+
+static void
+forgetMisses(void)
+{
+	cpMiss* miss;
+
+	while (cpMissList != NULL) {
+		miss = cpMissList;
+		cpMissList = miss->next;
+		KFREE(miss);
+	}
+	cpMissCount = 0;
+	if (cpMisses != NULL) {
+		hashDestroy(cpMisses);
+	}
+	cpMisses = checkPtr(hashInit(cpMissHash, cpMissComp, NULL, NULL));
+}
+
+/*
+ * Bring the package index up to date.  Call with classpathLock held.
+ * Opening a jar may add its manifest Class-Path entries right behind
+ * it, and those are indexed in the same pass.
+ */
+static void
+updateClasspathIndex(void)
+{
+	classpathEntry* ptr;
+	cpPackage* pkg;
+	int i;
+
+	while (cpIndexGeneration != cpGeneration) {
+		cpIndexGeneration = cpGeneration;
+
+		while (cpPackages != NULL) {
+			pkg = cpPackages;
+			cpPackages = pkg->next;
+			KFREE(pkg->entries);
+			KFREE(pkg);
+		}
+		if (cpIndex != NULL) {
+			hashDestroy(cpIndex);
+		}
+		cpIndex = checkPtr(hashInit(cpPackageHash, cpPackageComp,
+					    NULL, NULL));
+		cpDirs.nentries = 0;
+		forgetMisses();
+
+		for (ptr = classpath; ptr != 0; ptr = ptr->next) {
+			switch (ptr->type) {
+			case CP_ZIPFILE:
+				indexJar(ptr);
+				for (i = 0; i < ptr->npackages; i++) {
+					pkg = findPackage(ptr->packages[i]);
+					if (pkg == NULL) {
+						pkg = newPackage(ptr->packages[i]);
+					}
+					appendEntry(pkg, ptr);
+				}
+				break;
+
+			case CP_DIR:
+				appendEntry(&cpDirs, ptr);
+				for (pkg = cpPackages; pkg != 0; pkg = pkg->next) {
+					appendEntry(pkg, ptr);
+				}
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+}
+
+/*
+ * Get the classpath entries that may hold cname, in the order they
+ * must be searched.  Call with classpathLock held.
+ */
+static cpPackage*
+lookupPackage(char* cname)
+{
+	cpPackage* pkg;
+	char* slash;
+
+	slash = strrchr(cname, '/');
+	if (slash == NULL) {
+		pkg = findPackage("");
+	}
+	else {
+		*slash = '\0';
+		pkg = findPackage(cname);
+		*slash = '/';
+	}
+	return (pkg != NULL ? pkg : &cpDirs);
+}
+
+static bool
+isKnownMiss(const char* cname)
+{
+	cpMiss key;
+
+	key.name = (char*)cname;
+	return (hashFind(cpMisses, &key) != NULL);
+}
+
+static void
+rememberMiss(const char* cname)
+{
+	cpMiss* miss;
+
+	if (cpMissCount >= CP_MISS_MAX) {
+		forgetMisses();
+	}
+	miss = KMALLOC(sizeof(cpMiss) + strlen(cname) + 1);
+	if (miss == NULL) {
+		return;
+	}
+	miss->name = (char*)(miss+1);
+	strcpy(miss->name, cname);
+	if (hashAdd(cpMisses, miss) != miss) {
+		KFREE(miss);
+		return;
+	}
+	miss->next = cpMissList;
+	cpMissList = miss;
+	cpMissCount++;
+}
+
+/*
+ * Take the class straight from the class archive, if the archive was
+ * written with the current class path.  Whether it was is decided again
+ * whenever the class path changes.
+ */
+static bool
+findClassInArchive(const char* cname, classFile* hand)
+{
+	static int archiveGeneration = -1;
+	static bool archiveMatches;
+	const unsigned char* data;
+	size_t length;
+	bool matches;
+
+	if (!isClassArchiveMapped()) {
+		return (false);
+	}
+
+	lockStaticMutex(&classpathLock);
+	if (archiveGeneration != cpGeneration) {
+		archiveGeneration = cpGeneration;
+		archiveMatches = classArchiveMatches();
+	}
+	matches = archiveMatches;
+	unlockStaticMutex(&classpathLock);
+
+	if (!matches) {
+		return (false);
+	}
+	data = lookupClassArchive(cname, &length);
+	if (data == NULL) {
+		return (false);
+	}
+	classFileInit(hand, NULL, data, length, CP_ZIPFILE);
+	if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+		dprintf("Loading %s(class archive)\n", cname);
+	}
+	return (true);
+}
 
 /*
  * Locate the given name in the CLASSPATH.  Fill in the provided
@@ -197,6 +555,13 @@ findClassInJar(char* cname, classFile* hand, errorInfo *einfo)
 	char *buf;
 	int fp;
 	classpathEntry* ptr;
+	classpathEntry* local[16];
+	classpathEntry** entries;
+	cpPackage* pkg;
+	int nentries;
+	int generation;
+	bool sawDir;
+	int n;
 	int i;
 	int rc;
 
@@ -205,42 +570,73 @@ DBG(CLASSLOOKUP,  dprintf("Scanning for element %s\n", cname); );
 
 	hand->type = CP_INVALID;
 
-	/* One into the jar at once */
-	lockStaticMutex(&jarlock);
+	/* Take a copy of the entries the index says to search */
+	lockStaticMutex(&classpathLock);
+	updateClasspathIndex();
+	generation = cpGeneration;
+	entries = local;
+	nentries = 0;
+	if (!isKnownMiss(cname)) {
+		pkg = lookupPackage(cname);
+		nentries = pkg->nentries;
+		if (nentries > (int)(sizeof(local) / sizeof(local[0]))) {
+			entries = KMALLOC(sizeof(classpathEntry*) * nentries);
+			if (entries == NULL) {
+				unlockStaticMutex(&classpathLock);
+				postOutOfMemory(einfo);
+				return;
+			}
+		}
+		for (n = 0; n < nentries; n++) {
+			entries[n] = pkg->entries[n];
+		}
+	}
+	unlockStaticMutex(&classpathLock);
 
-	for (ptr = classpath; ptr != 0; ptr = ptr->next) {
+	sawDir = false;
+	for (n = 0; n < nentries; n++) {
+		ptr = entries[n];
 DBG(CLASSLOOKUP,dprintf("Processing classpath entry '%s'\n", ptr->path); );
 		switch (ptr->type) {
 		case CP_ZIPFILE:
 		{
-		        ZZIP_FILE * entry;
+			jarEntry* entry;
+			const unsigned char* stored;
 			unsigned char* data;
 			zzip_size_t length;
 
 DBG(CLASSLOOKUP,	dprintf("Opening JAR file %s for %s\n", ptr->path, cname); );
-			if (ptr->u.jar == 0) {
-				ptr->u.jar = zzip_opendir(ptr->path);
-				if (ptr->u.jar == 0) {
-					break;
-				}
-#if defined(HANDLE_MANIFEST_CLASSPATH)
-				/* handle Manifest Class-Path attribute */
-				handleManifestClassPath (ptr);
-#endif
-			}
-
-			entry = zzip_file_open(ptr->u.jar, cname, 0);
+			entry = lookupJarEntry(ptr->u.jar, cname);
 			if (entry == 0) {
 				break;
 			}
-			length = getUncompressedSize(entry);
+			length = getJarEntrySize(entry);
 			if (0 == length) {
 				hand->type = CP_NULLCLASS;
 				goto done;
 			}
-			data = getDataJarFile(entry);
-			zzip_file_close(entry);
+
+			/* Stored classes are parsed straight from the mapping */
+			stored = getStoredJarEntry(ptr->u.jar, entry);
+			if (stored != NULL) {
+				classFileInit(hand,
+					      NULL,
+					      stored,
+					      length,
+					      CP_ZIPFILE);
+				if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+					dprintf("Loading %s(%s)\n", cname, ptr->path);
+				}
+				goto done;
+			}
+
+			data = KMALLOC(length);
 			if (data == 0) {
+				postOutOfMemory(einfo);
+				goto done;
+			}
+			if (!readJarEntry(ptr->u.jar, entry, data)) {
+				KFREE(data);
 				postExceptionMessage(einfo,
 					JAVA_IO(IOException),
 					"Couldn't extract data from jar %s",
@@ -265,6 +661,7 @@ DBG(CLASSLOOKUP,	dprintf("Opening JAR file %s for %s\n", ptr->path, cname); );
 			struct stat sbuf;
 			unsigned char* data;
 
+			sawDir = true;
 			buf = checkPtr(KMALLOC(strlen(ptr->path)
 			    + strlen(file_separator) + strlen(cname) + 1));
 			sprintf(buf, "%s%s%s",
@@ -345,6 +742,14 @@ DBG(CLASSLOOKUP,	dprintf("Opening java file %s for %s\n", buf, cname); );
 	/* If we call out the loop then we didn't find anything */
 	assert (hand->type == CP_INVALID);
 
+	if (!sawDir) {
+		lockStaticMutex(&classpathLock);
+		if (generation == cpGeneration) {
+			rememberMiss(cname);
+		}
+		unlockStaticMutex(&classpathLock);
+	}
+
 	/* cut off the ".class" suffix for the exception msg */
 	cname[strlen(cname) - strlen(".class")] = '\0';
 	/*
@@ -357,7 +762,9 @@ DBG(CLASSLOOKUP,	dprintf("Opening java file %s for %s\n", buf, cname); );
 			     cname);
 
 	done:;
-	unlockStaticMutex(&jarlock);
+	if (entries != local) {
+		KFREE(entries);
+	}
 }
 
 /*
@@ -376,7 +783,7 @@ initClasspath(void)
 	cp = Kaffe_JavaVMArgs.bootClasspath;
 	hm = Kaffe_JavaVMArgs.classhome;
 
-	initStaticLock(&jarlock);
+	initStaticLock(&classpathLock);
 
 	if (cp != NULL && cp[0] != '\0') {
 		/* cp may reside in read-only memory, but
@@ -393,6 +800,8 @@ initClasspath(void)
            }
         }
 
+	initClassArchive();
+
 	len = 0;
 	for (ptr = classpath; ptr != 0; ptr = ptr->next) {
 		len += strlen(ptr->path) + 1;
@@ -539,10 +948,12 @@ DBG(INITCLASSPATH,
 	if (*cp == '\0')
 		return (0);
 
+	lockStaticMutex(&classpathLock);
 	lptr = NULL;
 	for (ptr = classpath; ptr != 0; ptr = ptr->next) {
 		if (strcmp(ptr->path, cp) == 0) {
 			/* Already in */
+			unlockStaticMutex(&classpathLock);
 			return (0);
 		}
 		lptr = ptr;
@@ -566,6 +977,8 @@ DBG(INITCLASSPATH,
 		ptr->next = NULL;
 		lptr->next = ptr;
 	}
+	cpGeneration++;
+	unlockStaticMutex(&classpathLock);
 	return(1);
 }
 
@@ -630,9 +1043,9 @@ isEntryInClasspath(const char *path)
 
 
 static char*
-getManifestMainAttribute(ZZIP_DIR* file, const char* attrName)
+getManifestMainAttribute(jarFile* file, const char* attrName)
 {
-	ZZIP_FILE* mf;
+	jarEntry* mf;
 	char* mfdata;
 	char* attrEntry;
 	char* ret;
@@ -640,17 +1053,20 @@ getManifestMainAttribute(ZZIP_DIR* file, const char* attrName)
 	int posAttrValue;
 
 	/* Locate manifest entry in jar */
-	mf = zzip_file_open(file, "META-INF/MANIFEST.MF", 0);
+	mf = lookupJarEntry(file, "META-INF/MANIFEST.MF");
 	if (mf == 0)
 		return (NULL);
 
 	/* Read it */
-	manifest_length = getUncompressedSize(mf);
-	mfdata = (char*)getDataJarFile(mf);
-	zzip_file_close(mf);
+	manifest_length = getJarEntrySize(mf);
+	mfdata = KMALLOC((size_t)manifest_length + 1);
 	if (mfdata == 0) {
 	  return (NULL);
 	}
+	if (!readJarEntry(file, mf, mfdata)) {
+	  KFREE(mfdata);
+	  return (NULL);
+	}
 
 	/* Look for the desired entry */
 	attrEntry = mfdata;
@@ -762,13 +1178,17 @@ handleManifestClassPath (classpathEntry *ptr)
 		/* Check if newEntry is a valid classpath element add it to
                    classpath if it wasn't already there. */
 		newEntry->type = getClasspathType (newEntry->path);
+		lockStaticMutex(&classpathLock);
 		if ((newEntry->type != CP_INVALID) &&
 		    !isEntryInClasspath (newEntry->path)) {
 DBG(CLASSLOOKUP,	dprintf("Entry '%s' added to classpath\n", newEntry->path); );
 			newEntry->next = ptr->next;
 			ptr->next = newEntry;
+			cpGeneration++;
+			unlockStaticMutex(&classpathLock);
 		}
 		else {
+			unlockStaticMutex(&classpathLock);
 			KFREE(newEntry->path);
 			KFREE(newEntry);
 		}
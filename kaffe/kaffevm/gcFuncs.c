@@ -183,38 +183,14 @@ DBG(CLASSGC,
 
         KFREE(clazz->if2itable);
 
-	if (clazz->implementors != NULL)
+	if (clazz->methodIndex != NULL)
 	  {
-	    uintp len, uidx;
-
-	    len = (uintp)clazz->implementors[0] + 1;
-	    for (uidx = 1; uidx < len; uidx++)
-	      {
-		void *impl = clazz->implementors[uidx];
-		Hjava_lang_Class **impl_clazz;
-
-		if (impl == NULL)
-		  continue;
-		
-		impl_clazz = (Hjava_lang_Class **)KGC_getObjectBase(collector, impl);
-		assert(impl_clazz != NULL);
+	    KFREE(clazz->methodIndex);
+	  }
 
-		/* We must walk the list of interfaces for this class and
-		 * unregister this interface. As the class should also be
-		 * freed (in the other case this interface would not have 
-		 * been destroyed), there is no problem with this.
-		 */
-		for (i = 0; i < (*impl_clazz)->total_interface_len; i++)
-		  if ((*impl_clazz)->interfaces[i] == clazz)
-		    {
-		      (*impl_clazz)->interfaces[i] = NULL;
-		      /* We cannot break here because there may exist
-		       * duplicates in the current list.
-		       */
-		    }
-	      }
-	    
-	    KFREE(clazz->implementors);
+	if (clazz->itable_hash != NULL)
+	  {
+	    KFREE(clazz->itable_hash);
 	  }
 
 	if (clazz->interfaces)
@@ -222,16 +198,6 @@ DBG(CLASSGC,
 
 	if( clazz->itable2dtable )
 	{
-	  for (i = 0; i < clazz->total_interface_len; i++) {
-	    Hjava_lang_Class* iface = clazz->interfaces[i];
-	    
-	    /* only if interface has not been freed already. We
-	     * update the implementors section of the interface
-	     * accordingly.
-	     */
-	    if (iface != NULL)
-	      iface->implementors[clazz->impl_index] = NULL;
-	  }
 	  /* The itable2dtable table will be automatically swept by the
 	   * GC when the class becomes unused as it is only marked while
 	   * the class is being walked (see walkClass).
@@ -159,6 +159,7 @@ static const uintptr_t UNINITIALIZED_STACK_SLOT = 0x00c0ffee;
 
 #define	monitor_enter()				/* Not needed for interpreter */
 #define	monitor_exit()				/* Not needed for interpreter */
+#define	safepoint_poll()			jthread_safepoint_poll()
 
 #define	start_function()			/* Not needed for interpreter */
 #define	start_basic_block()			/* Not needed for interpreter */
@@ -11,9 +11,14 @@
  * of this file, and for a DISCLAIMER OF ALL WARRANTIES.
  */
 
+#include "config.h"
+#include "config-std.h"
+#include "config-mem.h"
 #include "kaffe/jmalloc.h"
 #include "jar.h"
 
+#include <zzip/fetch.h>
+
 void *getDataJarFile(ZZIP_FILE *je)
 {
   zzip_ssize_t size = getUncompressedSize(je);
@@ -40,4 +45,155 @@ zzip_ssize_t getUncompressedSize(ZZIP_FILE * je)
   return -1;
 }
 
+static unsigned int
+hashJarName(const char* name)
+{
+  unsigned int h = 0;
+
+  while (*name != '\0')
+    h = h * 31 + (unsigned char)*name++;
+  return h;
+}
+
+jarFile* openJarFile(const char* path)
+{
+  jarFile* jf;
+  struct zzip_disk_entry* dirent;
+  jarEntry* je;
+  unsigned int slot;
+  int i;
+
+  jf = KMALLOC(sizeof(jarFile));
+  if (NULL == jf)
+    return NULL;
+
+  jf->disk = zzip_disk_open((char*)path);
+  if (NULL == jf->disk) {
+    KFREE(jf);
+    return NULL;
+  }
+  jf->count = 0;
+  jf->entries = NULL;
+  jf->table = NULL;
+
+  for (dirent = zzip_disk_findfirst(jf->disk); NULL != dirent;
+       dirent = zzip_disk_findnext(jf->disk, dirent))
+    jf->count++;
+
+  /* Keep the table at most half full */
+  jf->tableSize = 16;
+  while (jf->tableSize < 2 * jf->count)
+    jf->tableSize *= 2;
+
+  jf->entries = KMALLOC(sizeof(jarEntry) * (jf->count + 1));
+  jf->table = KMALLOC(sizeof(jarEntry*) * jf->tableSize);
+  if (NULL == jf->entries || NULL == jf->table) {
+    closeJarFile(jf);
+    return NULL;
+  }
+  memset(jf->table, 0, sizeof(jarEntry*) * jf->tableSize);
+
+  i = 0;
+  for (dirent = zzip_disk_findfirst(jf->disk); NULL != dirent && i < jf->count;
+       dirent = zzip_disk_findnext(jf->disk, dirent)) {
+    je = &jf->entries[i];
+    je->name = zzip_disk_entry_strdup_name(jf->disk, dirent);
+    if (NULL == je->name)
+      continue;
+    je->dirent = dirent;
+    slot = hashJarName(je->name) & (jf->tableSize - 1);
+    je->next = jf->table[slot];
+    jf->table[slot] = je;
+    i++;
+  }
+  jf->count = i;
+
+  return jf;
+}
+
+void closeJarFile(jarFile* jf)
+{
+  int i;
+
+  if (NULL != jf->entries) {
+    for (i = 0; i < jf->count; i++)
+      free(jf->entries[i].name);
+    KFREE(jf->entries);
+  }
+  if (NULL != jf->table)
+    KFREE(jf->table);
+  zzip_disk_close(jf->disk);
+  KFREE(jf);
+}
+
+jarEntry* lookupJarEntry(jarFile* jf, const char* name)
+{
+  jarEntry* je;
+
+  for (je = jf->table[hashJarName(name) & (jf->tableSize - 1)];
+       NULL != je; je = je->next) {
+    if (0 == strcmp(je->name, name))
+      return je;
+  }
 
+  return NULL;
+}
+
+zzip_size_t getJarEntrySize(jarEntry* je)
+{
+  return zzip_disk_entry_get_usize(je->dirent);
+}
+
+zzip_size_t getJarEntryCompressedSize(jarEntry* je)
+{
+  return zzip_disk_entry_get_csize(je->dirent);
+}
+
+int getJarEntryMethod(jarEntry* je)
+{
+  return zzip_disk_entry_get_compr(je->dirent);
+}
+
+const unsigned char* getStoredJarEntry(jarFile* jf, jarEntry* je)
+{
+  zzip_byte_t* data;
+
+  if (ZZIP_IS_STORED != getJarEntryMethod(je))
+    return NULL;
+
+  data = zzip_disk_entry_to_data(jf->disk, je->dirent);
+  if (NULL == data
+      || data + getJarEntrySize(je) > jf->disk->endbuf)
+    return NULL;
+
+  return data;
+}
+
+int readJarEntry(jarFile* jf, jarEntry* je, void* buf)
+{
+  ZZIP_DISK_FILE* file;
+  zzip_size_t size = getJarEntrySize(je);
+  zzip_size_t done = 0;
+  zzip_size_t n;
+  const unsigned char* data;
+
+  data = getStoredJarEntry(jf, je);
+  if (NULL != data) {
+    memcpy(buf, data, size);
+    return 1;
+  }
+
+  /* Inflate straight into the caller's buffer */
+  file = zzip_disk_entry_fopen(jf->disk, je->dirent);
+  if (NULL == file)
+    return 0;
+  while (done < size) {
+    n = zzip_disk_fread((char*)buf + done, 1, size - done, file);
+    if (0 == n)
+      break;
+    done += n;
+  }
+  zzip_disk_fclose(file);
+
+  return done == size;
+}
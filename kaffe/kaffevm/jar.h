@@ -18,6 +18,7 @@
 #define __jar_h
 
 #include <zzip/zzip.h>
+#include <zzip/mmapped.h>
 
 /*
  * Read in and, if necessary, decompress the contents of a file stored in a
@@ -36,4 +37,69 @@ void *getDataJarFile(ZZIP_FILE *je);
  */
 zzip_ssize_t getUncompressedSize(ZZIP_FILE * je);
 
+/*
+ * A JAR file read through an mmap of the whole file.  The central
+ * directory is read once into a hash table and entries are read
+ * straight out of the mapping, so any number of threads may read the
+ * same jarFile at once.
+ */
+typedef struct _jarEntry {
+	char*			name;
+	struct zzip_disk_entry*	dirent;
+	struct _jarEntry*	next;		/* hash chain */
+} jarEntry;
+
+typedef struct _jarFile {
+	ZZIP_DISK*		disk;
+	int			count;
+	jarEntry*		entries;	/* in central directory order */
+	int			tableSize;
+	jarEntry**		table;
+} jarFile;
+
+/**
+ * Map a JAR file and read its central directory.
+ *
+ * @param path JAR file name
+ * @return the JAR file or NULL if it can't be mapped.
+ */
+jarFile* openJarFile(const char* path);
+
+/**
+ * Unmap a JAR file.  Pointers from getStoredJarEntry become invalid.
+ */
+void closeJarFile(jarFile* jf);
+
+/**
+ * Find an entry by name.
+ *
+ * @return the entry or NULL if there is none.
+ */
+jarEntry* lookupJarEntry(jarFile* jf, const char* name);
+
+/** @return the uncompressed length of an entry. */
+zzip_size_t getJarEntrySize(jarEntry* je);
+
+/** @return the compressed length of an entry. */
+zzip_size_t getJarEntryCompressedSize(jarEntry* je);
+
+/** @return the compression method of an entry. */
+int getJarEntryMethod(jarEntry* je);
+
+/**
+ * Get the contents of a stored (uncompressed) entry without copying.
+ *
+ * @return a pointer into the mapping, valid until the JAR file is
+ * closed, or NULL if the entry is compressed.
+ */
+const unsigned char* getStoredJarEntry(jarFile* jf, jarEntry* je);
+
+/**
+ * Inflate or copy the contents of an entry into buf, which must hold
+ * getJarEntrySize(je) bytes.
+ *
+ * @return 1 on success, 0 if the entry is damaged.
+ */
+int readJarEntry(jarFile* jf, jarEntry* je, void* buf);
+
 #endif
@@ -294,6 +294,8 @@ void softcall_instanceof(SlotInfo*, SlotInfo*, struct Hjava_lang_Class*);
 void softcall_monitorenter(SlotInfo*);
 void softcall_monitorexit(SlotInfo*);
 void softcall_initialise_class(struct Hjava_lang_Class*);
+void resetInitialisedClasses(void);
+void safepoint_poll(void);
 void softcall_addreference(SlotInfo*, SlotInfo*);
 void softcall_addreference_static(void*, SlotInfo*);
 void softcall_nosuchclass(Utf8Const*);
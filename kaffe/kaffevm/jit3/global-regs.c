@@ -16,6 +16,7 @@
  */
 
 #include "config.h"
+#include "bytecode.h"
 #include "code-analyse.h"
 #include "gc.h"
 #include "global-regs.h"
@@ -27,6 +28,16 @@
 
 #if defined(NR_GLOBALS)
 
+/*
+ * Each loop a local is live in multiplies its weight by this much,
+ * up to MAXLOOPDEPTH loops.
+ */
+#define	LOOPWEIGHTSHIFT		3
+#define	MAXLOOPDEPTH		4
+
+/* Weight of each local, for sortSlots */
+static int32* slotWeight;
+
 static
 void
 bindSlotToGlobal(int lcl, int r, int type)
@@ -63,16 +74,16 @@ static
 int
 sortSlots(const void* s1, const void* s2)
 {
-	localUse* lcluse1;
-	localUse* lcluse2;
+	int32 w1;
+	int32 w2;
 
-	lcluse1 = &codeInfo->localuse[*((SlotInfo* const*)s1) - localinfo];
-	lcluse2 = &codeInfo->localuse[*((SlotInfo* const*)s2) - localinfo];
+	w1 = slotWeight[*((SlotInfo* const*)s1) - localinfo];
+	w2 = slotWeight[*((SlotInfo* const*)s2) - localinfo];
 
-	if (lcluse1->use == lcluse2->use) {
+	if (w1 == w2) {
 		return (0);
 	}
-	else if (lcluse1->use > lcluse2->use) {
+	else if (w1 > w2) {
 		return (-1);
 	}
 	else {
@@ -80,6 +91,83 @@ sortSlots(const void* s1, const void* s2)
 	}
 }
 
+/*
+ * Weigh the locals of the method in codeInfo.
+ *
+ * The live range of a local is taken to be [first, last] from the code
+ * analysis.  A local whose live range overlaps a loop - the range from
+ * the target of a backward branch to the branch - is carried around
+ * that loop and needs a reload on every iteration unless it sits in a
+ * global register, so its use count is scaled up by the number of
+ * loops it is live in.
+ */
+static
+void
+weighSlots(int32* weight)
+{
+	/* read by INSN(), WORD() and DWORD() */
+	Method* meth = globalMethod;
+	int32* loopstart;
+	int32* loopend;
+	int nloops;
+	int lcl;
+	int depth;
+	int i;
+	int32 pc;
+	int32 tabpc;
+	localUse* lu;
+
+	loopstart = gc_malloc(2 * (1+codeInfo->codelen) * sizeof(int32),
+			      KGC_ALLOC_JIT_SLOTS);
+	if (loopstart == NULL) {
+		KaffeJIT3_exitWithOOM();
+	}
+	loopend = loopstart + 1 + codeInfo->codelen;
+
+	/* Find the backward branches */
+	nloops = 0;
+	for (pc = 0; pc < codeInfo->codelen; pc++) {
+		if (!IS_STARTOFINSTRUCTION(pc) || (FLAGS(pc) & FLAG_JUMP) == 0) {
+			continue;
+		}
+		switch (INSN(pc)) {
+		case IFEQ:	case IFNE:	case IFLT:
+		case IFGE:	case IFGT:	case IFLE:
+		case IF_ICMPEQ: case IF_ICMPNE:
+		case IF_ICMPLT: case IF_ICMPGE:
+		case IF_ICMPGT: case IF_ICMPLE:
+		case IF_ACMPEQ: case IF_ACMPNE:
+		case IFNULL:	case IFNONNULL:
+		case GOTO:
+			tabpc = pc + WORD(pc+1);
+			break;
+		case GOTO_W:
+			tabpc = pc + DWORD(pc+1);
+			break;
+		default:
+			continue;
+		}
+		if (tabpc <= pc) {
+			loopstart[nloops] = tabpc;
+			loopend[nloops] = pc;
+			nloops++;
+		}
+	}
+
+	for (lcl = 0; lcl < maxLocal; lcl++) {
+		lu = &codeInfo->localuse[lcl];
+		depth = 0;
+		for (i = 0; i < nloops && depth < MAXLOOPDEPTH; i++) {
+			if (lu->first <= loopend[i] && lu->last >= loopstart[i]) {
+				depth++;
+			}
+		}
+		weight[lcl] = lu->use << (LOOPWEIGHTSHIFT * depth);
+	}
+
+	gc_free(loopstart);
+}
+
 /*
  * Setup global registers
  */
@@ -101,12 +189,18 @@ setupGlobalRegisters(void)
 	slots = gc_malloc((1+maxLocal) * sizeof(SlotInfo*), KGC_ALLOC_JIT_SLOTS);
 	if (slots == NULL)
 	  KaffeJIT3_exitWithOOM();
+	slotWeight = gc_malloc((1+maxLocal) * sizeof(int32), KGC_ALLOC_JIT_SLOTS);
+	if (slotWeight == NULL) {
+		gc_free(slots);
+		KaffeJIT3_exitWithOOM();
+	}
 
 	for (j = 0; j < maxLocal; j++) {
 		slots[j] = &localinfo[j];
 	}
 
 	/* Sort the slots to the most used is first */
+	weighSlots(slotWeight);
 	qsort(slots, maxLocal, sizeof(SlotInfo*), sortSlots);
 
 	/* Allocate the slots to globals */
@@ -142,6 +236,8 @@ setupGlobalRegisters(void)
 		}
 	}
 
+	gc_free(slotWeight);
+	slotWeight = NULL;
 	gc_free(slots);
 }
 
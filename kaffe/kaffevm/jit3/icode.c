@@ -4638,6 +4638,10 @@ check_array_index(SlotInfo* obj, SlotInfo* idx)
 	if (noArrayBoundsChecks != 0) {
 		return;
 	}
+	/* Index is known to be in range (see analyzeCountedLoops) */
+	if (IS_NOCHECKINDEX(pc)) {
+		return;
+	}
 #if defined(HAVE_ccall)
 	{
 		SlotInfo* tmp;
@@ -4682,6 +4686,10 @@ check_array_store(SlotInfo* array, SlotInfo* obj)
 void
 explicit_check_null(int x, SlotInfo* obj, int y)
 {
+	/* 'this' is never null (see analyzeNonNullReceivers) */
+	if (IS_NONNULLOBJ(pc)) {
+		return;
+	}
 	{
 		end_sub_block();
 		cbranch_ref_const_ne(obj, NULL, reference_label(x, y));
@@ -4701,7 +4709,7 @@ check_null(int x, SlotInfo* obj, int y)
 void
 check_null(int x UNUSED, SlotInfo* obj UNUSED, int y UNUSED)
 {
-	if (canCatch(ANY)) {
+	if (canCatch(ANY) && !IS_NONNULLOBJ(pc)) {
 		begin_func_sync();
 		end_func_sync();
 	}
@@ -5115,10 +5123,64 @@ softcall_instanceof(SlotInfo* dst, SlotInfo* obj, Hjava_lang_Class* class)
 	return_int(dst);
 }
 
+/*
+ * Classes whose initialisation has been requested earlier in the basic
+ * block being translated.  Once soft_initialise_class has returned for
+ * one of them it is initialised, or being initialised by this thread.
+ */
+#define	MAXINITCLASSES	8
+
+static Hjava_lang_Class* initClasses[MAXINITCLASSES];
+static int ninitClasses;
+static int32 initBlock;
+
+void
+resetInitialisedClasses(void)
+{
+	ninitClasses = 0;
+	initBlock = -1;
+}
+
+/*
+ * Check whether a class is known to be initialised when the code at
+ * the current pc runs, and remember it is from now on if not.
+ */
+static bool
+isClassInitialised(Hjava_lang_Class* c)
+{
+	int32 bpc;
+	int i;
+
+	/* A static method only runs once its class is initialised or
+	 * while the running thread initialises it.
+	 */
+	if (METHOD_IS_STATIC(globalMethod) && c == globalMethod->class) {
+		return (true);
+	}
+
+	for (bpc = pc;
+	     bpc > 0 && !IS_STARTOFBASICBLOCK(bpc) && !IS_STARTOFEXCEPTION(bpc);
+	     bpc--)
+		;
+	if (bpc != initBlock) {
+		initBlock = bpc;
+		ninitClasses = 0;
+	}
+	for (i = 0; i < ninitClasses; i++) {
+		if (initClasses[i] == c) {
+			return (true);
+		}
+	}
+	if (ninitClasses < MAXINITCLASSES) {
+		initClasses[ninitClasses++] = c;
+	}
+	return (false);
+}
+
 void
 softcall_initialise_class(Hjava_lang_Class* c)
 {
-	if (c != 0 && c->state != CSTATE_COMPLETE) {
+	if (c != 0 && c->state != CSTATE_COMPLETE && !isClassInitialised(c)) {
 		begin_func_sync();
 		pusharg_class_const(c, 0);
 		call_soft(soft_initialise_class);
@@ -5127,6 +5189,37 @@ softcall_initialise_class(Hjava_lang_Class* c)
 	}
 }
 
+/*
+ * Stop here if another thread is trying to stop the world.  Emitted
+ * at backward branches and method returns.
+ */
+void
+safepoint_poll(void)
+{
+#if defined(JTHREAD_SAFEPOINTS)
+	SlotInfo* tmp;
+
+	slot_alloctmp(tmp);
+
+	end_sub_block();
+	move_ref_const(tmp, (void*)&jthread_safepoint_pending);
+	load_int(tmp, tmp);
+	cbranch_int_const_eq(tmp, 0, reference_label(1, 10));
+
+	start_sub_block();
+	begin_func_sync();
+	call_soft(jthread_safepoint);
+	popargs();
+	end_func_sync();
+	end_sub_block();
+
+	set_label(1, 10);
+	start_sub_block();
+
+	slot_freetmp(tmp);
+#endif
+}
+
 void
 softcall_debug1(void* a0, void* a1, void* a2)
 {
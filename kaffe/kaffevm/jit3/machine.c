@@ -63,6 +63,7 @@
 #include "kaffe_jni.h"
 #include "native-wrapper.h"
 #include "stats.h"
+#include "utf8const.h"
 
 const char* engine_name = "Just-in-time v3";
 
@@ -109,9 +110,12 @@ iStaticLock	translatorlock;
 
 struct {
 	int time;
+	int spills;
+	int reloads;
 } jitStats;
 
 static jboolean generateInsnSequence(errorInfo*);
+static void analyzeInlineCandidate(Method* meth, jitInlineInfo* info);
 
 /**
  * Look for exception handlers that enclose the given PC in the given method.
@@ -169,6 +173,7 @@ initInsnSequence(int localsz, int stacksz, errorInfo* einfo)
 	initSeq();
 	initRegisters();
 	initSlots(stackno);
+	resetInitialisedClasses();
 
 	/* Before generating code, try to guess how much space we'll need. */
 	codeblock_size = ALLOCCODEBLOCKSZ;
@@ -198,6 +203,10 @@ initInsnSequence(int localsz, int stacksz, errorInfo* einfo)
  *
  * - Otherwise, the local variables and the operand stack are spilled
  *   onto the stack
+ *
+ * Where the backend has global registers, the locals with the highest
+ * use counts, weighted by the loops they are live in, stay in them for
+ * the whole method (see setupGlobalRegisters).
  */
 jboolean
 translate(Method* xmeth, errorInfo* einfo)
@@ -220,6 +229,7 @@ translate(Method* xmeth, errorInfo* einfo)
 	fieldInfo finfo;
 	Hjava_lang_Class* crinfo;
 	codeinfo* mycodeInfo;
+	jitInlineInfo inlineinfo;
 
 	nativeCodeInfo ncode;
 
@@ -259,6 +269,12 @@ translate(Method* xmeth, errorInfo* einfo)
 		goto done3;
 	}
 
+	/* Find the array accesses which don't need a bounds check
+	 * and the objects which don't need a null check.
+	 */
+	analyzeCountedLoops(xmeth, mycodeInfo);
+	analyzeNonNullReceivers(xmeth, mycodeInfo);
+
 #if defined(KAFFE_FEEDBACK)
 	if( kaffe_feedback_file )
 		lockMutex(kaffe_feedback_file);
@@ -446,6 +462,11 @@ SCHK(			sanityCheck();				)
 
 	if( finishInsnSequence(NULL, &ncode, einfo) )
 	{
+		/* Remember whether callers may inline us: the bytecode
+		 * is gone once the code is installed.
+		 */
+		analyzeInlineCandidate(xmeth,
+			&((jitCodeHeader *)ncode.mem)->inlineinfo);
 		installMethodCode(NULL, xmeth, &ncode);
 	}
 	else
@@ -485,10 +506,14 @@ DBG(MOREJIT,
 	if (Kaffe_JavaVMArgs.enableVerboseJIT) {
 		tme = currentTime();
 		jitStats.time += (int)(tme - tms);
-		printf("<JIT: %s.%s%s time %dms (%dms) @ %p (%p)>\n",
+		jitStats.spills += spillcnt;
+		jitStats.reloads += reloadcnt;
+		printf("<JIT: %s.%s%s time %dms (%dms) spills %d (%d) reloads %d (%d) @ %p (%p)>\n",
 		       CLASS_CNAME(xmeth->class),
 		       xmeth->name->data, METHOD_SIGD(xmeth),
 		       (int)(tme - tms), jitStats.time,
+		       spillcnt, jitStats.spills,
+		       reloadcnt, jitStats.reloads,
 		       METHOD_NATIVECODE(xmeth), xmeth);
 	}
 
@@ -515,6 +540,366 @@ done3:;
 	return (success);
 }
 
+/*
+ * Method inlining.
+ *
+ * Methods which consist of nothing but an instance field access or the
+ * return of an integer constant are expanded at their call sites when
+ * the call can only reach this very method: static, private and final
+ * methods as well as methods of final classes, which don't get a
+ * dispatch table index (see buildDispatchTable).  Since no call site ever
+ * speculates on the receiver class, class loading can't invalidate the
+ * inlined code and no guards are needed.
+ */
+
+/*
+ * Inlining removes the callee's frame, so we don't inline while somebody
+ * is watching method entries and exits.
+ */
+static bool
+inliningAllowed(void)
+{
+	if (Kaffe_JavaVMArgs.enableVerboseCall != 0) {
+		return (false);
+	}
+#if defined(KAFFE_PROFILER)
+	if (profFlag) {
+		return (false);
+	}
+#endif
+#if defined(KAFFE_XPROFILER)
+	if (xProfFlag) {
+		return (false);
+	}
+#endif
+#if defined(ENABLE_JVMPI)
+	/* Every method reports its entry and exit (see prologue) */
+	return (false);
+#else
+	return (true);
+#endif
+}
+
+/*
+ * Check whether opcode OP handles a value of the type described by
+ * signature character SIG, in a family of opcodes ordered int, long,
+ * float, double, reference, starting with INTOP and STEP apart.  The
+ * xRETURN opcodes are adjacent, the xLOAD_<n> ones are four apart.
+ */
+static bool
+inlineTypeMatches(char sig, int op, int intop, int step)
+{
+	switch (sig) {
+	case 'I':
+	case 'S':
+	case 'B':
+	case 'Z':
+	case 'C':
+		return (op == intop);
+	case 'J':
+		return (op == intop + step);
+	case 'F':
+		return (op == intop + 2 * step);
+	case 'D':
+		return (op == intop + 3 * step);
+	case 'L':
+	case '[':
+		return (op == intop + 4 * step);
+	default:
+		return (false);
+	}
+}
+
+#define	RETURN_STEP	(LRETURN - IRETURN)
+#define	LOAD_N_STEP	(LLOAD_1 - ILOAD_1)
+
+/*
+ * Find the instance field a getfield or putfield at CODE refers to,
+ * without resolving anything: the translator must not lock other
+ * classes.
+ */
+static Field*
+findInlineField(Method* meth, unsigned char* code)
+{
+	constants* pool;
+	constIndex idx;
+	constIndex ci;
+	constIndex ni;
+	Utf8Const* name;
+	Utf8Const* sig;
+	Hjava_lang_Class* fclass;
+	Hjava_lang_Class* c;
+	Field* fptr;
+	int n;
+
+	pool = CLASS_CONSTANTS(meth->class);
+	idx = (constIndex)((code[0] << 8) | code[1]);
+	if (idx >= CLASS_CONST_SIZE(meth->class) ||
+	    pool->tags[idx] != CONSTANT_Fieldref) {
+		return (NULL);
+	}
+	ci = FIELDREF_CLASS(idx, pool);
+	ni = FIELDREF_NAMEANDTYPE(idx, pool);
+	name = WORD2UTF(pool->data[NAMEANDTYPE_NAME(ni, pool)]);
+	sig = WORD2UTF(pool->data[NAMEANDTYPE_SIGNATURE(ni, pool)]);
+
+	if (pool->tags[ci] == CONSTANT_ResolvedClass) {
+		fclass = CLASS_CLASS(ci, pool);
+	}
+	else if (pool->tags[ci] == CONSTANT_Class &&
+		 utf8ConstEqual(WORD2UTF(pool->data[ci]), meth->class->name)) {
+		fclass = meth->class;
+	}
+	else {
+		return (NULL);
+	}
+
+	/* The field must be reachable through 'this' */
+	for (c = meth->class; c != NULL && c != fclass; c = c->superclass)
+		;
+	if (c == NULL) {
+		return (NULL);
+	}
+
+	for (; c != NULL; c = c->superclass) {
+		fptr = CLASS_IFIELDS(c);
+		for (n = CLASS_NIFIELDS(c); --n >= 0; fptr++) {
+			if (utf8ConstEqual(name, fptr->name)) {
+				if (!FIELD_RESOLVED(fptr) ||
+				    !utf8ConstEqual(sig, fptr->signature) ||
+				    !checkFieldAccess(meth->class, c, fptr)) {
+					return (NULL);
+				}
+				return (fptr);
+			}
+		}
+	}
+	return (NULL);
+}
+
+/*
+ * Match the bytecode of a method against the patterns we know how
+ * to inline.
+ */
+static void
+analyzeInlineCandidate(Method* meth, jitInlineInfo* info)
+{
+	unsigned char* code;
+	unsigned int len;
+	const char* ret;
+	Field* fptr;
+	char fsig;
+
+	info->kind = INLINE_NONE;
+	info->field = NULL;
+	info->value = 0;
+
+	if ((meth->accflags & (ACC_NATIVE|ACC_ABSTRACT|ACC_SYNCHRONISED)) ||
+	    meth->exception_table != NULL) {
+		return;
+	}
+
+	code = METHOD_BYTECODE_CODE(meth);
+	len = METHOD_BYTECODE_LEN(meth);
+	ret = METHOD_RET_TYPE(meth);
+	if (code == NULL) {
+		return;
+	}
+
+	/* iconst_<n>|bipush|sipush; ireturn */
+	if (code[len - 1] == IRETURN &&
+	    inlineTypeMatches(ret[0], IRETURN, IRETURN, RETURN_STEP)) {
+		if (len == 2 && code[0] >= ICONST_M1 && code[0] <= ICONST_5) {
+			info->value = code[0] - ICONST_0;
+			info->kind = INLINE_CONST;
+		}
+		else if (len == 3 && code[0] == BIPUSH) {
+			info->value = (int8)code[1];
+			info->kind = INLINE_CONST;
+		}
+		else if (len == 4 && code[0] == SIPUSH) {
+			info->value = (int16)((code[1] << 8) | code[2]);
+			info->kind = INLINE_CONST;
+		}
+		if (info->kind != INLINE_NONE) {
+			return;
+		}
+	}
+
+	if (METHOD_IS_STATIC(meth) || code[0] != ALOAD_0) {
+		return;
+	}
+
+	/* aload_0; getfield; <t>return */
+	if (len == 5 && code[1] == GETFIELD && METHOD_NARGS(meth) == 0) {
+		fptr = findInlineField(meth, &code[2]);
+		if (fptr == NULL) {
+			return;
+		}
+		fsig = FIELD_ISPRIM(fptr) ? CLASS_PRIM_SIG(FIELD_TYPE(fptr)) : 'L';
+		if (inlineTypeMatches(fsig, code[4], IRETURN, RETURN_STEP) &&
+		    inlineTypeMatches(ret[0], code[4], IRETURN, RETURN_STEP)) {
+			info->field = fptr;
+			info->kind = INLINE_GETFIELD;
+		}
+	}
+	/* aload_0; <t>load_1; putfield; return */
+	else if (len == 6 && code[2] == PUTFIELD && code[5] == RETURN &&
+		 METHOD_NARGS(meth) == 1) {
+		fptr = findInlineField(meth, &code[3]);
+		if (fptr == NULL ||
+		    ((fptr->accflags & ACC_FINAL) && fptr->clazz != meth->class)) {
+			return;
+		}
+		fsig = FIELD_ISPRIM(fptr) ? CLASS_PRIM_SIG(FIELD_TYPE(fptr)) : 'L';
+		if (inlineTypeMatches(fsig, code[1], ILOAD_1, LOAD_N_STEP) &&
+		    inlineTypeMatches(METHOD_ARG_TYPE(meth, 0)[0], code[1],
+				      ILOAD_1, LOAD_N_STEP)) {
+			info->field = fptr;
+			info->kind = INLINE_PUTFIELD;
+		}
+	}
+}
+
+/**
+ * Determine whether calls to a method can be replaced by its body.
+ *
+ * The caller is responsible for making sure the call site can only
+ * reach this method, and, for static methods, that its class has been
+ * initialized.
+ *
+ * @param meth the method called.
+ * @param info filled in with what to expand at the call site.
+ * @return true if the call may be inlined.
+ */
+jboolean
+KaffeJIT3_getInlineInfo(Method* meth, jitInlineInfo* info)
+{
+	if (!inliningAllowed()) {
+		return (false);
+	}
+
+	if (METHOD_TRANSLATED(meth)) {
+		if (!METHOD_JITTED(meth) || (meth->accflags & ACC_NATIVE)) {
+			return (false);
+		}
+		*info = getMethodCodeStart(meth)->inlineinfo;
+	}
+	else {
+		analyzeInlineCandidate(meth, info);
+	}
+
+	return (info->kind != INLINE_NONE);
+}
+
+/**
+ * Expand an inlinable method at its call site.
+ *
+ * Mirrors what GETFIELD and PUTFIELD emit, with the receiver at
+ * stack(nargs) in place of their object reference.  The caller must
+ * already have checked the receiver for null, explicitly so when
+ * the inlined code doesn't dereference it.
+ *
+ * @param meth the method called.
+ * @param info the result of KaffeJIT3_getInlineInfo for meth.
+ * @param nargs the number of argument words, not counting the receiver.
+ */
+void
+KaffeJIT3_inlineMethodCall(Method* meth, jitInlineInfo* info, int nargs)
+{
+	Field* fptr = info->field;
+
+DBG(JIT,
+	dprintf("inline %s.%s%s (kind %d)\n", CLASS_CNAME(meth->class),
+		meth->name->data, METHOD_SIGD(meth), info->kind);
+    );
+
+	switch (info->kind) {
+	case INLINE_CONST:
+		if (METHOD_IS_STATIC(meth)) {
+			pop(nargs);
+		}
+		else {
+			pop(nargs + 1);
+		}
+		push(1);
+		move_int_const(stack(0), info->value);
+		break;
+
+	case INLINE_GETFIELD:
+		assert(nargs == 0);
+		if (!FIELD_ISPRIM(fptr)) {
+			load_offset_ref(stack(0), rstack(0), FIELD_BOFFSET(fptr));
+		}
+		else switch (CLASS_PRIM_SIG(FIELD_TYPE(fptr))) {
+		case 'I':
+			load_offset_int(stack(0), rstack(0), FIELD_BOFFSET(fptr));
+			break;
+		case 'S':
+			load_offset_short(stack(0), rstack(0), FIELD_BOFFSET(fptr));
+			break;
+		case 'B':
+		case 'Z':
+			load_offset_byte(stack(0), rstack(0), FIELD_BOFFSET(fptr));
+			break;
+		case 'C':
+			load_offset_char(stack(0), rstack(0), FIELD_BOFFSET(fptr));
+			break;
+		case 'F':
+			load_offset_float(stack(0), stack(0), FIELD_BOFFSET(fptr));
+			break;
+		case 'J':
+			load_offset_long(stack_long(-1), stack(0), FIELD_BOFFSET(fptr));
+			push(1);
+			break;
+		case 'D':
+			load_offset_double(stack_double(-1), stack(0), FIELD_BOFFSET(fptr));
+			push(1);
+			break;
+		default:
+			KAFFEVM_ABORT();
+		}
+		break;
+
+	case INLINE_PUTFIELD:
+		if (!FIELD_ISPRIM(fptr)) {
+			SOFT_ADDREFERENCE(rstack(1), rstack(0));
+			store_offset_ref(rstack(1), FIELD_BOFFSET(fptr), rstack(0));
+		}
+		else switch (CLASS_PRIM_SIG(FIELD_TYPE(fptr))) {
+		case 'I':
+			store_offset_int(stack(1), FIELD_BOFFSET(fptr), stack(0));
+			break;
+		case 'S':
+			store_offset_short(stack(1), FIELD_BOFFSET(fptr), stack(0));
+			break;
+		case 'B':
+		case 'Z':
+			store_offset_byte(stack(1), FIELD_BOFFSET(fptr), stack(0));
+			break;
+		case 'C':
+			store_offset_char(stack(1), FIELD_BOFFSET(fptr), stack(0));
+			break;
+		case 'F':
+			store_offset_float(stack(1), FIELD_BOFFSET(fptr), stack(0));
+			break;
+		case 'J':
+			store_offset_long(stack(2), FIELD_BOFFSET(fptr), stack_long(0));
+			break;
+		case 'D':
+			store_offset_double(stack(2), FIELD_BOFFSET(fptr), stack_double(0));
+			break;
+		default:
+			KAFFEVM_ABORT();
+		}
+		pop(nargs + 1);
+		break;
+
+	default:
+		KAFFEVM_ABORT();
+	}
+}
+
 void
 KaffeJIT3_cleanupInsnSequence()
 {
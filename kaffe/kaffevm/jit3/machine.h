@@ -154,12 +154,32 @@ extern struct codeinfo* codeInfo;
 extern int profFlag;
 extern Method* globalMethod;
 
+/**
+ * Describe a method whose body is small enough to be expanded at its
+ * call sites instead of being called.
+ *
+ * @field kind one of the INLINE_* values
+ * @field field the instance field read or written by an accessor
+ * @field value the value returned by a constant method
+ */
+typedef struct _jitInlineInfo {
+	int kind;
+	struct _jfieldID *field;
+	jint value;
+} jitInlineInfo;
+
+#define	INLINE_NONE	0
+#define	INLINE_GETFIELD	1	/* aload_0; getfield; <t>return */
+#define	INLINE_PUTFIELD	2	/* aload_0; <t>load_1; putfield; return */
+#define	INLINE_CONST	3	/* iconst_<n>|bipush|sipush; ireturn */
+
 typedef struct _jitCodeHeader {
 	unsigned long flags;
 	Method *method;
 	void *pool;
 	nativecode *code_start;
 	size_t code_len;
+	jitInlineInfo inlineinfo;
 } jitCodeHeader;
 
 /**
@@ -208,6 +228,8 @@ extern struct SlotData** createSpillMask(void);
 extern void     slotAlias(struct _sequence*);
 extern void     startInsn(struct _sequence*);
 extern jboolean translate(Method* xmeth, struct _errorInfo* einfo);
+extern jboolean KaffeJIT3_getInlineInfo(Method* meth, jitInlineInfo* info);
+extern void     KaffeJIT3_inlineMethodCall(Method* meth, jitInlineInfo* info, int nargs);
 extern void     KaffeJIT3_exitWithOOM();
 extern jboolean KaffeJIT3_setupExitWithOOM(struct _errorInfo* einfo);
 extern void     KaffeJIT3_cleanupInsnSequence();
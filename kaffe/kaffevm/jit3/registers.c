@@ -60,6 +60,12 @@ int enable_readonce = Rreadonce;
  */
 static int usecnt = 0;
 
+/**
+ * Number of spills and reloads generated for the current method.
+ */
+int spillcnt;
+int reloadcnt;
+
 /**
  * Initialize the registers.
  *
@@ -77,6 +83,8 @@ initRegisters(void)
 		reginfo[i].refs = 0;
 		reginfo[i].type &= ~Rglobal;
 	}
+	spillcnt = 0;
+	reloadcnt = 0;
 }
 
 /**
@@ -106,6 +114,7 @@ static
 void
 spill(SlotData* s)
 {
+	spillcnt++;
 #if defined(HAVE_spill_long)
 	if (reginfo[s->regno].ctype & Rlong) {
 		spill_long(s);
@@ -149,6 +158,7 @@ spill(SlotData* s)
 void
 reload(SlotData* s)
 {
+	reloadcnt++;
 #if defined(HAVE_reload_long)
 	if (reginfo[s->regno].ctype & Rlong) {
 		reload_long(s);
@@ -198,6 +198,8 @@ extern void setGlobalRegister(int);
 
 extern void sanityCheck(void);
 extern void reload(SlotData*);
+extern int spillcnt;
+extern int reloadcnt;
 
 extern void slot_kill_readonce(SlotData*);
 
@@ -28,17 +28,15 @@ static inline void*
 getMethodFunc (Method* meth, Hjava_lang_Object *obj)
 {
   if (obj && CLASS_IS_INTERFACE (meth->class)) {
-    register void ***implementors;
-    register Hjava_lang_Class *clazz;
+    void **itable;
 		
     assert (meth->idx >= 0);
 
-    implementors = meth->class->implementors;
-    clazz = OBJECT_CLASS(obj);
+    itable = Kaffe_get_itable(OBJECT_CLASS(obj), meth->class);
 
-    assert (implementors != NULL && clazz->impl_index <= (uintptr_t) implementors[0]);
+    assert (itable != NULL);
 
-    return implementors[clazz->impl_index][meth->idx + 1]; 	
+    return itable[meth->idx + 1]; 	
   } else {
     return meth->idx >= 0 ? obj->vtable->method[meth->idx] : METHOD_NATIVECODE (meth);
   }
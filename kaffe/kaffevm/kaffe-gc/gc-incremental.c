@@ -88,6 +88,8 @@ static timespent gc_time;
 static timespent sweep_time;
 static counter gcgcablemem;
 static counter gcfixedmem;
+static counter gcpause;
+static struct timeval gcPauseStart;
 #endif /* KAFFE_STATS */
 
 /* Is this pointer within our managed heap? */
@@ -346,13 +348,23 @@ DBG(GCWALK,
 
 	if (size > 0) {
 		uintp alignment = ALIGNMENTOF_VOIDP_IN_STACK;
+		/*
+		 * The heap doesn't grow while the world is stopped, so
+		 * fetch its bounds once and drop words which can't point
+		 * to an object before looking up their block.  Most words
+		 * on a stack are small integers, return addresses and
+		 * stack pointers.
+		 */
+		uintp heapBase = gc_get_heap_base();
+		uintp heapRange = gc_get_heap_range();
 
 		for (mem = ((const int8*)base) + (size & -alignment) - sizeof(void*);
 		     (const void*)mem >= base;
 		     mem -= ALIGNMENTOF_VOIDP) {
-			const void *p = *(void * const *)mem;
-			if (p) {
-				gcMarkAddress(gcif, NULL, p);
+			uintp off = *(const uintp *)mem - heapBase;
+
+			if (off < heapRange && !(off & (MEMALIGN - 1))) {
+				gcMarkAddress(gcif, NULL, *(void * const *)mem);
 			}
 		}
 	}
@@ -706,6 +718,9 @@ startGC(Collector *gcif)
 
 	/* measure time */
 	startTiming(&gc_time, "gctime-scan");
+#if defined(KAFFE_STATS)
+	gettimeofday(&gcPauseStart, NULL);
+#endif
 
 	/*
 	 * Since objects whose finaliser has to be run need to
@@ -768,6 +783,17 @@ finishGC(Collector *gcif)
 	stopTiming(&gc_time);
 	
 	RESUMEWORLD();
+
+#if defined(KAFFE_STATS)
+	{
+		struct timeval now;
+
+		gettimeofday(&now, NULL);
+		addToCounter(&gcpause, "gctime-pause-us", 1,
+			     (jlong)(now.tv_sec - gcPauseStart.tv_sec) * 1000000
+			     + (now.tv_usec - gcPauseStart.tv_usec));
+	}
+#endif
 	
 	/* 
 	 * Now move the black objects back to the white queue for next time.
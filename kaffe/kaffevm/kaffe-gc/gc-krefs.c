@@ -26,6 +26,7 @@
 #include "gc-incremental.h"
 #include "gc-refs.h"
 #include "java_lang_Thread.h"
+#include "stackTrace.h"
 #include "locks.h"
 
 /*
@@ -124,6 +125,9 @@ DBG(GCWALK,
 
  KaffeGC_markAllRefs(collector);
 
+ /* Samples the profiler has not resolved yet */
+ KaffeVM_walkSampleRings(collector);
+
 DBG(GCWALK,
     dprintf("Walking live threads...\n");
     );
@@ -62,6 +62,9 @@ initLocking(void)
 #if defined(KAFFE_STATS)
 static timespent heavyLockTime;
 static timespent locksTime;
+static counter slowLocks;
+static counter contendedLocks;
+static counter contendedWait;
 #endif
 
 /*
@@ -71,6 +74,52 @@ static timespent locksTime;
 
 #define IS_HEAVY_LOCK(ptr) ((((uintp)ptr)&1)==1)
 
+/*
+ * Re-enter a heavy lock we already hold.  Only the holder changes
+ * holder and lockCount while the lock is held and heavy locks are
+ * never turned back into thin ones, so this needs no atomic
+ * operation.  Synchronized methods calling each other on the same
+ * object (Vector, Hashtable, StringBuffer...) end up here.
+ */
+static inline int
+enterHeldLock(iLock** lkp, jthread_t cur)
+{
+  iLock *lk = *lkp;
+
+  if (IS_HEAVY_LOCK(lk))
+    {
+      lk = GET_HEAVYLOCK(lk);
+      if (lk->holder == cur)
+	{
+	  assert(lk->lockCount < 0xffffffff);
+	  lk->lockCount++;
+	  return 1;
+	}
+    }
+  return 0;
+}
+
+/*
+ * Leave a heavy lock we hold more than once, see enterHeldLock.  The
+ * final unlock has to go through slowUnlockMutex to wake up waiters.
+ */
+static inline int
+exitHeldLock(iLock** lkp, jthread_t cur)
+{
+  iLock *lk = *lkp;
+
+  if (IS_HEAVY_LOCK(lk))
+    {
+      lk = GET_HEAVYLOCK(lk);
+      if (lk->holder == cur && lk->lockCount > 1)
+	{
+	  lk->lockCount--;
+	  return 1;
+	}
+    }
+  return 0;
+}
+
 static iLock *
 getHeavyLock(iLock** lkp, iLock *heavyLock)
 {
@@ -106,14 +155,20 @@ getHeavyLock(iLock** lkp, iLock *heavyLock)
 		   * We loop until we are sure to have placed the heavylock and to have
 		   * the correct value in lk.
 		   */
-		  while (!COMPARE_AND_EXCHANGE(lkp, lk, (iLock *)(((uintp)heavyLock) | 1)))
-		    lk = *lkp;
+		  /* Remind the holder before publishing the heavy lock: the
+		   * holder re-enters it through enterHeldLock as soon as it
+		   * sees it, and must find itself and its count there.
+		   */
+		  for (;;)
+		    {
+		      heavyLock->holder = lk;
+		      heavyLock->lockCount = (lk != LOCKFREE) ? 1 : 0;
+		      if (COMPARE_AND_EXCHANGE(lkp, lk, (iLock *)(((uintp)heavyLock) | 1)))
+			break;
+		      lk = *lkp;
+		    }
 		  
 		  heavyLock->hlockHolder = KTHREAD(current)();
-		  /* Remind the holder. */
-		  heavyLock->holder = lk;
-		  if (lk != LOCKFREE)
-		    heavyLock->lockCount = 1;
 		  
 		  return heavyLock;
 		}
@@ -219,12 +274,19 @@ slowLockMutex(iLock** lkp, iLock *heavyLock)
   jthread_t cur = KTHREAD(current) ();
   threadData *tdata;
   int r;
+#if defined(KAFFE_STATS)
+  struct timeval waitStart, waitEnd;
+#endif
 
 DBG(SLOWLOCKS,
     dprintf("slowLockMutex(lk=%p, th=%p)\n",
 	    *lkp, KTHREAD(current)());
     );
 
+ if (enterHeldLock(lkp, cur))
+   return;
+
+ hitCounter(&slowLocks, "locks-slow");
  KTHREAD(disable_stop)(); /* protect the heavy lock, and its queues */
 
  tdata = KTHREAD(get_data)(cur);
@@ -258,6 +320,10 @@ DBG(SLOWLOCKS,
    lk->mux = cur;
 
    putHeavyLock(lk);
+   hitCounter(&contendedLocks, "locks-contended");
+#if defined(KAFFE_STATS)
+   gettimeofday(&waitStart, NULL);
+#endif
    /* KSEM(get) cannot have a timeout because it is infinite.
     * However, it can be interrupted and we do not want that for
     * locking.
@@ -265,6 +331,12 @@ DBG(SLOWLOCKS,
    do {
      r = KSEM(get)(&tdata->sem, (jlong)0);
    } while (!r);
+#if defined(KAFFE_STATS)
+   gettimeofday(&waitEnd, NULL);
+   addToCounter(&contendedWait, "locks-contended-us", 1,
+		(jlong)(waitEnd.tv_sec - waitStart.tv_sec) * 1000000
+		+ (waitEnd.tv_usec - waitStart.tv_usec));
+#endif
  }
 }
 
@@ -284,6 +356,9 @@ slowUnlockMutex(iLock** lkp, iLock *heavyLock)
       dprintf("slowUnlockMutex(lk=%p, th=%p)\n",
 	      *lkp, KTHREAD(current)());
       );
+  if (exitHeldLock(lkp, cur))
+    return;
+
   KTHREAD(disable_stop)(); /* protect the heavy lock, and its queues */
   lk = getHeavyLock(lkp, heavyLock);
 
@@ -503,7 +578,11 @@ locks_internal_broadcastCond(iLock** lkp, iLock *heavyLock)
 void
 locks_internal_lockMutex(iLock** lkp, iLock *heavyLock)
 {  
-  if (!COMPARE_AND_EXCHANGE(lkp, LOCKFREE, (iLock *)KTHREAD(current)()))
+  jthread_t cur = KTHREAD(current)();
+
+  if (enterHeldLock(lkp, cur))
+    return;
+  if (!COMPARE_AND_EXCHANGE(lkp, LOCKFREE, (iLock *)cur))
       slowLockMutex(lkp, heavyLock);
 }
 
@@ -514,8 +593,12 @@ locks_internal_lockMutex(iLock** lkp, iLock *heavyLock)
 void
 locks_internal_unlockMutex(iLock** lkp, iLock *heavyLock)
 {
+  jthread_t cur = KTHREAD(current)();
+
+  if (exitHeldLock(lkp, cur))
+    return;
   /* slowUnlockMutex should be fast enough. */
-  if (!COMPARE_AND_EXCHANGE(lkp, (iLock *)KTHREAD(current)(), LOCKFREE))
+  if (!COMPARE_AND_EXCHANGE(lkp, (iLock *)cur, LOCKFREE))
     slowUnlockMutex(lkp, heavyLock);
 }
 
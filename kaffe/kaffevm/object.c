@@ -37,6 +37,21 @@
 #include "gc.h"
 #include "thread.h"
 #include "jvmpi_kaffe.h"
+#include "stackTrace.h"
+
+/*
+ * Charge a Java object or array to the thread allocating it.  Only
+ * these count, not the memory the VM allocates for itself.
+ */
+static inline void
+chargeAllocation(size_t size)
+{
+	jthread_t cur = KTHREAD(current)();
+
+	if (cur != NULL) {
+		KTHREAD(get_data)(cur)->allocatedBytes += size;
+	}
+}
 
 Hjava_lang_Object*
 newObjectChecked(Hjava_lang_Class* class, errorInfo *info)
@@ -59,6 +74,8 @@ newObjectChecked(Hjava_lang_Class* class, errorInfo *info)
 	    /* Fill in object information */
 	    KaffeVM_setFinalizer(obj, KGC_DEFAULT_FINALIZER);
 	    obj->vtable = class->vtable;
+	    chargeAllocation(CLASS_FSIZE(class));
+	    KaffeVM_sampleAllocation(class, CLASS_FSIZE(class));
 
 #if defined(ENABLE_JVMPI)
 	    if( JVMPI_EVENT_ISENABLED(JVMPI_EVENT_OBJECT_ALLOC) )
@@ -178,6 +195,8 @@ newArrayChecked(Hjava_lang_Class* elclass, jsize count, errorInfo *info)
 		        KaffeVM_setFinalizer(obj, KGC_DEFAULT_FINALIZER);
 			obj->vtable = class->vtable;
 			ARRAY_SIZE(obj) = count;
+			chargeAllocation(total_count);
+			KaffeVM_sampleAllocation(class, total_count);
 
 #if defined(ENABLE_JVMPI)
 			if( JVMPI_EVENT_ISENABLED(JVMPI_EVENT_OBJECT_ALLOC) )
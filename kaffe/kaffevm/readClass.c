@@ -25,6 +25,9 @@
 #include "classMethod.h"
 #include "code.h"
 #include "utf8const.h"
+#if !defined(KAFFEH)
+#include "verify-cache.h"
+#endif
 
 Hjava_lang_Class*
 readClass(Hjava_lang_Class* classThis, classFile* fp, struct Hjava_lang_ClassLoader* loader, errorInfo *einfo)
@@ -39,6 +42,12 @@ readClass(Hjava_lang_Class* classThis, classFile* fp, struct Hjava_lang_ClassLoa
 	/* CLASS_CNAME(classThis) won't work until after 'setupClass', below */
 	const char* className = NULL;
 
+#if !defined(KAFFEH)
+	if (isVerifyCacheEnabled()) {
+		verifyCacheDigest(fp->base, fp->size, classThis->digest);
+	}
+#endif
+
 	if (! checkBufSize(fp, 4+2+2, className, einfo))
 		return NULL;
 
@@ -125,7 +134,7 @@ readInterfaces(classFile* fp, Hjava_lang_Class* this, errorInfo *einfo)
 		return true;
 	}			
 
-	if (! checkBufSize(fp, (u2)(interfaces_count * 2), CLASS_CNAME(this), einfo))
+	if (! checkBufSize(fp, (u4)interfaces_count * 2, CLASS_CNAME(this), einfo))
 		return false;
 
 	interfaces = (Hjava_lang_Class**)
@@ -199,6 +208,15 @@ readFields(classFile* fp, Hjava_lang_Class* this, errorInfo *einfo)
 	return (true);
 }
 
+static bool
+badAttributeSize(Hjava_lang_Class* this, errorInfo *einfo)
+{
+	postExceptionMessage(einfo, JAVA_LANG(ClassFormatError),
+			     "invalid attribute size for %s",
+			     CLASS_CNAME(this));
+	return false;
+}
+
 #if !defined(KAFFEH)
 static bool
 readSignatureAttribute(Hjava_lang_Class* this, u2 idx, Utf8Const **signature, errorInfo *einfo)
@@ -225,12 +243,7 @@ readEnclosingMethodAttribute(classFile *fp, u4 len, Hjava_lang_Class* this, erro
   u2 class_index, method_index;
 
   if (len != 4)
-    {
-      postExceptionMessage(einfo, JAVA_LANG(ClassFormatError),
-			   "invalid attribute size for %s",
-			   CLASS_CNAME(this));
-      return false;
-    }
+    return badAttributeSize(this, einfo);
 
   readu2(&class_index, fp);
   readu2(&method_index, fp);  
@@ -283,7 +296,9 @@ readAttributes(classFile* fp, Hjava_lang_Class* this,
 		if (! checkBufSize(fp, len, CLASS_CNAME(this), einfo))
 			return false;
 
-		if (CLASS_CONST_TAG(this, idx) == CONSTANT_Utf8) {
+		/* The readers below stay within the len bytes checked */
+		if (idx < CLASS_CONST_SIZE(this)
+		    && CLASS_CONST_TAG(this, idx) == CONSTANT_Utf8) {
 			Utf8Const* name;
 			name = WORD2UTF(CLASS_CONST_DATA (this, idx));
 			DBG(READCLASS,
@@ -329,6 +344,9 @@ readAttributes(classFile* fp, Hjava_lang_Class* this,
 			}
 			else if (utf8ConstEqual(name, ConstantValue_name)
 				 && (thingType == READATTR_FIELD)) {
+				if (len != 2) {
+					return badAttributeSize(this, einfo);
+				}
 				readu2(&idx, fp);
 				setFieldValue(this, (Field*)thing, idx);
 			}
@@ -341,6 +359,9 @@ readAttributes(classFile* fp, Hjava_lang_Class* this,
 			}
 			else if (utf8ConstEqual(name, SourceFile_name)
 				&& (thingType == READATTR_CLASS)) {
+				if (len != 2) {
+					return badAttributeSize(this, einfo);
+				}
 				readu2(&idx, fp);
 				if (! addSourceFile((Hjava_lang_Class*)thing, idx, einfo)) {
 					return false;
@@ -374,6 +395,8 @@ readAttributes(classFile* fp, Hjava_lang_Class* this,
 			}
 			else if (utf8ConstEqual(name, Signature_name)) {
 			  Utf8Const *signature;
+			  if (len != 2)
+			    return badAttributeSize(this, einfo);
 			  readu2(&idx, fp);
 			  if (!readSignatureAttribute(this, idx, &signature, einfo))
 			    return false;
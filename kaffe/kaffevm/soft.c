@@ -241,16 +241,13 @@ soft_lookupinterfacemethod(const Hjava_lang_Object* obj, const struct Hjava_lang
 {
 	Hjava_lang_Class* cls;
 	void*	ncode;
-	register int i;
-	register void*** implementors;
+	void**	itable;
 
 	if (obj == NULL) {
 		soft_nullpointer();
 	}
 
 	cls = OBJECT_CLASS(obj);
-	implementors = ifclass->implementors;
-	i = cls->impl_index;
 
 #if 1	/* it should never be necessary to initialize the class here
 	 * cause we're invoking a method on an existing, created object
@@ -265,8 +262,12 @@ soft_lookupinterfacemethod(const Hjava_lang_Object* obj, const struct Hjava_lang
 		}
 	}
 #endif
-	/* skip word at the beginning of itable2dtable */
-	ncode = implementors[i][idx + 1];
+	itable = Kaffe_get_itable(cls, ifclass);
+	if (itable == NULL)
+	  return NULL;
+
+	/* skip the interface at the beginning of its itable */
+	ncode = itable[idx + 1];
 
 	/* This means this class does not implement this interface method
 	 * at all.  This is something we detect at the time the interface
@@ -301,13 +302,12 @@ jint
 instanceof_interface(Hjava_lang_Class* c, Hjava_lang_Class* oc)
 {
 	unsigned int i;
-	Hjava_lang_Class **impl_clazz;
 
-	if (oc->state < CSTATE_PREPARED || c->state < CSTATE_PREPARED || CLASS_IS_ARRAY(oc) || CLASS_IS_INTERFACE(oc))
+	if (oc->state < CSTATE_PREPARED || oc->itable_hash == NULL)
 	  {
 	    /* Check 'total' interface list. If the class is not
 	     * prepared the dumb way is the only way. Arrays and interface do not have
-	     * any implementors too so we have to go through the all list.
+	     * an itable hash too so we have to go through the all list.
 	     */
 	    for (i = 0; i < oc->total_interface_len; i++) {
 	      if (c == oc->interfaces[i]) {
@@ -318,21 +318,8 @@ instanceof_interface(Hjava_lang_Class* c, Hjava_lang_Class* oc)
 	  }
 	else
 	  {
-	    /* Fetch the implementation reference from the class. */
-	    i = oc->impl_index;
-	    /* No interface implemented or this class is not implementing this
-	     * interface. Bailing out. */
-	    if (i == 0 || c->implementors == NULL ||
-		i > (uintp)c->implementors[0] ||
-		c->implementors[i] == NULL)
-	      return 0;
-	    
-	    /* We retrieve the first pointer in the itable2dtable array. */
-	    impl_clazz = (Hjava_lang_Class **)(KGC_getObjectBase(main_collector, c->implementors[i]));
-	    assert(impl_clazz != NULL);
-	    
-	    /* Now we may compare the raw pointers. */
-	    return (*impl_clazz == oc);
+	    /* The class has an itable section for each of its interfaces. */
+	    return (Kaffe_get_itable(oc, c) != NULL);
 	  }
 }
 
@@ -419,10 +406,18 @@ soft_checkcast(Hjava_lang_Class* c, Hjava_lang_Object* o)
 		 * cast exception happened.
 		 */
 		Hjava_lang_Throwable* ccexc;
-		const char *fromtype = CLASS_CNAME(OBJECT_CLASS(o));
-		const char *totype = CLASS_CNAME(c);
+		const char *fromtype;
+		const char *totype;
 		char *buf;
-		
+
+		ccexc = getFastThrowable(FASTTHROW_CLASSCAST);
+		if (ccexc != NULL) {
+			throwExternalException(ccexc);
+		}
+
+		fromtype = CLASS_CNAME(OBJECT_CLASS(o));
+		totype = CLASS_CNAME(c);
+
 		if (c->loader != OBJECT_CLASS(o)->loader) {
 			const char *toloader = c->loader?CLASS_CNAME(OBJECT_CLASS((Hjava_lang_Object *)c->loader)):"bootstrap";
 			const char *fromloader = OBJECT_CLASS(o)->loader?CLASS_CNAME(OBJECT_CLASS((Hjava_lang_Object *)OBJECT_CLASS(o)->loader)):"bootstrap";
@@ -473,6 +468,11 @@ soft_athrow(Hjava_lang_Object* o)
 void
 soft_badarrayindex(void)
 {
+	Hjava_lang_Throwable* eobj = getFastThrowable(FASTTHROW_BADARRAYINDEX);
+
+	if (eobj != NULL) {
+		throwExternalException(eobj);
+	}
 	throwException(ArrayIndexOutOfBoundsException);
 }
 
@@ -482,6 +482,11 @@ soft_badarrayindex(void)
 void
 soft_nullpointer(void)
 {
+	Hjava_lang_Throwable* eobj = getFastThrowable(FASTTHROW_NULLPOINTER);
+
+	if (eobj != NULL) {
+		throwExternalException(eobj);
+	}
 	throwException(NullPointerException);
 }
 
@@ -491,6 +496,11 @@ soft_nullpointer(void)
 void
 soft_divzero(void)
 {
+	Hjava_lang_Throwable* eobj = getFastThrowable(FASTTHROW_DIVZERO);
+
+	if (eobj != NULL) {
+		throwExternalException(eobj);
+	}
 	throwException(ArithmeticException);
 }
 
@@ -613,9 +623,17 @@ soft_checkarraystore(Hjava_lang_Object* array, Hjava_lang_Object* obj)
 {
 	if (obj != NULL && soft_instanceof(Kaffe_get_array_element_type(OBJECT_CLASS(array)), obj) == 0) {
 		Hjava_lang_Throwable* asexc;
-		const char *otype = CLASS_CNAME(OBJECT_CLASS(obj));
-		const char *atype = CLASS_CNAME(OBJECT_CLASS(array));
+		const char *otype;
+		const char *atype;
 		char *b;
+
+		asexc = getFastThrowable(FASTTHROW_ARRAYSTORE);
+		if (asexc != NULL) {
+			throwExternalException(asexc);
+		}
+
+		otype = CLASS_CNAME(OBJECT_CLASS(obj));
+		atype = CLASS_CNAME(OBJECT_CLASS(array));
 #define _FORMAT "can't store `%s' in `%s'"
 		b = checkPtr(KMALLOC(strlen(otype)+strlen(atype)+strlen(_FORMAT)));
 		sprintf(b, _FORMAT, otype, atype);
@@ -376,3 +376,750 @@ printStackTrace(struct Hjava_lang_Throwable* o,
 	  do_execute_java_method(NULL, p, "flush", "()V", NULL, 0);
 	}
 }
+
+/*
+ * Sampling profiler.
+ *
+ * A SIGPROF timer interrupts whichever thread is using the CPU.  The
+ * handler may neither lock nor allocate, so it only copies the frames
+ * of the interrupted thread (raw pcs for the translator, methods for
+ * the interpreter) into a ring owned by that thread.  The "sampler"
+ * daemon drains all rings every SAMPLE_DRAIN_MS, resolves the frames
+ * and counts identical stacks.  Until then the collector keeps the
+ * code and the classes of the frames alive.  The counts are written
+ * out in the collapsed format used by flame graph tools at exit, on
+ * SIGQUIT and from Runtime.dumpSamples().
+ */
+#include "jsignal.h"
+#include "locks.h"
+#include "stats.h"
+#include "utf8const.h"
+#include "kaffe/jmalloc.h"
+
+#ifndef	SIGNAL_ARGS
+#define	SIGNAL_ARGS(sig, sc) int sig
+#endif
+
+#define	SAMPLE_MAXDEPTH		64
+#define	SAMPLE_RINGSIZE		32	/* must be a power of two */
+#define	SAMPLE_DRAIN_MS		100
+#define	SAMPLE_BUCKETS		1024
+#define	SAMPLE_STACKSIZE	(32 * 1024)
+
+typedef struct _sampleRecord {
+	int			depth;
+	uintp			frame[SAMPLE_MAXDEPTH];
+} sampleRecord;
+
+/*
+ * Only the owning thread moves head and only the daemon moves tail,
+ * so neither side needs a lock.  Rings are never freed: a ring given
+ * up by a dying thread is handed to the next thread started.
+ */
+typedef struct _sampleRing {
+	struct _sampleRing*	next;
+	int			inUse;
+	volatile uint32		head;
+	volatile uint32		tail;
+	volatile uint32		dropped;
+	sampleRecord		sample[SAMPLE_RINGSIZE];
+} sampleRing;
+
+typedef struct _sampleFrame {
+	Utf8Const*		cname;
+	Utf8Const*		mname;
+} sampleFrame;
+
+typedef struct _sampleStack {
+	struct _sampleStack*	next;
+	uint32			hash;
+	jlong			count;
+	int			depth;
+	sampleFrame		frame[1];
+} sampleStack;
+
+static int sampleRate;
+static const char* sampleFile = "kaffe-samples.txt";
+static bool samplingOn;
+static volatile int sampleDumpRequested;
+static iStaticLock sampleLock;
+static sampleRing* sampleRings;
+static sampleStack* sampleTable[SAMPLE_BUCKETS];
+static jlong sampleLost;
+
+#if defined(TRANSLATOR)
+#include "jit-md.h"
+#define	SAMPLEFRAME(S)		STACKTRACEPC(S)
+#else
+#define	SAMPLEFRAME(S)		((uintp)stacktraceFindMethod(STACKTRACEFP(S), 0))
+#endif
+
+/*
+ * Set the number of samples taken per second of CPU time.  Must be
+ * called before the VM is initialised; 0 disables sampling.
+ */
+void
+KaffeVM_setSampleRate(int hz)
+{
+	sampleRate = hz;
+}
+
+void
+KaffeVM_setSampleFile(const char* name)
+{
+	sampleFile = name;
+}
+
+/*
+ * Give a ring to a thread joining the VM, unless it has one already.
+ */
+void
+KaffeVM_attachSampleRing(threadData* thread_data)
+{
+	sampleRing* ring;
+
+	if (!samplingOn || thread_data->samples != NULL) {
+		return;
+	}
+
+	lockStaticMutex(&sampleLock);
+	for (ring = sampleRings; ring != NULL; ring = ring->next) {
+		if (!ring->inUse) {
+			break;
+		}
+	}
+	if (ring == NULL) {
+		ring = KMALLOC(sizeof(sampleRing));
+		if (ring != NULL) {
+			ring->head = ring->tail = ring->dropped = 0;
+			ring->next = sampleRings;
+			sampleRings = ring;
+		}
+	}
+	if (ring != NULL) {
+		ring->inUse = 1;
+	}
+	unlockStaticMutex(&sampleLock);
+
+	thread_data->samples = ring;
+}
+
+/*
+ * Take the ring away from a thread leaving the VM.  Samples still in
+ * it are picked up by the next drain.
+ */
+void
+KaffeVM_detachSampleRing(threadData* thread_data)
+{
+	sampleRing* ring = thread_data->samples;
+
+	if (ring == NULL) {
+		return;
+	}
+	thread_data->samples = NULL;
+
+	lockStaticMutex(&sampleLock);
+	ring->inUse = 0;
+	unlockStaticMutex(&sampleLock);
+}
+
+static void
+sampleSignalHandler(SIGNAL_ARGS(sig UNUSED, ctx))
+{
+	jthread_t cur;
+	sampleRing* ring;
+	sampleRecord* rec;
+	stackTrace trace;
+	struct _exceptionFrame orig;
+#if defined(TRANSLATOR)
+	exceptionFrame frame;
+	struct _exceptionFrame* previousframe;
+#else
+	VmExceptHandler* previousframe;
+#endif
+	uint32 head;
+	int depth;
+
+	(void) orig;			/* avoid compiler warning in intrp */
+	cur = KTHREAD(current)();
+	if (cur == NULL) {
+		return;
+	}
+	ring = KTHREAD(get_data)(cur)->samples;
+	/* Also catches a context switch caught half way through. */
+	if (ring == NULL || !KTHREAD(on_current_stack)(&depth)) {
+		return;
+	}
+
+	head = ring->head;
+	if (head - ring->tail >= SAMPLE_RINGSIZE) {
+		ring->dropped++;
+		return;
+	}
+	rec = &ring->sample[head & (SAMPLE_RINGSIZE - 1)];
+
+#if defined(TRANSLATOR)
+	EXCEPTIONFRAME(frame, ctx);
+	STACKTRACEINIT(trace, &frame, &frame, orig);
+#else
+	STACKTRACEINIT(trace, NULL, NULL, orig);
+#endif
+	depth = 0;
+	previousframe = NULL;
+	while (depth < SAMPLE_MAXDEPTH && STACKTRACEFRAME(trace)
+	       && KTHREAD(on_current_stack)((void *)STACKTRACEFP(trace))) {
+		rec->frame[depth++] = SAMPLEFRAME(trace);
+		previousframe = trace.frame;
+		STACKTRACESTEP(trace);
+		if (previousframe == trace.frame) {
+			break;
+		}
+	}
+	rec->depth = depth;
+
+	/* Publish the record only once it is complete. */
+	(void) COMPARE_AND_EXCHANGE(&ring->head, head, head + 1);
+}
+
+/*
+ * Mark the code and the classes of the samples not drained yet, so
+ * that they are still there when the drainer resolves the frames.
+ * Called by the collector with the world stopped, so no ring moves.
+ */
+void
+KaffeVM_walkSampleRings(Collector* collector)
+{
+	sampleRing* ring;
+	sampleRecord* rec;
+	Method* meth;
+	uint32 tail;
+	int i;
+#if defined(TRANSLATOR)
+	void* pc_base;
+#endif
+
+	if (!samplingOn) {
+		return;
+	}
+	for (ring = sampleRings; ring != NULL; ring = ring->next) {
+		for (tail = ring->tail; tail != ring->head; tail++) {
+			rec = &ring->sample[tail & (SAMPLE_RINGSIZE - 1)];
+			for (i = 0; i < rec->depth; i++) {
+#if defined(TRANSLATOR)
+				pc_base = KGC_getObjectBase(collector, (void *)rec->frame[i]);
+				if (pc_base == NULL
+				    || KGC_getObjectIndex(collector, pc_base) != KGC_ALLOC_JITCODE) {
+					continue;
+				}
+				KGC_markObject(collector, NULL, pc_base);
+				meth = ((jitCodeHeader *)pc_base)->method;
+#else
+				meth = (Method *)rec->frame[i];
+#endif
+				if (meth != NULL) {
+					KGC_markObject(collector, NULL, meth->class);
+				}
+			}
+		}
+	}
+}
+
+/*
+ * Ask the sampler for a report.  Called from the SIGQUIT handler, so
+ * it only sets a flag.
+ */
+void
+KaffeVM_requestSampleDump(void)
+{
+	if (samplingOn) {
+		sampleDumpRequested = 1;
+	}
+}
+
+static Method*
+sampleMethod(uintp frame)
+{
+#if defined(TRANSLATOR)
+	void *pc_base = KGC_getObjectBase(main_collector, (void *)frame);
+
+	/* Not Java code: a native or a stub frame. */
+	if (pc_base == NULL
+	    || KGC_getObjectIndex(main_collector, pc_base) != KGC_ALLOC_JITCODE) {
+		return NULL;
+	}
+	return ((jitCodeHeader *)pc_base)->method;
+#else
+	return (Method *)frame;
+#endif
+}
+
+/*
+ * Count one sample.  Frames outside of Java code are left out; a
+ * sample with no Java frame at all is counted as a single empty frame.
+ * Called with sampleLock held.
+ */
+static void
+addSample(sampleRecord* rec)
+{
+	sampleFrame frame[SAMPLE_MAXDEPTH];
+	sampleStack* stack;
+	Method* meth;
+	uint32 hash;
+	int depth;
+	int i;
+
+	depth = 0;
+	hash = 0;
+	for (i = 0; i < rec->depth; i++) {
+		meth = sampleMethod(rec->frame[i]);
+		if (meth == NULL) {
+			continue;
+		}
+		frame[depth].cname = meth->class->name;
+		frame[depth].mname = meth->name;
+		hash = hash * 31 + (uint32)(uintp)meth->class->name;
+		hash = hash * 31 + (uint32)(uintp)meth->name;
+		depth++;
+	}
+
+	for (stack = sampleTable[hash % SAMPLE_BUCKETS]; stack != NULL; stack = stack->next) {
+		if (stack->hash == hash && stack->depth == depth
+		    && !memcmp(stack->frame, frame, depth * sizeof(sampleFrame))) {
+			stack->count++;
+			return;
+		}
+	}
+
+	stack = KMALLOC(sizeof(sampleStack) + depth * sizeof(sampleFrame));
+	if (stack == NULL) {
+		sampleLost++;
+		return;
+	}
+	/* Keep the names alive should the class be unloaded. */
+	for (i = 0; i < depth; i++) {
+		utf8ConstAddRef(frame[i].cname);
+		utf8ConstAddRef(frame[i].mname);
+	}
+	memcpy(stack->frame, frame, depth * sizeof(sampleFrame));
+	stack->hash = hash;
+	stack->depth = depth;
+	stack->count = 1;
+	stack->next = sampleTable[hash % SAMPLE_BUCKETS];
+	sampleTable[hash % SAMPLE_BUCKETS] = stack;
+}
+
+/*
+ * Move the samples of all rings into the table.  Called with
+ * sampleLock held.
+ */
+static void
+drainSampleRings(void)
+{
+	sampleRing* ring;
+	uint32 tail;
+	uint32 dropped;
+
+	for (ring = sampleRings; ring != NULL; ring = ring->next) {
+		tail = ring->tail;
+		while (tail != ring->head) {
+			addSample(&ring->sample[tail & (SAMPLE_RINGSIZE - 1)]);
+			tail++;
+		}
+		/* Hand the slots back only once we are done reading them. */
+		(void) COMPARE_AND_EXCHANGE(&ring->tail, ring->tail, tail);
+
+		dropped = ring->dropped;
+		if (dropped != 0) {
+			sampleLost += dropped;
+			(void) COMPARE_AND_EXCHANGE(&ring->dropped, dropped, 0);
+		}
+	}
+}
+
+static void
+printSampleName(FILE* fp, Utf8Const* name)
+{
+	char* buf = KMALLOC(strlen(name->data) + 1);
+
+	if (buf == NULL) {
+		fputs(name->data, fp);
+		return;
+	}
+	pathname2classname(name->data, buf);
+	fputs(buf, fp);
+	KFREE(buf);
+}
+
+/*
+ * Write the table out, outermost frame first.  Called with sampleLock
+ * held.
+ */
+static bool
+writeSamples(const char* name)
+{
+	sampleStack* stack;
+	FILE* fp;
+	int i;
+	int j;
+
+	fp = fopen(name, "w");
+	if (fp == NULL) {
+		DBG(STACKTRACE, dprintf("can't write samples to %s\n", name); );
+		return false;
+	}
+	for (i = 0; i < SAMPLE_BUCKETS; i++) {
+		for (stack = sampleTable[i]; stack != NULL; stack = stack->next) {
+			if (stack->depth == 0) {
+				fputs("[vm]", fp);
+			}
+			for (j = stack->depth - 1; j >= 0; j--) {
+				printSampleName(fp, stack->frame[j].cname);
+				fprintf(fp, ".%s%s", stack->frame[j].mname->data,
+					j > 0 ? ";" : "");
+			}
+			fprintf(fp, " %lld\n", (long long)stack->count);
+		}
+	}
+	if (sampleLost != 0) {
+		fprintf(fp, "[lost] %lld\n", (long long)sampleLost);
+	}
+	return fclose(fp) == 0;
+}
+
+/*
+ * Write the samples collected so far to the given file, or to the
+ * file set with -Xsample_file if name is NULL.
+ */
+bool
+KaffeVM_dumpSamples(const char* name)
+{
+	bool ok;
+
+	if (!samplingOn) {
+		return false;
+	}
+	lockStaticMutex(&sampleLock);
+	drainSampleRings();
+	ok = writeSamples(name != NULL ? name : sampleFile);
+	unlockStaticMutex(&sampleLock);
+	return ok;
+}
+
+static void NONRETURNING
+sampleDrainer(void* arg UNUSED)
+{
+	lockStaticMutex(&sampleLock);
+	for (;;) {
+		waitStaticCond(&sampleLock, (jlong)SAMPLE_DRAIN_MS);
+		drainSampleRings();
+		if (sampleDumpRequested) {
+			sampleDumpRequested = 0;
+			writeSamples(sampleFile);
+		}
+	}
+}
+
+static void
+dumpSamplesAtExit(void)
+{
+	KaffeVM_dumpSamples(NULL);
+}
+
+/*
+ * Allocation site profiler.
+ *
+ * Every allocSampleInterval bytes allocated by a thread, the allocation
+ * that crosses the mark is charged with its class and the innermost
+ * ALLOCSITE_DEPTH Java frames of its stack.  At most ALLOCSITE_MAX
+ * distinct sites are kept; samples that do not fit are only counted.
+ */
+#define	ALLOCSITE_DEPTH		8
+#define	ALLOCSITE_MAX		4096
+#define	ALLOCSITE_TOP		50
+
+typedef struct _allocSite {
+	struct _allocSite*	next;
+	uint32			hash;
+	Utf8Const*		cname;
+	jlong			count;
+	jlong			bytes;
+	int			depth;
+	sampleFrame		frame[ALLOCSITE_DEPTH];
+} allocSite;
+
+static jlong allocSampleInterval;
+static const char* allocSiteFile = "kaffe-allocs.txt";
+static bool allocSamplingOn;
+static iStaticLock allocSiteLock;
+static allocSite* allocSiteTable[SAMPLE_BUCKETS];
+static int allocSites;
+static jlong allocSitesLost;
+
+/*
+ * Sample one allocation every interval bytes per thread.  Must be
+ * called before the VM is initialised; 0 disables it.
+ */
+void
+KaffeVM_setAllocSampleInterval(jlong interval)
+{
+	allocSampleInterval = interval;
+}
+
+void
+KaffeVM_setAllocSiteFile(const char* name)
+{
+	allocSiteFile = name;
+}
+
+/*
+ * Look a site up.  Called with allocSiteLock held.
+ */
+static allocSite*
+findAllocSite(uint32 hash, Utf8Const* cname, sampleFrame* frame, int depth)
+{
+	allocSite* site;
+
+	for (site = allocSiteTable[hash % SAMPLE_BUCKETS]; site != NULL; site = site->next) {
+		if (site->hash == hash && site->cname == cname
+		    && site->depth == depth
+		    && !memcmp(site->frame, frame, depth * sizeof(sampleFrame))) {
+			break;
+		}
+	}
+	return site;
+}
+
+/*
+ * Called after every object or array allocation.
+ */
+void
+KaffeVM_sampleAllocation(Hjava_lang_Class* class, size_t size)
+{
+	threadData* thread_data;
+	stackTraceInfo* info;
+	sampleFrame frame[ALLOCSITE_DEPTH];
+	allocSite* site;
+	allocSite* newsite;
+	Method* meth;
+	uint32 hash;
+	int depth;
+	int i;
+
+	if (!allocSamplingOn) {
+		return;
+	}
+	thread_data = THREAD_DATA();
+	if (thread_data->allocatedBytes < thread_data->allocSampleNext) {
+		return;
+	}
+	if (thread_data->allocSampleNext == 0) {
+		/* First allocation of this thread, start counting. */
+		thread_data->allocSampleNext = thread_data->allocatedBytes + allocSampleInterval;
+		return;
+	}
+	thread_data->allocSampleNext = thread_data->allocatedBytes + allocSampleInterval;
+
+	depth = 0;
+	hash = (uint32)(uintp)class->name;
+	info = (stackTraceInfo*)buildStackTrace(NULL);
+	if (info != NULL) {
+		for (i = 0; info[i].meth != ENDOFSTACK && depth < ALLOCSITE_DEPTH; i++) {
+			meth = info[i].meth;
+			if (meth == NULL) {
+				continue;
+			}
+			frame[depth].cname = meth->class->name;
+			frame[depth].mname = meth->name;
+			hash = hash * 31 + (uint32)(uintp)meth->class->name;
+			hash = hash * 31 + (uint32)(uintp)meth->name;
+			depth++;
+		}
+	}
+
+	lockStaticMutex(&allocSiteLock);
+	site = findAllocSite(hash, class->name, frame, depth);
+	if (site == NULL && allocSites < ALLOCSITE_MAX) {
+		/* Don't hold the lock across the gc. */
+		unlockStaticMutex(&allocSiteLock);
+		newsite = KMALLOC(sizeof(allocSite));
+		lockStaticMutex(&allocSiteLock);
+		site = findAllocSite(hash, class->name, frame, depth);
+		if (site != NULL || allocSites >= ALLOCSITE_MAX) {
+			/* Lost the race. */
+			if (newsite != NULL) {
+				KFREE(newsite);
+			}
+		}
+		else if (newsite != NULL) {
+			site = newsite;
+			/* Keep the names alive should the class be unloaded. */
+			site->cname = class->name;
+			utf8ConstAddRef(site->cname);
+			for (i = 0; i < depth; i++) {
+				utf8ConstAddRef(frame[i].cname);
+				utf8ConstAddRef(frame[i].mname);
+			}
+			memcpy(site->frame, frame, depth * sizeof(sampleFrame));
+			site->hash = hash;
+			site->depth = depth;
+			site->count = 0;
+			site->bytes = 0;
+			site->next = allocSiteTable[hash % SAMPLE_BUCKETS];
+			allocSiteTable[hash % SAMPLE_BUCKETS] = site;
+			allocSites++;
+		}
+	}
+	if (site != NULL) {
+		site->count++;
+		site->bytes += size;
+	}
+	else {
+		allocSitesLost++;
+	}
+	unlockStaticMutex(&allocSiteLock);
+}
+
+static int
+allocSiteByBytes(const void* a, const void* b)
+{
+	jlong x = (*(const allocSite* const*)a)->bytes;
+	jlong y = (*(const allocSite* const*)b)->bytes;
+
+	return (x < y) - (x > y);
+}
+
+static int
+allocSiteByCount(const void* a, const void* b)
+{
+	jlong x = (*(const allocSite* const*)a)->count;
+	jlong y = (*(const allocSite* const*)b)->count;
+
+	return (x < y) - (x > y);
+}
+
+static void
+printAllocSites(FILE* fp, allocSite** sites, int n)
+{
+	int i;
+	int j;
+
+	for (i = 0; i < n && i < ALLOCSITE_TOP; i++) {
+		fprintf(fp, "%12lld %8lld ",
+			(long long)sites[i]->bytes, (long long)sites[i]->count);
+		printSampleName(fp, sites[i]->cname);
+		for (j = 0; j < sites[i]->depth; j++) {
+			fputs(j == 0 ? " at " : " < ", fp);
+			printSampleName(fp, sites[i]->frame[j].cname);
+			fprintf(fp, ".%s", sites[i]->frame[j].mname->data);
+		}
+		fputc('\n', fp);
+	}
+}
+
+/*
+ * Write the top allocation sites, by sampled bytes and by number of
+ * samples, to the given file or to the -Xallocsample_file one if name
+ * is NULL.
+ */
+bool
+KaffeVM_dumpAllocationSites(const char* name)
+{
+	allocSite** sites;
+	allocSite* site;
+	FILE* fp;
+	int n;
+	int i;
+	bool ok;
+
+	if (!allocSamplingOn) {
+		return false;
+	}
+	if (name == NULL) {
+		name = allocSiteFile;
+	}
+
+	/* The table never holds more than ALLOCSITE_MAX sites. */
+	sites = KMALLOC(ALLOCSITE_MAX * sizeof(allocSite*));
+	fp = fopen(name, "w");
+	if (sites == NULL || fp == NULL) {
+		DBG(STACKTRACE, dprintf("can't write allocation sites to %s\n", name); );
+		if (fp != NULL) {
+			fclose(fp);
+		}
+		if (sites != NULL) {
+			KFREE(sites);
+		}
+		return false;
+	}
+
+	lockStaticMutex(&allocSiteLock);
+	n = 0;
+	for (i = 0; i < SAMPLE_BUCKETS; i++) {
+		for (site = allocSiteTable[i]; site != NULL; site = site->next) {
+			sites[n++] = site;
+		}
+	}
+
+	fprintf(fp, "# one sample every %lld bytes per thread, %lld samples without a site\n",
+		(long long)allocSampleInterval, (long long)allocSitesLost);
+	fprintf(fp, "# sampled bytes, samples, class, innermost frames first\n");
+	fprintf(fp, "# top sites by bytes\n");
+	qsort(sites, n, sizeof(allocSite*), allocSiteByBytes);
+	printAllocSites(fp, sites, n);
+	fprintf(fp, "# top sites by count\n");
+	qsort(sites, n, sizeof(allocSite*), allocSiteByCount);
+	printAllocSites(fp, sites, n);
+	unlockStaticMutex(&allocSiteLock);
+
+	KFREE(sites);
+	ok = fclose(fp) == 0;
+	return ok;
+}
+
+static void
+dumpAllocationSitesAtExit(void)
+{
+	KaffeVM_dumpAllocationSites(NULL);
+}
+
+/*
+ * Start sampling if -Xsample or -Xallocsample asked for it.  Called
+ * once the thread system is up.  Returns true if the sampler wants
+ * SIGQUIT passed on through KaffeVM_requestSampleDump.
+ */
+bool
+initSampling(void)
+{
+	struct itimerval tm;
+	errorInfo info;
+
+	if (allocSampleInterval > 0) {
+		initStaticLock(&allocSiteLock);
+		allocSamplingOn = true;
+		atexit(dumpAllocationSitesAtExit);
+	}
+
+	if (sampleRate <= 0) {
+		return false;
+	}
+
+	initStaticLock(&sampleLock);
+	samplingOn = true;
+	KaffeVM_attachSampleRing(THREAD_DATA());
+
+	if (createDaemon(&sampleDrainer, "sampler", NULL, THREAD_MAXPRIO,
+			 SAMPLE_STACKSIZE, &info) == NULL) {
+		discardErrorInfo(&info);
+		samplingOn = false;
+		return false;
+	}
+
+	registerAsyncSignalHandler(SIGPROF, sampleSignalHandler);
+	atexit(dumpSamplesAtExit);
+
+	tm.it_interval.tv_sec = 1 / sampleRate;
+	tm.it_interval.tv_usec = (1000000 / sampleRate) % 1000000;
+	tm.it_value = tm.it_interval;
+	setitimer(ITIMER_PROF, &tm, NULL);
+	return true;
+}
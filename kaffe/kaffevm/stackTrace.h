@@ -32,4 +32,20 @@ typedef struct _stackTraceInfo {
 Hjava_lang_Object*	buildStackTrace(struct _exceptionFrame*);
 void			printStackTrace(struct Hjava_lang_Throwable*, struct Hjava_lang_Object*, int);
 
+struct _threadData;
+struct _Collector;
+
+void			KaffeVM_setSampleRate(int hz);
+void			KaffeVM_setSampleFile(const char* name);
+void			KaffeVM_attachSampleRing(struct _threadData*);
+void			KaffeVM_detachSampleRing(struct _threadData*);
+bool			KaffeVM_dumpSamples(const char* name);
+void			KaffeVM_requestSampleDump(void);
+void			KaffeVM_walkSampleRings(struct _Collector*);
+void			KaffeVM_setAllocSampleInterval(jlong interval);
+void			KaffeVM_setAllocSiteFile(const char* name);
+void			KaffeVM_sampleAllocation(struct Hjava_lang_Class*, size_t);
+bool			KaffeVM_dumpAllocationSites(const char* name);
+bool			initSampling(void);
+
 #endif
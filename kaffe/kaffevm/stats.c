@@ -24,9 +24,18 @@
 #include <sys/resource.h>
 #endif
 
+#include <stdarg.h>
+#include <ctype.h>
+
 #include "jni_md.h"
+#include "gtypes.h"
+#include "defs.h"
 #if !defined(KAFFEH)
 #include "jthread.h"
+#include "errors.h"
+#include "gc.h"
+#include "locks.h"
+#include "thread.h"
 #endif
 #include "support.h"
 #include "debug.h"
@@ -204,15 +213,39 @@ statsReport(void)
 	}
 }
 
+/*
+ * Counters are registered and updated from any thread, so registration
+ * pushes onto the list with a compare and exchange, and hit counts are
+ * bumped the same way.  The 64-bit totals of cumulative counters can't
+ * be swapped atomically on every platform, so they are guarded by a
+ * per-counter spin flag instead.
+ */
 static void
 registerCounter(timespent *counter, char *name, int type)
 {
-	if (!counter->name) {
-		counter->name = name;
-		counter->next = counters;
-		counter->flags = type;
-		counters = counter;
+	timespent *head;
+
+	/* before the name is published: a counter with a name is used,
+	 * and reported, without registering it again.  Racing callers
+	 * store the same flags. */
+	counter->flags = type;
+	if (!COMPARE_AND_EXCHANGE(&counter->name, NULL, name)) {
+		return;
 	}
+	do {
+		head = counters;
+		counter->next = head;
+	} while (!COMPARE_AND_EXCHANGE(&counters, head, counter));
+}
+
+static void
+addCalls(timespent *counter, int n)
+{
+	int calls;
+
+	do {
+		calls = counter->calls;
+	} while (!COMPARE_AND_EXCHANGE(&counter->calls, calls, calls + n));
 }
 
 /* Start timing some portion of JVM activity.
@@ -240,8 +273,8 @@ void
 registerUserCounter(timespent *counter, char *name,
         void (*userfunc)(void))
 {
-	registerCounter(counter, name, STAT_USER);
 	counter->userfunc = userfunc;
+	registerCounter(counter, name, STAT_USER);
 }
 
 void 
@@ -250,7 +283,7 @@ hitCounter(timespent *counter, char *name)
 	if (!counter->name) {
 		registerCounter(counter, name, STAT_COUNT);
 	}
-	counter->calls++;
+	addCalls(counter, 1);
 }
 
 void 
@@ -259,11 +292,17 @@ addToCounter(timespent *counter, char *name, int n, jlong increment)
 	if (!counter->name) {
 		registerCounter(counter, name, STAT_CUMULATE);
 	}
+	while (!COMPARE_AND_EXCHANGE(&counter->busy, 0, 1)) {
+#if !defined(KAFFEH)
+		KTHREAD(yield)();
+#endif
+	}
 	counter->calls += n;
 	counter->cumtotal += increment;
 	if (counter->max < counter->cumtotal) {
 		counter->max = counter->cumtotal;
 	}
+	(void)COMPARE_AND_EXCHANGE(&counter->busy, 1, 0);
 }
 
 /* timeval arithmetic macros */
@@ -312,4 +351,352 @@ statsSetMaskStr(char *mask)
 	statMask = mask;
 }
 
+/*
+ * Machine readable export of all registered counters, together with
+ * heap gauges and process cpu time.  statsFormat works like snprintf:
+ * it returns the length of the full report even if it did not fit.
+ */
+typedef struct _statsBuf {
+	char *buf;
+	int len;
+	int pos;
+} statsBuf;
+
+static void
+sbprintf(statsBuf *sb, const char *fmt, ...)
+{
+	va_list ap;
+	int room;
+	int n;
+
+	room = sb->pos < sb->len ? sb->len - sb->pos : 0;
+	va_start(ap, fmt);
+	n = vsnprintf(room > 0 ? sb->buf + sb->pos : NULL, (size_t)room,
+		      fmt, ap);
+	va_end(ap);
+	if (n > 0) {
+		sb->pos += n;
+	}
+}
+
+/* Prometheus metric names may only contain [a-zA-Z0-9_] */
+static void
+sbname(statsBuf *sb, const char *name, const char *suffix)
+{
+	const char *p;
+
+	sbprintf(sb, "kaffe_");
+	for (p = name; *p != '\0'; p++) {
+		sbprintf(sb, "%c", isalnum((unsigned char)*p) ? *p : '_');
+	}
+	sbprintf(sb, "%s", suffix);
+}
+
+static jlong
+timeMicros(struct timeval *tv)
+{
+	return (jlong)tv->tv_sec * 1000000 + tv->tv_usec;
+}
+
+/* The KGC_ heap macros expand to complete statements. */
+static void
+heapGauges(jlong *total, jlong *freemem, jlong *limit)
+{
+#if !defined(KAFFEH)
+	*total = KGC_getHeapTotal(main_collector);
+	*freemem = KGC_getHeapFree(main_collector);
+	*limit = KGC_getHeapLimit(main_collector);
+#else
+	*total = *freemem = *limit = 0;
+#endif
+}
+
+static void
+formatJSON(statsBuf *sb, struct rusage *ru)
+{
+	timespent *p;
+	const char *sep = "";
+	jlong total, freemem, limit;
+
+	heapGauges(&total, &freemem, &limit);
+
+	sbprintf(sb, "{\n");
+	sbprintf(sb, "  \"cpu\": {\"user_us\": %lld, \"sys_us\": %lld},\n",
+		 (long long)timeMicros(&ru->ru_utime),
+		 (long long)timeMicros(&ru->ru_stime));
+	sbprintf(sb, "  \"heap\": {\"total\": %lld, \"free\": %lld, "
+		 "\"limit\": %lld},\n",
+		 (long long)total, (long long)freemem, (long long)limit);
+	sbprintf(sb, "  \"counters\": {");
+	for (p = counters; p; p = p->next) {
+		if (p->flags & STAT_TIMING) {
+			sbprintf(sb, "%s\n    \"%s\": {\"type\": \"timing\", "
+				 "\"calls\": %d, \"user_us\": %lld, "
+				 "\"sys_us\": %lld}", sep, p->name, p->calls,
+				 (long long)timeMicros(&p->total),
+				 (long long)timeMicros(&p->stotal));
+		}
+		else if (p->flags & STAT_COUNT) {
+			sbprintf(sb, "%s\n    \"%s\": {\"type\": \"count\", "
+				 "\"calls\": %d}", sep, p->name, p->calls);
+		}
+		else if (p->flags & STAT_CUMULATE) {
+			sbprintf(sb, "%s\n    \"%s\": {\"type\": \"cumulative\", "
+				 "\"calls\": %d, \"total\": %lld, "
+				 "\"max\": %lld}", sep, p->name, p->calls,
+				 (long long)p->cumtotal, (long long)p->max);
+		}
+		else {
+			continue;
+		}
+		sep = ",";
+	}
+	sbprintf(sb, "\n  }\n}\n");
+}
+
+static void
+formatPrometheus(statsBuf *sb, struct rusage *ru)
+{
+	timespent *p;
+	jlong total, freemem, limit;
+
+	heapGauges(&total, &freemem, &limit);
+
+	sbprintf(sb, "# TYPE kaffe_cpu_user_seconds_total counter\n"
+		 "kaffe_cpu_user_seconds_total %d.%06d\n",
+		 (int)ru->ru_utime.tv_sec, (int)ru->ru_utime.tv_usec);
+	sbprintf(sb, "# TYPE kaffe_cpu_sys_seconds_total counter\n"
+		 "kaffe_cpu_sys_seconds_total %d.%06d\n",
+		 (int)ru->ru_stime.tv_sec, (int)ru->ru_stime.tv_usec);
+	sbprintf(sb, "# TYPE kaffe_heap_total_bytes gauge\n"
+		 "kaffe_heap_total_bytes %lld\n", (long long)total);
+	sbprintf(sb, "# TYPE kaffe_heap_free_bytes gauge\n"
+		 "kaffe_heap_free_bytes %lld\n", (long long)freemem);
+	sbprintf(sb, "# TYPE kaffe_heap_limit_bytes gauge\n"
+		 "kaffe_heap_limit_bytes %lld\n", (long long)limit);
+	for (p = counters; p; p = p->next) {
+		if (p->flags & STAT_TIMING) {
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_calls_total counter\n");
+			sbname(sb, p->name, "_calls_total");
+			sbprintf(sb, " %d\n", p->calls);
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_user_seconds_total counter\n");
+			sbname(sb, p->name, "_user_seconds_total");
+			sbprintf(sb, " %d.%06d\n", (int)p->total.tv_sec,
+				 (int)p->total.tv_usec);
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_sys_seconds_total counter\n");
+			sbname(sb, p->name, "_sys_seconds_total");
+			sbprintf(sb, " %d.%06d\n", (int)p->stotal.tv_sec,
+				 (int)p->stotal.tv_usec);
+		}
+		else if (p->flags & STAT_COUNT) {
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_total counter\n");
+			sbname(sb, p->name, "_total");
+			sbprintf(sb, " %d\n", p->calls);
+		}
+		else if (p->flags & STAT_CUMULATE) {
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_calls_total counter\n");
+			sbname(sb, p->name, "_calls_total");
+			sbprintf(sb, " %d\n", p->calls);
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_sum counter\n");
+			sbname(sb, p->name, "_sum");
+			sbprintf(sb, " %lld\n", (long long)p->cumtotal);
+			sbprintf(sb, "# TYPE ");
+			sbname(sb, p->name, "_max gauge\n");
+			sbname(sb, p->name, "_max");
+			sbprintf(sb, " %lld\n", (long long)p->max);
+		}
+	}
+}
+
+int
+statsFormat(char *buf, int len, int format)
+{
+	statsBuf sb;
+	struct rusage ru;
+
+	sb.buf = buf;
+	sb.len = len;
+	sb.pos = 0;
+	getrusage(RUSAGE_SELF, &ru);
+	if (format == STATS_FORMAT_JSON) {
+		formatJSON(&sb, &ru);
+	}
+	else {
+		formatPrometheus(&sb, &ru);
+	}
+	return sb.pos;
+}
+
+/*
+ * Write a report to a file.  It is written to a temporary file first
+ * and renamed so a scraper never sees a half written report.
+ */
+bool
+statsDump(const char *file, int format)
+{
+	char tmp[MAXPATHLEN];
+	char *buf;
+	int len;
+	int need;
+	FILE *fp;
+	bool ok;
+
+	len = 4096;
+	for (;;) {
+		buf = KMALLOC((size_t)len);
+		if (buf == NULL) {
+			return false;
+		}
+		need = statsFormat(buf, len, format);
+		if (need < len) {
+			break;
+		}
+		KFREE(buf);
+		len = need + 1024;
+	}
+
+	snprintf(tmp, sizeof(tmp), "%s.tmp", file);
+	fp = fopen(tmp, "w");
+	if (fp == NULL) {
+		KFREE(buf);
+		return false;
+	}
+	ok = fwrite(buf, 1, (size_t)need, fp) == (size_t)need;
+	ok = (fclose(fp) == 0) && ok;
+	KFREE(buf);
+	if (ok && rename(tmp, file) != 0) {
+		ok = false;
+	}
+	if (!ok) {
+		remove(tmp);
+	}
+	return ok;
+}
+
+/*
+ * Look up a counter by name.  value is the total for cumulative
+ * counters, the hit count for hit counters and user plus system
+ * microseconds for timers.
+ */
+bool
+statsLookup(const char *name, jlong *calls, jlong *value)
+{
+	timespent *p;
+
+	for (p = counters; p; p = p->next) {
+		if (strcmp(p->name, name) != 0) {
+			continue;
+		}
+		*calls = p->calls;
+		if (p->flags & STAT_TIMING) {
+			*value = timeMicros(&p->total) + timeMicros(&p->stotal);
+		}
+		else if (p->flags & STAT_CUMULATE) {
+			*value = p->cumtotal;
+		}
+		else {
+			*value = p->calls;
+		}
+		return true;
+	}
+	return false;
+}
+
+#if !defined(KAFFEH)
+
+/* how often the exporter looks for a pending SIGQUIT dump */
+#define	STATS_POLL_MS		100
+#define	STATS_STACKSIZE		(32 * 1024)
+
+static char *exportFile;
+static int exportInterval;
+static volatile int exportRequested;
+static iStaticLock exportLock;
+
+void
+statsSetExportFile(char *file)
+{
+	exportFile = file;
+}
+
+void
+statsSetExportInterval(int ms)
+{
+	exportInterval = ms;
+}
+
+/* Called from signal handlers, so it only sets a flag. */
+void
+statsRequestDump(void)
+{
+	exportRequested = 1;
+}
+
+static int
+exportFormat(void)
+{
+	const char *dot = strrchr(exportFile, '.');
+
+	if (dot != NULL && strcmp(dot, ".json") == 0) {
+		return STATS_FORMAT_JSON;
+	}
+	return STATS_FORMAT_PROMETHEUS;
+}
+
+static void NONRETURNING
+statsExporter(void *arg UNUSED)
+{
+	int elapsed = 0;
+
+	lockStaticMutex(&exportLock);
+	for (;;) {
+		waitStaticCond(&exportLock, (jlong)STATS_POLL_MS);
+		elapsed += STATS_POLL_MS;
+		if (exportRequested ||
+		    (exportInterval > 0 && elapsed >= exportInterval)) {
+			exportRequested = 0;
+			elapsed = 0;
+			statsDump(exportFile, exportFormat());
+		}
+	}
+}
+
+static void
+statsDumpAtExit(void)
+{
+	statsDump(exportFile, exportFormat());
+}
+
+/*
+ * Start the exporter if -vmstats_file asked for one.  The report is
+ * rewritten every -vmstats_interval milliseconds, on SIGQUIT and at
+ * exit.  Returns true if the exporter wants SIGQUIT passed on through
+ * statsRequestDump.
+ */
+bool
+initStatsExport(void)
+{
+	errorInfo info;
+
+	if (exportFile == NULL) {
+		return false;
+	}
+	initStaticLock(&exportLock);
+	if (createDaemon(&statsExporter, "stats", NULL, THREAD_MAXPRIO,
+			 STATS_STACKSIZE, &info) == NULL) {
+		discardErrorInfo(&info);
+		return false;
+	}
+	atexit(statsDumpAtExit);
+	return true;
+}
+
+#endif /* !defined(KAFFEH) */
+
 #endif /* KAFFE_STATS */
@@ -50,15 +50,28 @@ struct _statobject {
 	struct timeval scurrent;
 	jlong cumtotal;
 	jlong max;
+	int busy;	/* guards cumtotal and max, see addToCounter */
 	void	(*userfunc)(void);
 };
 
+/* output formats for statsFormat and statsDump */
+#define STATS_FORMAT_JSON	0
+#define STATS_FORMAT_PROMETHEUS	1
+
 extern void registerUserCounter(counter *counter, char *name, 
 	void (*userfunc)(void));
 extern void hitCounter(counter *counter, char *name);
 extern void addToCounter(counter *counter, char *name, int n, jlong inc);
 extern void startTiming(timespent *counter, char *name);
 extern void stopTiming(timespent *counter);
+
+extern int statsFormat(char *buf, int len, int format);
+extern bool statsDump(const char *file, int format);
+extern bool statsLookup(const char *name, jlong *calls, jlong *value);
+extern void statsSetExportFile(char *file);
+extern void statsSetExportInterval(int ms);
+extern void statsRequestDump(void);
+extern bool initStatsExport(void);
 #else
 /* We either can't or wont perform timing:  The first macro suppresses
    unused variable warnings. */
@@ -74,6 +87,8 @@ typedef char counter;
 #define addToCounter(C,N,I0,I1)
 #define stopTiming(C)
 #define registerUserCounter(C,N,F)
+#define statsRequestDump()
+#define initStatsExport()	false
 #endif
 
 /*
@@ -24,6 +24,10 @@
 #include <sys/wait.h>
 #endif /* defined(HAVE_SYS_WAIT_H) */
 
+#if defined(HAVE_SYS_EPOLL_H)
+#include <sys/epoll.h>
+#endif /* defined(HAVE_SYS_EPOLL_H) */
+
 #include "jthread.h"
 #include "jsignal.h"
 #include "xprofiler.h"
@@ -90,17 +94,30 @@ static void (*runOnExit)(void);	/* function to run when all non-daemon die */
 static KaffePool *queuePool;    /* pool of single-linked node */
 static KaffeNodeQueue**threadQhead;	/* double-linked run queue */ 
 static KaffeNodeQueue**threadQtail;
-static KaffeNodeQueue* liveThreads;	/* list of all live threads */
+static jthread* liveThreads;		/* list of all live threads */
 static KaffeNodeQueue* alarmList;	/* list of all threads on alarm queue */
 static KaffeNodeQueue* waitForList;	/* list of all threads waiting for a child */
 
 static int maxFd = -1;		/* highest known fd */
+#if !USE_POLL
 static fd_set readsPending;	/* fds we want to read from */
 static fd_set writesPending;	/* fds we want to write to */
-static KaffeNodeQueue* readQ[FD_SETSIZE];	/* threads blocked on read */
-static KaffeNodeQueue* writeQ[FD_SETSIZE];	/* threads blocked on write */
-static jboolean blockingFD[FD_SETSIZE];            /* file descriptor which should 
-						   really block */
+#endif
+static int fdTableSize;		/* number of entries in the fd tables */
+static KaffeNodeQueue** readQ;	/* threads blocked on read */
+static KaffeNodeQueue** writeQ;	/* threads blocked on write */
+static jboolean* blockingFD;	/* file descriptor which should 
+				   really block */
+#if USE_EPOLL
+/*
+ * Descriptors are added to the epoll set the first time a thread blocks
+ * on them and stay there until they are closed, so handleIO only has to
+ * look at the descriptors that actually became ready.  If epoll_create
+ * fails at runtime we fall back to poll/select and epollFd stays -1.
+ */
+#define EPOLL_MAXEVENTS	64
+static int epollFd = -1;
+#endif
 static jmutex threadLock;	/* static lock to protect liveThreads etc. */
 static jmutex GClock;
 
@@ -167,6 +184,11 @@ static void handleInterrupt(int sig, SIGNAL_CONTEXT_POINTER(sc));
 static void interrupt(SIGNAL_ARGS(sig, sc));
 static void childDeath(void);
 static void handleIO(int);
+#if USE_EPOLL
+static void handleEpollIO(int);
+#endif
+static jlong ioWaitTime(int);
+static void growFdTables(int fd);
 static void killThread(jthread *jtid);
 static void resumeThread(jthread* jtid);
 static void reschedule(void);
@@ -177,6 +199,8 @@ static int jthreadedFileDescriptor(int fd);
 static void intsDisable(void);
 static void intsRestore(void);
 static void addWaitQThread(jthread *jtid, KaffeNodeQueue **queue);
+static void addToLiveThreads(jthread *jtid);
+static void removeFromLiveThreads(jthread *jtid);
 static void cleanupWaitQ(jthread *jtid);
 
 /*
@@ -269,6 +293,40 @@ internalYield(void)
         }
 }
 
+/*
+ * The live list is linked through the thread contexts themselves, so
+ * a dying thread can leave it without a walk over all other threads.
+ */
+static void
+addToLiveThreads(jthread* jtid)
+{
+	jtid->livePrev = NULL;
+	jtid->liveNext = liveThreads;
+	if (liveThreads != NULL) {
+		liveThreads->livePrev = jtid;
+	}
+	liveThreads = jtid;
+}
+
+static void
+removeFromLiveThreads(jthread* jtid)
+{
+	if (jtid->livePrev != NULL) {
+		jtid->livePrev->liveNext = jtid->liveNext;
+	}
+	else if (liveThreads == jtid) {
+		liveThreads = jtid->liveNext;
+	}
+	else {
+		/* not on the list */
+		return;
+	}
+	if (jtid->liveNext != NULL) {
+		jtid->liveNext->livePrev = jtid->livePrev;
+	}
+	jtid->livePrev = NULL;
+}
+
 static void
 addToAlarmQ(jthread* jtid, jlong timeout)
 {
@@ -661,7 +719,7 @@ jthread_dumpthreadinfo(jthread_t tid)
 		if (isOnList(waitForList, tid)) {
 			dprintf(": waiting for children");
 		}
-		for (i = 0; i < FD_SETSIZE; i++) {
+		for (i = 0; i < fdTableSize; i++) {
 			if (isOnList(readQ[i], tid)) {
 				dprintf(": reading from fd %d ", i);
 				break;
@@ -1002,16 +1060,7 @@ DBG(JTHREAD,
 		 * the list of live threads and be GCed.
 		 */
 		/* Remove thread from live list so it can be garbaged */
-		for (ntid = &liveThreads; *ntid != 0; ntid =
-			     &(*ntid)->next) { 
-			if (tid == JTHREADQ(*ntid)) {
-			  KaffeNodeQueue *node = (*ntid);
-			  
-			  (*ntid) = node->next;
-			  KaffePoolReleaseNode(queuePool, node);
-			  break;
-			}
-		}
+		removeFromLiveThreads(tid);
 
 		cleanupWaitQ(tid);
 
@@ -1030,17 +1079,47 @@ DBG(JTHREAD,
  *
  */
 
+#if defined(HAVE_MMAP) && defined(MAP_ANON) && !defined(STACK_GROWS_UP)
+#define JTHREAD_MAP_STACKS
+#endif
+
 /*
  * Allocate a new thread context and stack.
+ *
+ * Where we can, the stack is mapped separately from the context, so
+ * the kernel only commits the pages a thread actually touches and
+ * the stack is not part of the gc heap.  Otherwise the stack follows
+ * the context in the same gc block.
  */
 static jthread*
 newThreadCtx(size_t stackSize)
 {
 	jthread *ct;
-
-	ct = KGC_malloc(threadCollector, sizeof(jthread) + 16 + stackSize, KGC_ALLOC_THREADCTX);
-	if (ct == 0) {
-		return 0;
+#if defined(JTHREAD_MAP_STACKS)
+	void *stack = MAP_FAILED;
+
+	if (stackSize > 0) {
+		stack = mmap(NULL, stackSize, PROT_READ|PROT_WRITE,
+			     MAP_PRIVATE|MAP_ANON
+#if defined(MAP_NORESERVE)
+			     |MAP_NORESERVE
+#endif
+			     , -1, 0);
+	}
+	if (stack != MAP_FAILED) {
+		ct = KGC_malloc(threadCollector, sizeof(jthread) + 16, KGC_ALLOC_THREADCTX);
+		if (ct == 0) {
+			munmap(stack, stackSize);
+			return 0;
+		}
+	}
+	else
+#endif
+	{
+		ct = KGC_malloc(threadCollector, sizeof(jthread) + 16 + stackSize, KGC_ALLOC_THREADCTX);
+		if (ct == 0) {
+			return 0;
+		}
 	}
 
 	KGC_addRef(threadCollector, ct);
@@ -1049,6 +1128,13 @@ newThreadCtx(size_t stackSize)
 	ct = (jthread *)((((unsigned long)(ct)) & 15) ^ (unsigned long)(ct));
 #endif
 	ct->stackBase = (ct + 1);
+	ct->stackMapped = 0;
+#if defined(JTHREAD_MAP_STACKS)
+	if (stack != MAP_FAILED) {
+		ct->stackBase = stack;
+		ct->stackMapped = stackSize;
+	}
+#endif
 	ct->stackEnd = (char *) ct->stackBase + stackSize;
 	ct->restorePoint = ct->stackEnd;
 	ct->status = THREAD_SUSPENDED;
@@ -1066,12 +1152,19 @@ DBG(JTHREAD,
 void    
 jthread_destroy(jthread *jtid)
 {
-	KaffeNodeQueue *x;
+	jthread *x;
 
 	if (DBGEXPR(JTHREAD, true, false)) {
-		for (x = liveThreads; x; x = x->next)
-			assert(JTHREADQ(x) != jtid);
+		for (x = liveThreads; x; x = x->liveNext)
+			assert(x != jtid);
 	}
+#if defined(JTHREAD_MAP_STACKS)
+	/* The thread is dead, nobody runs on its stack anymore. */
+	if (jtid->stackMapped != 0) {
+		munmap(jtid->stackBase, jtid->stackMapped);
+		jtid->stackMapped = 0;
+	}
+#endif
 	/* We do not free explicitly as it should be done by the GC. */
 	KGC_rmRef(threadCollector, jtid);
 }
@@ -1082,10 +1175,10 @@ jthread_destroy(jthread *jtid)
 void
 jthread_walkLiveThreads(void (*func)(jthread_t,void*), void *priv)
 {
-        KaffeNodeQueue* liveQ;
+        jthread* tid;
 
-        for (liveQ = liveThreads; liveQ != NULL; liveQ = liveQ->next) {
-                func(JTHREADQ(liveQ), priv);
+        for (tid = liveThreads; tid != NULL; tid = tid->liveNext) {
+                func(tid, priv);
         }
 }
 
@@ -1175,14 +1268,12 @@ jthread_t jthread_from_data(threadData *td, void *suspender)
 
 	intsDisable();
 	{
-		KaffeNodeQueue *curr;
 		jthread_t tid;
 		
-		for( curr = liveThreads;
-		     (curr != NULL) && (retval == NULL);
-		     curr = curr->next)
+		for( tid = liveThreads;
+		     (tid != NULL) && (retval == NULL);
+		     tid = tid->liveNext)
 		{
-		        tid = JTHREADQ(curr);
 			if( &tid->localData == td )
 			{
 				if( tid != currentJThread )
@@ -1239,6 +1330,34 @@ static void *thread_reallocator(void *p, size_t bytes)
 	return KGC_realloc(threadCollector, p, bytes, KGC_ALLOC_STATIC_THREADDATA);
 }
 
+/*
+ * Make sure the per-fd tables have an entry for fd.  They start out
+ * with FD_SETSIZE entries and are doubled as needed, so poll and epoll
+ * are not limited by the size of an fd_set.
+ */
+static void
+growFdTables(int fd)
+{
+	int nsize;
+	int i;
+
+	if (fd < fdTableSize) {
+		return;
+	}
+	nsize = (fdTableSize == 0 ? FD_SETSIZE : fdTableSize);
+	while (nsize <= fd) {
+		nsize *= 2;
+	}
+	readQ = thread_reallocator(readQ, nsize * sizeof(KaffeNodeQueue *));
+	writeQ = thread_reallocator(writeQ, nsize * sizeof(KaffeNodeQueue *));
+	blockingFD = thread_reallocator(blockingFD, nsize * sizeof(jboolean));
+	for (i = fdTableSize; i < nsize; i++) {
+		readQ[i] = writeQ[i] = NULL;
+		blockingFD[i] = true;
+	}
+	fdTableSize = nsize;
+}
+
 /*
  * Initialize the threading system. 
  */
@@ -1316,10 +1435,7 @@ jthread_init(int pre,
 	destructor1 = _destructor1;
 	threadQhead = (KaffeNodeQueue **)thread_static_allocator((maxpr + 1) * sizeof (KaffeNodeQueue *));
 	threadQtail = (KaffeNodeQueue **)thread_static_allocator((maxpr + 1) * sizeof (KaffeNodeQueue *));
-	for (i=0;i<FD_SETSIZE;i++) {
-	  readQ[i] = writeQ[i] = NULL;
-	  blockingFD[i] = true;
-	}
+	growFdTables(FD_SETSIZE - 1);
 	alarmList = NULL;
 	waitForList = NULL;
 
@@ -1334,6 +1450,26 @@ jthread_init(int pre,
 		maxFd = sigPipe[0] > sigPipe[1] ? sigPipe[0] : sigPipe[1];
 	}
 
+#if USE_EPOLL
+	epollFd = epoll_create(EPOLL_MAXEVENTS);
+	if (epollFd != -1) {
+		struct epoll_event ev;
+
+		/* the helper pipe is level-triggered so it keeps waking us */
+		ev.events = EPOLLIN;
+		ev.data.fd = sigPipe[0];
+		if (epoll_ctl(epollFd, EPOLL_CTL_ADD, sigPipe[0], &ev) != 0) {
+			close(epollFd);
+			epollFd = -1;
+		}
+		else {
+			fcntl(epollFd, F_SETFD, FD_CLOEXEC);
+		}
+	}
+DBG(JTHREAD,
+	dprintf("jthread_init: %s\n", epollFd != -1 ? "using epoll" : "epoll unavailable"); );
+#endif
+
 	jtid = newThreadCtx(0);
 	if (!jtid) {
 		return;
@@ -1354,8 +1490,8 @@ jthread_init(int pre,
         jtid->flags = THREAD_FLAGS_NOSTACKALLOC;
         jtid->func = (void (*)(void*))jthread_init;
         
-	liveThreads = KaffePoolNewNode(queuePool);
-	liveThreads->element = jtid;
+	liveThreads = NULL;
+	addToLiveThreads(jtid);
         jtid->time = 0;
 
         talive++;
@@ -1512,7 +1648,6 @@ jthread *
 jthread_create(unsigned int pri, void (*func)(void *), int isDaemon,
         void *jlThread, size_t threadStackSize)
 {
-        KaffeNodeQueue *liveQ;
 	jthread *jtid; 
 	void	*oldstack, *newstack;
 #if defined(__ia64__)
@@ -1546,10 +1681,7 @@ jthread_create(unsigned int pri, void (*func)(void *), int isDaemon,
         jtid->flags = THREAD_FLAGS_GENERAL;
 	jtid->blockqueue = NULL;
 
-	liveQ = KaffePoolNewNode(queuePool);
-	liveQ->next = liveThreads;
-	liveQ->element = jtid;
-	liveThreads = liveQ;
+	addToLiveThreads(jtid);
 
         talive++;       
         if ((jtid->daemon = isDaemon) != 0) {
@@ -1892,7 +2024,7 @@ void
 jthread_exit(void)
 {
 	jthread* tid;
-	KaffeNodeQueue *liveQ;
+	jthread* next;
 
 DBG(JTHREAD,
 	dprintf("jthread_exit %p\n", currentJThread);		);
@@ -1928,8 +2060,8 @@ DBG(JTHREAD,
 	   */
 	  intsDisable();
 	  
-	  for (liveQ = liveThreads; liveQ != 0; liveQ = liveQ->next) {
-	    tid = JTHREADQ(liveQ);
+	  for (tid = liveThreads; tid != 0; tid = next) {
+	    next = tid->liveNext;
 	    /* The current thread is still on the live
 	     * list, and we don't want to recursively
 	     * suicide.
@@ -1981,6 +2113,23 @@ void jthread_exit_when_done(void)
 	jthread_exit();
 }
 
+/*
+ * The CPU time used by the process, in nanoseconds.  All threads run
+ * in it, so the time of a thread is what it adds while the thread is
+ * running.
+ */
+static jlong
+processCpuTime(void)
+{
+	struct rusage ru;
+
+	getrusage(RUSAGE_SELF, &ru);
+	return (((jlong)ru.ru_utime.tv_sec + (jlong)ru.ru_stime.tv_sec)
+		* 1000000000
+		+ ((jlong)ru.ru_utime.tv_usec + (jlong)ru.ru_stime.tv_usec)
+		* 1000);
+}
+
 /*
  * Reschedule the thread.
  * Called whenever a change in the running thread is required.
@@ -2007,16 +2156,7 @@ reschedule(void)
 				currentJThread = JTHREADQ(threadQhead[i]);
 
 				{
-					struct rusage ru;
-					jlong ct;
-
-					getrusage(RUSAGE_SELF, &ru);
-					ct = ((jlong)ru.ru_utime.tv_sec *
-					      1000000)
-						+ ((jlong)ru.ru_utime.tv_usec);
-					ct += ((jlong)ru.ru_stime.tv_sec *
-					       1000000)
-						+ ((jlong)ru.ru_stime.tv_usec);
+					jlong ct = processCpuTime();
 
 					lastThread->totalUsed +=
 						(ct - lastThread->startUsed);
@@ -2115,6 +2255,152 @@ resumeQueue(KaffeNodeQueue *queue)
 	}
 }
 
+/*
+ * Find out if we have any threads waiting (and if so, when the first
+ * one will expire).  We use this to prevent indefinite waits in the
+ * poll / select / epoll_wait.
+ */
+static jlong
+ioWaitTime(int canSleep)
+{
+	/** the wake-up time of the next thread on the alarm queue */
+	jlong firstAlarm;
+	jlong maxWait;
+
+	firstAlarm = -1;
+	if (alarmList != 0) {
+		// sorted
+		firstAlarm = JTHREADQ(alarmList)->time;
+	}
+
+	maxWait = (canSleep ? -1 : 0);
+	if ( (firstAlarm != -1) && (canSleep) ) {
+		jlong curTime = currentTime();
+		if (curTime >= firstAlarm) {
+			maxWait = 0;
+		} else {
+			maxWait = firstAlarm - curTime;
+		}
+		DBG(JTHREADDETAIL, dprintf("handleIO(sleep=%d) maxWait=%ld\n", canSleep, (long) maxWait); );
+	}
+	return (maxWait);
+}
+
+#if USE_EPOLL
+/*
+ * Process incoming SIGIO using the epoll set.  Unlike the poll/select
+ * code below we don't rebuild anything here: the kernel hands us only
+ * the descriptors that became ready since the last call.
+ */
+static
+void
+handleEpollIO(int canSleep)
+{
+	struct epoll_event events[EPOLL_MAXEVENTS];
+	jlong maxWait;
+	int r;
+	int i;
+	int b = 0;
+
+	assert(intsDisabled());
+
+retry:
+	if (canSleep) {
+		b = blockInts;
+		/* NB: BEGIN unprotected region */
+		blockInts = 0;
+	}
+
+	maxWait = ioWaitTime(canSleep);
+	r = epoll_wait(epollFd, events, EPOLL_MAXEVENTS, (int)maxWait);
+
+	/* Reset wouldlosewakeup here */
+	wouldlosewakeup = 0; 
+
+	if (canSleep) {
+		blockInts = b;
+		/* NB: END unprotected region */
+	}
+	if ((r < 0 && errno == EINTR) && !canSleep) 
+		goto retry;
+
+	for (i = 0; i < r; i++) {
+		int fd = events[i].data.fd;
+		uint32 rev = events[i].events;
+
+		if (fd == sigPipe[0]) {
+			/* drain helper pipe if a byte was written;
+			 * see handleIO for why we count the bytes.
+			 */
+			if (canSleep && bytesInPipe > 0) {
+				char c;
+
+				read(sigPipe[0], &c, 1);
+				bytesInPipe--;
+			}
+			continue;
+		}
+
+		/* Errors and hangups wake up both readers and writers, 
+		 * just like the poll(2) code does.
+		 */
+		if ((rev & (EPOLLIN|EPOLLHUP|EPOLLERR)) && readQ[fd] != 0) {
+			needReschedule = true;
+			resumeQueue(readQ[fd]);
+			readQ[fd] = 0;
+		}
+		if ((rev & (EPOLLOUT|EPOLLHUP|EPOLLERR)) && writeQ[fd] != 0) {
+			needReschedule = true;
+			resumeQueue(writeQ[fd]);
+			writeQ[fd] = 0;
+		}
+	}
+
+	if (canSleep && sigPending) {
+		processSignals();
+	}
+}
+
+/*
+ * Make sure fd is in the epoll set.  Descriptors are registered
+ * edge-triggered for both directions; re-arming an existing entry
+ * with EPOLL_CTL_MOD reports it again if it is ready right now.
+ * If the fd was closed and its number reused the old entry is gone,
+ * so we add it again.
+ */
+static void
+epollWatch(int fd)
+{
+	struct epoll_event ev;
+
+	ev.events = EPOLLIN | EPOLLOUT | EPOLLET;
+	ev.data.fd = fd;
+	if (epoll_ctl(epollFd, EPOLL_CTL_MOD, fd, &ev) != 0 && errno == ENOENT) {
+		epoll_ctl(epollFd, EPOLL_CTL_ADD, fd, &ev);
+	}
+}
+#endif
+
+#if USE_POLL && DONT_USE_ALLOCA
+/*
+ * The pollfd array of handleIO, kept from one call to the next and
+ * grown with maxFd.  handleIO runs with interrupts disabled, so it is
+ * never used twice at once.
+ */
+static struct pollfd *pollArray;
+static int pollArraySize;
+
+static struct pollfd *
+growPollArray(int n)
+{
+	if (n > pollArraySize) {
+		pollArray = thread_reallocator(pollArray, n * sizeof(struct pollfd));
+		pollArraySize = n;
+	}
+	return pollArray;
+}
+#endif
+
 /*
  * Process incoming SIGIO
  * return 1 if select was interrupted
@@ -2124,19 +2410,13 @@ void
 handleIO(int canSleep)
 {
 	int r;
-	/** the wake-up time of the next thread on the alarm queue */
-	jlong firstAlarm;
 	/** how long do we want to sleep, at most */
 	jlong maxWait;
 	/* NB: both pollarray and rd, wr are thread-local */
 #if USE_POLL
 	/* for poll(2) */
 	unsigned int nfd, i;
-#if DONT_USE_ALLOCA
-	struct pollfd pollarray[FD_SETSIZE];	/* huge (use alloca?) */
-#else
-	struct pollfd *pollarray = alloca(sizeof(struct pollfd) * (maxFd+1));
-#endif
+	struct pollfd *pollarray;
 #else
 	/* for select(2) */
 	fd_set rd;
@@ -2151,7 +2431,21 @@ handleIO(int canSleep)
 DBG(JTHREADDETAIL,
 	dprintf("handleIO(sleep=%d)\n", canSleep);		);
 
+#if USE_EPOLL
+	if (epollFd != -1) {
+		handleEpollIO(canSleep);
+		return;
+	}
+#endif
+
 #if USE_POLL
+	/* room for every fd up to maxFd, and for sigPipe[0] */
+#if DONT_USE_ALLOCA
+	pollarray = growPollArray(maxFd + 2);
+#else
+	pollarray = alloca(sizeof(struct pollfd) * (maxFd + 2));
+#endif
+
 	/* Build pollarray from fd_sets.
 	 * This is probably not the most efficient way to handle this.
 	 */
@@ -2166,7 +2460,6 @@ DBG(JTHREADDETAIL,
 		}
 		if (writeQ[i] != 0) {   /* FD_ISSET(i, &writesPending) */
 			ev |= POLLOUT;
-			assert(FD_ISSET(i, &writesPending));
 		}
 		if (ev != 0) {
 			pollarray[nfd].fd = i;
@@ -2197,28 +2490,7 @@ retry:
 #endif
 	}
 
-        /*
-	 * find out if we have any threads waiting (and if so, when the first
-	 * one will expire).  we use this to prevent indefinite waits in the
-	 * poll / select
-	 *
-	 */
-	firstAlarm = -1;
-	if (alarmList != 0) {
-		// sorted
-		firstAlarm = JTHREADQ(alarmList)->time;
-	}
-
-	maxWait = (canSleep ? -1 : 0);
-	if ( (firstAlarm != -1) && (canSleep) ) {
-		jlong curTime = currentTime();
-		if (curTime >= firstAlarm) {
-			maxWait = 0;
-		} else {
-			maxWait = firstAlarm - curTime;
-		}
-		DBG(JTHREADDETAIL, dprintf("handleIO(sleep=%d) maxWait=%ld\n", canSleep, (long) maxWait); );
-	}
+	maxWait = ioWaitTime(canSleep);
 
 #if USE_POLL
 	r = poll(pollarray, nfd, maxWait);
@@ -2339,15 +2611,32 @@ DBG(JTHREAD,
 	if (fd > maxFd) {
 		maxFd = fd;
 	}
+	growFdTables(fd);
+#if USE_EPOLL
+	if (epollFd != -1) {
+		epollWatch(fd);
+	}
+#endif
+#if !USE_POLL
+	assert(fd < FD_SETSIZE);
+#endif
 	if (op == TH_READ) {
+#if !USE_POLL
 		FD_SET(fd, &readsPending);
+#endif
 		rc = suspendOnQThread(currentJThread, &readQ[fd], timeout);
+#if !USE_POLL
 		FD_CLR(fd, &readsPending);
+#endif
 	}
 	else {
+#if !USE_POLL
 		FD_SET(fd, &writesPending);
+#endif
 		rc = suspendOnQThread(currentJThread, &writeQ[fd], timeout);
+#if !USE_POLL
 		FD_CLR(fd, &writesPending);
+#endif
 	}
 	return (rc);
 }
@@ -2840,17 +3129,17 @@ childDeath(void)
 
 void jthread_set_blocking(int fd, int blocking)
 {
-	assert(fd < FD_SETSIZE);
-
 	intsDisable();
+	growFdTables(fd);
 	blockingFD[fd] = blocking;
 	intsRestore();
 }
 
 int jthread_is_blocking(int fd)
 {
-	assert(fd < FD_SETSIZE);
-
+	if (fd >= fdTableSize) {
+		return true;
+	}
 	return blockingFD[fd];
 }
 
@@ -2860,21 +3149,11 @@ jlong jthread_get_usage(jthread_t jt)
 
        if( jt == jthread_current() )
        {
-               struct rusage ru;
-               jlong ct;
-
-               getrusage(RUSAGE_SELF, &ru);
-               ct = ((jlong)ru.ru_utime.tv_sec * 1000000)
-                       + ((jlong)ru.ru_utime.tv_usec);
-               ct += ((jlong)ru.ru_stime.tv_sec * 1000000)
-                       + ((jlong)ru.ru_stime.tv_usec);
-
-               retval = jt->totalUsed + (ct - jt->startUsed);
+               retval = jt->totalUsed + (processCpuTime() - jt->startUsed);
        }
        else
        {
                retval = jt->totalUsed;
        }
-       retval *= 1000; /* Convert to nanos */
        return( retval );
 }
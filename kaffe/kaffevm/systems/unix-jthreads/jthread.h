@@ -51,6 +51,10 @@
 #define USE_POLL	1
 #endif
 
+#if defined(HAVE_SYS_EPOLL_H)
+#define USE_EPOLL	1
+#endif
+
 #if defined(__WIN32__)
 #define SIG_T   void(*)()
 #else
@@ -102,12 +106,15 @@ typedef struct _jthread {
 	void*				restorePoint;
 	void*				stackBase;
 	void*				stackEnd;
+	size_t				stackMapped;	/* size of mmap'ed stack, if any */
 	void*				suspender;
 	unsigned int			suspendCount;
 	jlong				time;
-	jlong				startUsed;
+	jlong				startUsed;	/* CPU times, in ns */
 	jlong				totalUsed;
         KaffeNodeQueue*                 blockqueue; 
+	struct _jthread*		liveNext;	/* list of live threads */
+	struct _jthread*		livePrev;
 	unsigned long			flags;
 	void				(*func)(void *);
 	int				daemon;
@@ -340,6 +347,7 @@ void jthread_resume(jthread_t jt, void *suspender);
 
 jthread_t jthread_from_data(threadData *td, void *suspender);
 
+/* The CPU time used by a thread, in nanoseconds */
 jlong jthread_get_usage(jthread_t jt);
 
 int jthread_get_status(jthread_t jt);
@@ -187,7 +187,11 @@ registerAsyncSignalHandler(int sig, void* handler)
 		|| (sig == SIGIO)
 		|| (sig == SIGUSR1)
 		|| (sig == SIGUSR2)
-		|| (sig == SIGCHLD);
+		|| (sig == SIGCHLD)
+#if defined(SIGPROF)
+		|| (sig == SIGPROF)
+#endif /* defined(SIGPROF) */
+		|| (sig == SIGQUIT);
 #endif /* !defined(NDEBUG) */
 
 	/* Make sure its really an asynchronous signal being registered. */
@@ -36,6 +36,14 @@ setBlockState(jthread_t cur, unsigned int newState, void *sp, sigset_t *old_mask
   pthread_mutex_lock(&cur->suspendLock);
   cur->blockState |= newState;
   cur->stackCur  = sp;
+  /* A blocked thread is at a safepoint: if jthread_suspendall() is
+   * waiting for us and hasn't sent a signal, tell it we're stopped.
+   */
+  if (cur->suspendState == SS_PENDING_SUSPEND && !cur->suspendSignalled)
+  {
+    cur->suspendState = SS_SUSPENDED;
+    KaffePThread_AckSuspend();
+  }
   pthread_mutex_unlock(&cur->suspendLock);
 
   /* This thread is protected against suspendall. So if a signal has been
@@ -205,7 +205,11 @@ registerAsyncSignalHandler(int sig, void* handler)
 #endif
 		|| (sig == SIGIO)
 		|| (sig == SIGUSR1)
-		|| (sig == SIGCHLD);
+		|| (sig == SIGCHLD)
+#if defined(SIGPROF)
+		|| (sig == SIGPROF)
+#endif
+		|| (sig == SIGQUIT);
 
 	/* Make sure its really an asynchronous signal being registered. */
 	assert(handler != NULL);
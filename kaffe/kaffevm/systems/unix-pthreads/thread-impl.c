@@ -43,6 +43,7 @@
 #include "md.h"
 #include "gc.h"
 #include "thread.h"
+#include "stats.h"
 #ifdef KAFFE_BOEHM_GC
 #include <gc/gc.h>
 #endif
@@ -193,6 +194,18 @@ static int		critSection;
 /** helper semaphore to signal completion of critical section enter/exit */
 static repsem_t		critSem;
 
+/** set while jthread_suspendall() waits for threads to reach a safepoint */
+volatile int		jthread_safepoint_pending;
+
+/** how long (in microseconds) jthread_suspendall() waits for safepoints
+ * before it falls back to suspend signals */
+#define SAFEPOINT_TIMEOUT	2000
+
+#if defined(KAFFE_STATS)
+/** wall-clock time taken to stop the world */
+static counter		safepointWait;
+#endif
+
 /** Signal set which contains important signals for suspending threads. */
 static sigset_t		suspendSet;
 
@@ -1336,6 +1349,63 @@ suspend_signal_handler (int sig UNUSED)
   KaffePThread_AckAndWaitForResume(cur, 0);
 }
 
+/**
+ * Stop at a safepoint while jthread_suspendall() is waiting for us.
+ * This is the cooperative counterpart of suspend_signal_handler: the
+ * thread records its stack position and acknowledges through critSem
+ * exactly as the signal handler would, unless it has already been
+ * sent a suspend signal, in which case the handler takes care of it.
+ */
+void
+jthread_safepoint (void)
+{
+  volatile jthread_t cur = jthread_current();
+  sigset_t blockSet;
+  sigset_t oldset;
+
+  if ( !cur || !cur->active || cur->suspendState != SS_PENDING_SUSPEND )
+	return;
+
+  /* Don't let the suspend handler run while we hold the suspendLock */
+  sigemptyset(&blockSet);
+  sigaddset(&blockSet, sigSuspend);
+  pthread_sigmask(SIG_BLOCK, &blockSet, &oldset);
+
+  pthread_mutex_lock(&cur->suspendLock);
+  if ( cur->suspendState == SS_PENDING_SUSPEND && !cur->suspendSignalled ){
+    JTHREAD_JMPBUF env;
+
+    /* Save all of the registers onto the stack, see below. */
+    JTHREAD_SETJMP(env);
+
+    cur->stackCur     = (void*)&env;
+    cur->suspendState = SS_SUSPENDED;
+
+    DBG( JTHREADDETAIL, dprintf("safepoint: %p\n", cur));
+
+    /* notify the critSect owner that we are now suspended */
+    repsem_post( &critSem);
+
+    KaffePThread_WaitForResume(true, 0);
+  }
+  else
+    {
+      pthread_mutex_unlock(&cur->suspendLock);
+    }
+
+  pthread_sigmask(SIG_SETMASK, &oldset, NULL);
+}
+
+/**
+ * Tell jthread_suspendall() that the calling thread has stopped
+ * without waiting for a resume, because it is about to block anyway.
+ */
+void
+KaffePThread_AckSuspend(void)
+{
+  repsem_post( &critSem);
+}
+
 void KaffePThread_AckAndWaitForResume(volatile jthread_t cur, unsigned int state)
 {
   if ( cur->suspendState == SS_PENDING_SUSPEND ){
@@ -1401,22 +1471,27 @@ jthread_suspendall (void)
         int status;
 	int val;
 	int numPending = 0;
+	int numRunning = 0;
+	struct timeval start;
+	struct timeval now;
+	jlong waited;
 
 	repsem_getvalue(&critSem, &val);
 	assert(val == 0);
 
+	gettimeofday(&start, NULL);
+
+	/*
+	 * First ask running threads to stop by themselves at their next
+	 * safepoint.  Threads blocked on something else than the thread
+	 * lock (which we soon release) are already safe.
+	 */
+	jthread_safepoint_pending = 1;
 	for ( t=activeThreads; t; t = t->next ){
-	  /*
-	   * make sure we don't suspend ourselves, and we don't expect suspend
-	   * signals handled by threads which are blocked on someting else
-	   * than the thread lock (which we soon release)
-	   */
 	  pthread_mutex_lock(&t->suspendLock);
 	  if ( (t != cur) && (t->suspendState == 0) && (t->active != 0) ) {
-		DBG( JTHREAD, dprintf("signal suspend: %p (susp: %d blk: %d)\n",
-				      t, t->suspendState, t->blockState));
-
 		t->suspendState = SS_PENDING_SUSPEND;
+		t->suspendSignalled = 0;
 
 		if ((t->blockState & (BS_SYSCALL|BS_CV|BS_MUTEX|BS_CV_TO)) != 0)
 		  {
@@ -1427,24 +1502,52 @@ jthread_suspendall (void)
 		  }
 		else
 		  {
-		    if ((status = pthread_kill( t->tid, sigSuspend)) != 0)
-		      {
-			dprintf("Internal error: error sending SUSPEND signal to %p: %d (%s)\n", t, status, strerror(status));
-			KAFFEVM_ABORT();
-		      }
-		    else
-		      {
-			/* BAD: Empirical workaround for lost signals (with accumulative syncing)
-			 * It shouldn't be necessary (posix sems are accumulative), and it
-			 * is bad, performancewise (at least n*2 context switches per suspend)
-			 * but it works more reliably on linux 2.2.x */
-			numPending++;
-		      }
+		    numRunning++;
 		  }
 	  }
 	  pthread_mutex_unlock(&t->suspendLock);
 	}
 
+	/* Each thread acknowledges through critSem once it is stopped. */
+	numPending = numRunning;
+	while (numPending > 0)
+	  {
+	    if (repsem_trywait(&critSem) == 0)
+	      {
+		numPending--;
+		continue;
+	      }
+	    gettimeofday(&now, NULL);
+	    waited = (jlong)(now.tv_sec - start.tv_sec) * 1000000
+		    + (now.tv_usec - start.tv_usec);
+	    if (waited >= SAFEPOINT_TIMEOUT)
+	      break;
+	    sched_yield();
+	  }
+
+	/*
+	 * Whoever didn't make it (e.g. a thread busy in native code)
+	 * gets a suspend signal.
+	 */
+	if (numPending > 0)
+	  {
+	    for ( t=activeThreads; t; t = t->next ){
+	      pthread_mutex_lock(&t->suspendLock);
+	      if ( (t != cur) && (t->suspendState == SS_PENDING_SUSPEND) ) {
+		DBG( JTHREAD, dprintf("signal suspend: %p (susp: %d blk: %d)\n",
+				      t, t->suspendState, t->blockState));
+
+		t->suspendSignalled = 1;
+		if ((status = pthread_kill( t->tid, sigSuspend)) != 0)
+		  {
+		    dprintf("Internal error: error sending SUSPEND signal to %p: %d (%s)\n", t, status, strerror(status));
+		    KAFFEVM_ABORT();
+		  }
+	      }
+	      pthread_mutex_unlock(&t->suspendLock);
+	    }
+	  }
+
 	/* Now that all signals has been sent we may wait for all concerned
 	 * threads to handle them.
 	 */
@@ -1453,6 +1556,14 @@ jthread_suspendall (void)
 	    repsem_wait( &critSem);
 	    numPending--;
 	  }
+	jthread_safepoint_pending = 0;
+
+	gettimeofday(&now, NULL);
+	waited = (jlong)(now.tv_sec - start.tv_sec) * 1000000
+		+ (now.tv_usec - start.tv_usec);
+	DBG( JTHREAD, dprintf("stopped %d running threads in %ld us\n",
+			      numRunning, (long)waited));
+	addToCounter(&safepointWait, "safepoint-wait-us", 1, waited);
 
 #else
 	/*
@@ -1943,8 +2054,29 @@ jthread_t jthread_from_data(threadData *td, void *suspender UNUSED)
   return NULL;
 }
 
-jlong jthread_get_usage(jthread_t jt UNUSED)
+/*
+ * Return the CPU time consumed by the given thread in nanoseconds, or
+ * 0 if the system cannot tell us.
+ */
+jlong jthread_get_usage(jthread_t jt)
 {
-	/* TODO */
-	return 0;
+#if defined(HAVE_PTHREAD_GETCPUCLOCKID) || defined(CLOCK_THREAD_CPUTIME_ID)
+  struct timespec ts;
+  clockid_t cid;
+
+#if defined(HAVE_PTHREAD_GETCPUCLOCKID)
+  if (pthread_getcpuclockid(jt->tid, &cid) != 0)
+    return 0;
+#else
+  /* Without pthread_getcpuclockid we can only ask about ourselves. */
+  if (jt != jthread_current())
+    return 0;
+  cid = CLOCK_THREAD_CPUTIME_ID;
+#endif
+  if (clock_gettime(cid, &ts) != 0)
+    return 0;
+  return (jlong)ts.tv_sec * 1000000000 + (jlong)ts.tv_nsec;
+#else
+  return 0;
+#endif
 }
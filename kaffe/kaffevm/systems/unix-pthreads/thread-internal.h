@@ -73,6 +73,7 @@ typedef struct _jthread {
   /* the following fields hold our extensions */
   int                   active;         /* are we in our user thread function 'func'? */
   suspend_state_t       suspendState;   /* are we suspended for a critSection?  */
+  int                   suspendSignalled; /* was sent sigSuspend for this critSection? */
   block_state_t         blockState;     /* are we in a Lwait or Llock (can handle signals)? */
 
   void                  (*func)(void*);  /* this kicks off the user thread func */
@@ -312,6 +313,27 @@ void jthread_suspendall (void);
  */
 void jthread_unsuspendall (void);
 
+/**
+ * Set while jthread_suspendall() waits for running threads to stop
+ * at a safepoint.
+ */
+extern volatile int jthread_safepoint_pending;
+
+/**
+ * Stop the calling thread if a critical section is being established.
+ * Threads which do not get here quickly enough are suspended with a
+ * signal instead.
+ */
+void jthread_safepoint (void);
+
+/**
+ * Safepoint check emitted by the execution engines at backward
+ * branches and method returns.
+ */
+#define JTHREAD_SAFEPOINTS
+#define jthread_safepoint_poll() \
+	do { if (jthread_safepoint_pending) jthread_safepoint(); } while (0)
+
 /**
  * Call a function once for each active thread.
  * Caution. This should only be used when all threads
@@ -378,7 +400,8 @@ void jthread_resume(UNUSED jthread_t jt, UNUSED void *suspender);
 
 jthread_t jthread_from_data(UNUSED threadData *td, UNUSED void *suspender);
 
-jlong jthread_get_usage(UNUSED jthread_t jt);
+/* The CPU time used by a thread, in nanoseconds */
+jlong jthread_get_usage(jthread_t jt);
 
 int jthread_is_interrupted(jthread_t jt);
 
@@ -386,6 +409,7 @@ int jthread_interrupted(jthread_t jt);
 
 void KaffePThread_WaitForResume(int releaseMutex, unsigned int state);
 void KaffePThread_AckAndWaitForResume(jthread_t cur, unsigned int newState);
+void KaffePThread_AckSuspend(void);
 int KaffePThread_getSuspendSignal(void);
 
 void KaffePThread_detectStackBoundaries(jthread_t jtid, size_t mainThreadStackSize);
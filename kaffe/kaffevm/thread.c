@@ -52,6 +52,7 @@
 #include "jni.h"
 #include "md.h"
 #include "jvmpi_kaffe.h"
+#include "stackTrace.h"
 
 /* If not otherwise specified, assume at least 1MB for main thread */
 #ifndef MAINSTACKSIZE
@@ -99,6 +100,9 @@ linkNativeAndJavaThread(jthread_t thread, Hjava_lang_VMThread *jlThread)
 	thread_data->jniEnv = &Kaffe_JNINativeInterface;
 
 	thread_data->needOnStack = STACK_HIGH; 
+	thread_data->allocatedBytes = 0;
+	thread_data->allocSampleNext = 0;
+	KaffeVM_attachSampleRing(thread_data);
 
 	/* Setup JNI for this newly attached thread */
 	reftable = (jnirefs *)gc_malloc(sizeof(jnirefs) + sizeof(jref) * DEFAULT_JNIREFS_NUMBER,
@@ -119,6 +123,7 @@ KaffeVM_unlinkNativeAndJavaThread(void)
 	threadData *thread_data = KTHREAD(get_data)(thread);
 
 	thread_data->jniEnv = NULL;
+	KaffeVM_detachSampleRing(thread_data);
 
 	KSEM(destroy) (&thread_data->sem);
 }
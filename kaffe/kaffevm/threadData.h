@@ -34,6 +34,14 @@ typedef struct _threadData {
 	VmExceptHandler	*exceptPtr;
 	struct Hjava_lang_Throwable *exceptObj;
 	int		needOnStack;
+
+	/* bytes of the Java objects and arrays this thread allocated */
+	jlong		allocatedBytes;
+	/* allocatedBytes at which the next allocation is sampled */
+	jlong		allocSampleNext;
+
+	/* where the sampling profiler puts this thread's stacks */
+	struct _sampleRing *samples;
 } threadData;
 
 #define THREAD_DATA_INITIALIZED(td) ((td)->jniEnv != NULL)
@@ -193,6 +193,134 @@ utf8ConstNew(const char *s, size_t len)
 	return (temp);
 }
 
+/*
+ * Convert many non-terminated UTF-8 strings into interned Utf8Consts,
+ * such as all the Utf8 entries of a constant pool.  The lookup keys are
+ * built in one scratch block, all of them are looked up under one hold
+ * of the lock, and the new ones are added under a second.
+ */
+bool
+utf8ConstNewArray(Utf8Const** out, const char* const* strs,
+		  const u2* lens, unsigned int count)
+{
+	Utf8Const** fakes;
+	Utf8Const *utf8, *temp;
+	char* scratch;
+	size_t size;
+	unsigned int made;
+	unsigned int i;
+	bool ok;
+
+	if (count == 0) {
+		return (true);
+	}
+
+	/* Build the keys, hashed with the String.hashCode() algorithm */
+	size = count * sizeof(Utf8Const*);
+	for (i = 0; i < count; i++) {
+		size += (sizeof(Utf8Const) + lens[i] + sizeof(void*))
+			& ~(sizeof(void*) - 1);
+	}
+	scratch = gc_malloc(size, KGC_ALLOC_UTF8CONST);
+	if (scratch == NULL) {
+		return (false);
+	}
+	fakes = (Utf8Const**)scratch;
+	scratch += count * sizeof(Utf8Const*);
+	for (i = 0; i < count; i++) {
+		const char *ptr = strs[i];
+		const char *const end = ptr + lens[i];
+		int32 hash;
+		int ch;
+
+#ifdef KAFFE_VMDEBUG
+		assert(utf8ConstIsValidUtf8(strs[i], lens[i]));
+#endif
+		for (hash = 0;
+		    (ch = UTF8_GET(ptr, end)) != -1;
+		    hash = (31 * hash) + ch);
+
+		fakes[i] = (Utf8Const*)scratch;
+		memcpy((char *)fakes[i]->data, strs[i], lens[i]);
+		((char *)fakes[i]->data)[lens[i]] = '\0';
+		fakes[i]->hash = hash;
+		fakes[i]->length = lens[i];
+		scratch += (sizeof(Utf8Const) + lens[i] + sizeof(void*))
+			& ~(sizeof(void*) - 1);
+		out[i] = NULL;
+	}
+
+	/* Take the strings that are already interned */
+	lockUTF();
+	for (i = 0; i < count; i++) {
+		hitCounter(&utf8new, "utf8-new");
+		utf8 = (Utf8Const *) hashFind(hashTable, fakes[i]);
+		if (utf8 != NULL) {
+			assert(utf8->nrefs >= 1);
+			utf8->nrefs++;
+			out[i] = utf8;
+		}
+	}
+	unlockUTF();
+
+	/* Create the rest */
+	for (i = 0; i < count; i++) {
+		if (out[i] != NULL) {
+			fakes[i] = NULL;
+			continue;
+		}
+		hitCounter(&utf8newalloc, "utf8-new-alloc");
+		utf8 = gc_malloc(sizeof(Utf8Const) + lens[i] + 1, KGC_ALLOC_UTF8CONST);
+		if (utf8 == NULL) {
+			made = i;
+			ok = false;
+			goto fail;
+		}
+		memcpy(utf8, fakes[i], sizeof(Utf8Const) + lens[i] + 1);
+		utf8->nrefs = 1;
+		fakes[i] = utf8;
+	}
+
+	/* Add them; another thread or an earlier duplicate may win */
+	made = count;
+	ok = true;
+	lockUTF();
+	for (i = 0; i < count; i++) {
+		if (fakes[i] == NULL) {
+			continue;
+		}
+		temp = (Utf8Const *) hashAdd(hashTable, fakes[i]);
+		if (temp == NULL) {
+			ok = false;
+			continue;
+		}
+		if (temp != fakes[i]) {
+			temp->nrefs++;
+		}
+		else {
+			fakes[i] = NULL;
+		}
+		out[i] = temp;
+	}
+	unlockUTF();
+
+fail:
+	/* Free the losers and, on failure, drop everything taken */
+	for (i = 0; i < made; i++) {
+		if (fakes[i] != NULL) {
+			gc_free(fakes[i]);
+		}
+	}
+	if (!ok) {
+		for (i = 0; i < count; i++) {
+			utf8ConstRelease(out[i]);
+			out[i] = NULL;
+		}
+	}
+	gc_free(fakes);
+	return (ok);
+}
+
 /*
  * Add a reference to a Utf8Const.
  */
@@ -30,6 +30,14 @@ extern Utf8Const*	  utf8ConstFromString(const char* str);
    remains valid until Utf8ConstRelease() is called. */
 extern Utf8Const*	  utf8ConstNew(const char* str, size_t len);
 
+/* Create count Utf8Consts at once, taking the intern lock twice in all
+   rather than twice for each.  The arrays must be valid UTF-8.  Returns
+   false if memory ran out, in which case none are created. */
+extern bool		  utf8ConstNewArray(Utf8Const** out,
+					    const char* const* strs,
+					    const u2* lens,
+					    unsigned int count);
+
 /* Add a reference to a Utf8Const */
 extern void		  utf8ConstAddRef(Utf8Const*);
 
@@ -0,0 +1,829 @@
+/*
+ * verify-cache.c
+ *
+ * Copyright (c) 2026
+ *   Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ *
+ * On-disk cache of the classes that passed verify3, so that a VM
+ * started with -Xverifycache does not redo the data-flow analysis of
+ * classes it verified in an earlier run.
+ *
+ * Every class read while the cache is on gets a digest of its class
+ * file.  An entry is keyed by the digests of a class, its superclasses
+ * and all its interfaces, and lists the other classes verify3 resolved
+ * with the same digests of theirs.  A class hits when an entry of its
+ * name has its key and every listed class still resolves, from the
+ * class's loader, to one with the recorded digest.  Checking that
+ * loads every listed class, as verifying the whole class would have.
+ * A class recorded again replaces every older entry of its name.
+ *
+ * The digests are SHA-256, so that a class cannot be made to hit the
+ * entry of another class of its name and skip verification.  They do
+ * not make a cache file written by someone else safe to use: whoever
+ * can write the file can add entries for any class.
+ */
+
+#include "config.h"
+#include "debug.h"
+#include "config-std.h"
+#include "config-io.h"
+#include "config-mem.h"
+#include "gtypes.h"
+#include "files.h"
+#include "jsyscall.h"
+#include "kaffe/jmalloc.h"
+#include "kaffe_jni.h"
+#include "locks.h"
+#include "stats.h"
+#include "classMethod.h"
+#include "errors.h"
+#include "exception.h"
+#include "utf8const.h"
+
+#include "verify-cache.h"
+
+#define	VFY_MAGIC	"KAFFEVFY"
+#define	VFY_VERSION	2
+
+#define	DIGEST_SIZE	CLASS_DIGEST_SIZE
+
+#define	FNV_BASIS	((uint32)2166136261U)
+#define	FNV_PRIME	((uint32)16777619U)
+
+/*
+ * The file is a vfyHeader followed by count entries, in the byte order
+ * of the VM that wrote it; the version word doubles as the byte order
+ * check.  An entry is
+ *	uint8 key[32], uint32 nameLen, uint32 ndeps, char name[nameLen]
+ * followed by ndeps dependencies
+ *	uint8 digest[32], uint32 nameLen, char name[nameLen]
+ * all unaligned.
+ */
+typedef struct _vfyHeader {
+	char		magic[8];
+	uint32		version;
+	uint32		count;
+} vfyHeader;
+
+#define	ENTRY_SIZE	(DIGEST_SIZE + 8)
+#define	DEP_SIZE	(DIGEST_SIZE + 4)
+
+/* An entry read from the file or recorded by this run */
+typedef struct _vfyEntry {
+	struct _vfyEntry*	next;	/* hash chain, or list of records */
+	uint8			key[DIGEST_SIZE];
+	const char*		name;
+	uint32			nameLen;
+	uint32			ndeps;
+	const unsigned char*	deps;
+	const unsigned char*	raw;	/* the entry as written */
+	size_t			rawLen;
+	bool			replaced; /* by a record of this run */
+} vfyEntry;
+
+typedef struct VerifyDeps {
+	Hjava_lang_Class*	class;	/* being verified */
+	Hjava_lang_Class**	classes;
+	int			count;
+	int			size;
+	bool			incomplete;
+} VerifyDeps;
+
+static const char*		cacheFile;
+
+static unsigned char*		cacheData;
+static vfyEntry*		entries;
+static uint32			nentries;
+static vfyEntry**		buckets;	/* by name */
+static uint32			nbuckets;
+
+static iStaticLock		recordLock;
+static vfyEntry*		records;
+static int			nrecords;
+
+static counter			cacheHits;
+static counter			cacheMisses;
+
+void
+KaffeVM_setVerifyCache(const char* file)
+{
+	cacheFile = file;
+}
+
+bool
+isVerifyCacheEnabled(void)
+{
+	return (cacheFile != NULL);
+}
+
+/*
+ * SHA-256, as in FIPS 180-4.
+ */
+typedef struct {
+	uint32		h[8];
+	uint64		len;
+	unsigned char	buf[64];
+	size_t		nbuf;
+} sha256Context;
+
+static const uint32 sha256K[64] = {
+	0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+	0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+	0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+	0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+	0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+	0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+	0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+	0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+	0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+	0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+	0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+	0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+	0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+	0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+	0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+	0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+};
+
+#define	ROR32(x, n)	(((x) >> (n)) | ((x) << (32 - (n))))
+
+static void
+sha256Block(sha256Context* ctx, const unsigned char* p)
+{
+	uint32 w[64];
+	uint32 a, b, c, d, e, f, g, h;
+	uint32 t1, t2;
+	int i;
+
+	for (i = 0; i < 16; i++) {
+		w[i] = ((uint32)p[4*i] << 24) | ((uint32)p[4*i+1] << 16)
+			| ((uint32)p[4*i+2] << 8) | (uint32)p[4*i+3];
+	}
+	for (i = 16; i < 64; i++) {
+		t1 = ROR32(w[i-2], 17) ^ ROR32(w[i-2], 19) ^ (w[i-2] >> 10);
+		t2 = ROR32(w[i-15], 7) ^ ROR32(w[i-15], 18) ^ (w[i-15] >> 3);
+		w[i] = t1 + w[i-7] + t2 + w[i-16];
+	}
+
+	a = ctx->h[0]; b = ctx->h[1]; c = ctx->h[2]; d = ctx->h[3];
+	e = ctx->h[4]; f = ctx->h[5]; g = ctx->h[6]; h = ctx->h[7];
+	for (i = 0; i < 64; i++) {
+		t1 = h + (ROR32(e, 6) ^ ROR32(e, 11) ^ ROR32(e, 25))
+			+ ((e & f) ^ (~e & g)) + sha256K[i] + w[i];
+		t2 = (ROR32(a, 2) ^ ROR32(a, 13) ^ ROR32(a, 22))
+			+ ((a & b) ^ (a & c) ^ (b & c));
+		h = g; g = f; f = e; e = d + t1;
+		d = c; c = b; b = a; a = t1 + t2;
+	}
+	ctx->h[0] += a; ctx->h[1] += b; ctx->h[2] += c; ctx->h[3] += d;
+	ctx->h[4] += e; ctx->h[5] += f; ctx->h[6] += g; ctx->h[7] += h;
+}
+
+static void
+sha256Init(sha256Context* ctx)
+{
+	ctx->h[0] = 0x6a09e667; ctx->h[1] = 0xbb67ae85;
+	ctx->h[2] = 0x3c6ef372; ctx->h[3] = 0xa54ff53a;
+	ctx->h[4] = 0x510e527f; ctx->h[5] = 0x9b05688c;
+	ctx->h[6] = 0x1f83d9ab; ctx->h[7] = 0x5be0cd19;
+	ctx->len = 0;
+	ctx->nbuf = 0;
+}
+
+static void
+sha256Update(sha256Context* ctx, const unsigned char* data, size_t len)
+{
+	size_t n;
+
+	ctx->len += len;
+	while (len > 0) {
+		n = 64 - ctx->nbuf;
+		if (n > len) {
+			n = len;
+		}
+		memcpy(ctx->buf + ctx->nbuf, data, n);
+		ctx->nbuf += n;
+		data += n;
+		len -= n;
+		if (ctx->nbuf == 64) {
+			sha256Block(ctx, ctx->buf);
+			ctx->nbuf = 0;
+		}
+	}
+}
+
+static void
+sha256Final(sha256Context* ctx, uint8* digest)
+{
+	uint64 bits = ctx->len * 8;
+	unsigned char pad = 0x80;
+	unsigned char zero = 0;
+	unsigned char lenbuf[8];
+	int i;
+
+	sha256Update(ctx, &pad, 1);
+	while (ctx->nbuf != 56) {
+		sha256Update(ctx, &zero, 1);
+	}
+	for (i = 0; i < 8; i++) {
+		lenbuf[i] = (unsigned char)(bits >> (56 - 8 * i));
+	}
+	sha256Update(ctx, lenbuf, 8);
+	for (i = 0; i < 8; i++) {
+		digest[4*i] = (uint8)(ctx->h[i] >> 24);
+		digest[4*i+1] = (uint8)(ctx->h[i] >> 16);
+		digest[4*i+2] = (uint8)(ctx->h[i] >> 8);
+		digest[4*i+3] = (uint8)ctx->h[i];
+	}
+}
+
+static bool
+hasDigest(const uint8* digest)
+{
+	int i;
+
+	for (i = 0; i < DIGEST_SIZE; i++) {
+		if (digest[i] != 0) {
+			return (true);
+		}
+	}
+	return (false);
+}
+
+void
+verifyCacheDigest(const unsigned char* data, size_t len, uint8* digest)
+{
+	sha256Context ctx;
+
+	sha256Init(&ctx);
+	sha256Update(&ctx, data, len);
+	sha256Final(&ctx, digest);
+	/* all zero means none */
+	if (!hasDigest(digest)) {
+		digest[0] = 1;
+	}
+}
+
+/*
+ * Hash a class name to its bucket.
+ */
+static uint32
+nameBucket(const char* name, size_t len)
+{
+	uint32 h = FNV_BASIS;
+	size_t i;
+
+	for (i = 0; i < len; i++) {
+		h ^= (unsigned char)name[i];
+		h *= FNV_PRIME;
+	}
+	return (h & (nbuckets - 1));
+}
+
+/*
+ * Hash the digests of a class, its superclasses and all its interfaces,
+ * everything of a class verify3 may look at.  False if one of them has
+ * no digest, as for a class not read from a class file, or if the
+ * class is not prepared yet.
+ */
+static bool
+classDigest(Hjava_lang_Class* cls, uint8* digest)
+{
+	sha256Context ctx;
+	Hjava_lang_Class* c;
+	unsigned char sig;
+	int i;
+
+	while (CLASS_IS_ARRAY(cls)) {
+		cls = Kaffe_get_array_element_type(cls);
+	}
+	sha256Init(&ctx);
+	if (CLASS_IS_PRIMITIVE(cls)) {
+		sig = (unsigned char)CLASS_PRIM_SIG(cls);
+		sha256Update(&ctx, &sig, 1);
+		sha256Final(&ctx, digest);
+		return (true);
+	}
+	if (cls->state < CSTATE_PREPARED) {
+		return (false);
+	}
+
+	for (c = cls; c != NULL; c = c->superclass) {
+		if (!hasDigest(c->digest)) {
+			return (false);
+		}
+		sha256Update(&ctx, c->digest, DIGEST_SIZE);
+	}
+	for (i = 0; i < cls->total_interface_len; i++) {
+		c = cls->interfaces[i];
+		if (!hasDigest(c->digest)) {
+			return (false);
+		}
+		sha256Update(&ctx, c->digest, DIGEST_SIZE);
+	}
+	sha256Final(&ctx, digest);
+	return (true);
+}
+
+static void
+freeEntries(void)
+{
+	if (entries != NULL) {
+		KFREE(entries);
+		entries = NULL;
+	}
+	if (buckets != NULL) {
+		KFREE(buckets);
+		buckets = NULL;
+	}
+	nentries = 0;
+	nbuckets = 0;
+}
+
+/*
+ * Index the entries of the cache file.  Every length is checked against
+ * the file size, so a truncated file is rejected rather than misread.
+ */
+static const char*
+parseVerifyCache(const unsigned char* data, size_t size)
+{
+	vfyHeader hdr;
+	vfyEntry* e;
+	size_t pos;
+	uint32 len;
+	uint32 i;
+	uint32 j;
+
+	memcpy(&hdr, data, sizeof(hdr));
+	if (memcmp(hdr.magic, VFY_MAGIC, sizeof(hdr.magic)) != 0
+	    || hdr.version != VFY_VERSION) {
+		return ("not a verification cache of this VM");
+	}
+	if (hdr.count > (size - sizeof(hdr)) / ENTRY_SIZE) {
+		return ("the cache is truncated or corrupt");
+	}
+	if (hdr.count == 0) {
+		return (NULL);
+	}
+
+	for (nbuckets = 16; nbuckets < hdr.count; nbuckets <<= 1)
+		;
+	entries = KMALLOC(hdr.count * sizeof(vfyEntry));
+	buckets = KMALLOC(nbuckets * sizeof(vfyEntry*));
+	if (entries == NULL || buckets == NULL) {
+		return ("out of memory");
+	}
+
+	pos = sizeof(hdr);
+	for (i = 0; i < hdr.count; i++) {
+		e = &entries[i];
+		e->raw = data + pos;
+		if (size - pos < ENTRY_SIZE) {
+			return ("the cache is truncated or corrupt");
+		}
+		memcpy(e->key, data + pos, DIGEST_SIZE);
+		memcpy(&e->nameLen, data + pos + DIGEST_SIZE, 4);
+		memcpy(&e->ndeps, data + pos + DIGEST_SIZE + 4, 4);
+		pos += ENTRY_SIZE;
+		if (e->nameLen > size - pos) {
+			return ("the cache is truncated or corrupt");
+		}
+		e->name = (const char*)data + pos;
+		pos += e->nameLen;
+
+		e->deps = data + pos;
+		for (j = 0; j < e->ndeps; j++) {
+			if (size - pos < DEP_SIZE) {
+				return ("the cache is truncated or corrupt");
+			}
+			memcpy(&len, data + pos + DIGEST_SIZE, 4);
+			pos += DEP_SIZE;
+			if (len == 0 || len > size - pos) {
+				return ("the cache is truncated or corrupt");
+			}
+			pos += len;
+		}
+		e->rawLen = (size_t)(data + pos - e->raw);
+
+		e->replaced = false;
+		e->next = buckets[nameBucket(e->name, e->nameLen)];
+		buckets[nameBucket(e->name, e->nameLen)] = e;
+		nentries++;
+	}
+	if (pos != size) {
+		return ("the cache is truncated or corrupt");
+	}
+	return (NULL);
+}
+
+static void
+readVerifyCache(void)
+{
+	struct stat sbuf;
+	const char* why;
+	size_t size;
+	size_t pos;
+	ssize_t n;
+	int fd;
+	int rc;
+
+	rc = KOPEN(cacheFile, O_RDONLY|O_BINARY, 0, &fd);
+	if (rc != 0) {
+		/* the first run creates it */
+		return;
+	}
+	rc = KFSTAT(fd, &sbuf);
+	if (rc != 0) {
+		KCLOSE(fd);
+		why = SYS_ERROR(rc);
+		goto fail;
+	}
+	size = (size_t)sbuf.st_size;
+	if (size < sizeof(vfyHeader)) {
+		KCLOSE(fd);
+		why = "not a verification cache of this VM";
+		goto fail;
+	}
+
+	cacheData = KMALLOC(size);
+	if (cacheData == NULL) {
+		KCLOSE(fd);
+		why = "out of memory";
+		goto fail;
+	}
+	for (pos = 0; pos < size; pos += (size_t)n) {
+		rc = KREAD(fd, cacheData + pos, size - pos, &n);
+		if (rc != 0 || n <= 0) {
+			KCLOSE(fd);
+			why = rc != 0 ? SYS_ERROR(rc) : "short read";
+			goto fail;
+		}
+	}
+	KCLOSE(fd);
+
+	why = parseVerifyCache(cacheData, size);
+	if (why != NULL) {
+		goto fail;
+	}
+
+DBG(INIT,
+	dprintf("Read verification cache %s: %u classes\n",
+		cacheFile, (unsigned)nentries);				);
+	return;
+
+fail:
+	/* The cache is rewritten from this run's classes */
+	freeEntries();
+	if (cacheData != NULL) {
+		KFREE(cacheData);
+		cacheData = NULL;
+	}
+	if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+		dprintf("Not using verification cache %s: %s\n", cacheFile, why);
+	}
+}
+
+/*
+ * Write the entries read that were not replaced, then those recorded.
+ * The file is written under a temporary name and renamed, so that VMs
+ * starting meanwhile read either cache whole.  Called with recordLock
+ * held.
+ */
+static bool
+writeVerifyCache(const char* file)
+{
+	char tmp[MAXPATHLEN];
+	vfyHeader hdr;
+	vfyEntry* e;
+	uint32 i;
+	FILE* fp;
+	bool ok;
+
+	memset(&hdr, 0, sizeof(hdr));
+	memcpy(hdr.magic, VFY_MAGIC, sizeof(hdr.magic));
+	hdr.version = VFY_VERSION;
+	hdr.count = (uint32)nrecords;
+	for (i = 0; i < nentries; i++) {
+		if (!entries[i].replaced) {
+			hdr.count++;
+		}
+	}
+
+	snprintf(tmp, sizeof(tmp), "%s.tmp", file);
+	fp = fopen(tmp, "wb");
+	if (fp == NULL) {
+		return (false);
+	}
+	ok = fwrite(&hdr, sizeof(hdr), 1, fp) == 1;
+	for (i = 0; ok && i < nentries; i++) {
+		e = &entries[i];
+		if (!e->replaced) {
+			ok = fwrite(e->raw, 1, e->rawLen, fp) == e->rawLen;
+		}
+	}
+	for (e = records; ok && e != NULL; e = e->next) {
+		ok = fwrite(e->raw, 1, e->rawLen, fp) == e->rawLen;
+	}
+	ok = (fclose(fp) == 0) && ok;
+	if (ok && rename(tmp, file) != 0) {
+		ok = false;
+	}
+	if (!ok) {
+		remove(tmp);
+	}
+	return (ok);
+}
+
+static void
+writeVerifyCacheAtExit(void)
+{
+	lockStaticMutex(&recordLock);
+	if (nrecords > 0) {
+		if (!writeVerifyCache(cacheFile)) {
+			dprintf("Could not write verification cache %s\n",
+				cacheFile);
+		}
+		else if (Kaffe_JavaVMArgs.enableVerboseClassloading) {
+			dprintf("Added %d classes to verification cache %s\n",
+				nrecords, cacheFile);
+		}
+		nrecords = 0;
+	}
+	unlockStaticMutex(&recordLock);
+}
+
+void
+initVerifyCache(void)
+{
+	if (cacheFile == NULL) {
+		return;
+	}
+	initStaticLock(&recordLock);
+	readVerifyCache();
+	atexit(writeVerifyCacheAtExit);
+}
+
+/*
+ * Resolve a dependency the way verify3 did, from the class's loader.
+ */
+static Hjava_lang_Class*
+resolveDependency(Hjava_lang_Class* class, const char* name, uint32 len,
+		  errorInfo* einfo)
+{
+	Hjava_lang_Class* dep;
+	Utf8Const* utf8;
+
+	utf8 = utf8ConstNew(name, (int)len);
+	if (utf8 == NULL) {
+		postOutOfMemory(einfo);
+		return (NULL);
+	}
+	if (utf8->data[0] == '[') {
+		dep = getClassFromSignature(utf8->data, class->loader, einfo);
+	}
+	else {
+		dep = loadClass(utf8, class->loader, einfo);
+	}
+	utf8ConstRelease(utf8);
+	return (dep);
+}
+
+/*
+ * True if every dependency of the entry resolves to a class with the
+ * recorded digest.  This loads the dependencies not loaded yet, all of
+ * them on a hit, as verify3 would have.  They are only loaded, not
+ * initialised, and one that cannot be loaded makes a miss: verify3
+ * then reports the error, if it still needs the class.
+ */
+static bool
+checkDependencies(Hjava_lang_Class* class, const vfyEntry* e)
+{
+	const unsigned char* p = e->deps;
+	Hjava_lang_Class* dep;
+	uint8 digest[DIGEST_SIZE];
+	const unsigned char* recorded;
+	errorInfo info;
+	uint32 len;
+	uint32 j;
+
+	for (j = 0; j < e->ndeps; j++) {
+		recorded = p;
+		memcpy(&len, p + DIGEST_SIZE, 4);
+		p += DEP_SIZE;
+
+		info.type = 0;
+		dep = resolveDependency(class, (const char*)p, len, &info);
+		p += len;
+		if (dep == NULL) {
+			/* verify3 reports it */
+			discardErrorInfo(&info);
+			return (false);
+		}
+		if (!classDigest(dep, digest)
+		    || memcmp(digest, recorded, DIGEST_SIZE) != 0) {
+			return (false);
+		}
+	}
+	return (true);
+}
+
+bool
+checkVerifyCache(Hjava_lang_Class* class)
+{
+	uint8 key[DIGEST_SIZE];
+	const char* name;
+	vfyEntry* e;
+	size_t len;
+
+	if (cacheFile == NULL) {
+		return (false);
+	}
+
+	if (nbuckets != 0 && classDigest(class, key)) {
+		name = CLASS_CNAME(class);
+		len = strlen(name);
+		for (e = buckets[nameBucket(name, len)]; e != NULL; e = e->next) {
+			if (memcmp(e->key, key, DIGEST_SIZE) == 0
+			    && e->nameLen == len
+			    && memcmp(e->name, name, len) == 0
+			    && checkDependencies(class, e)) {
+				hitCounter(&cacheHits, "verifycache-hits");
+				return (true);
+			}
+		}
+	}
+	hitCounter(&cacheMisses, "verifycache-misses");
+	return (false);
+}
+
+VerifyDeps*
+newVerifyDeps(Hjava_lang_Class* class)
+{
+	VerifyDeps* deps;
+
+	if (cacheFile == NULL) {
+		return (NULL);
+	}
+	deps = KMALLOC(sizeof(VerifyDeps));
+	if (deps != NULL) {
+		deps->class = class;
+	}
+	return (deps);
+}
+
+void
+addVerifyDependency(VerifyDeps* deps, Hjava_lang_Class* cls)
+{
+	Hjava_lang_Class** classes;
+	int i;
+
+	if (deps == NULL || cls == NULL || cls == deps->class
+	    || deps->incomplete) {
+		return;
+	}
+	for (i = 0; i < deps->count; i++) {
+		if (deps->classes[i] == cls) {
+			return;
+		}
+	}
+	if (deps->count == deps->size) {
+		deps->size = deps->size > 0 ? deps->size * 2 : 16;
+		classes = KREALLOC(deps->classes,
+				   deps->size * sizeof(Hjava_lang_Class*));
+		if (classes == NULL) {
+			deps->incomplete = true;
+			return;
+		}
+		deps->classes = classes;
+	}
+	deps->classes[deps->count++] = cls;
+}
+
+/*
+ * Add the classes collected for one method of a class to those of the
+ * whole class.
+ */
+void
+mergeVerifyDeps(VerifyDeps* into, VerifyDeps* from)
+{
+	int i;
+
+	if (into == NULL || from == NULL) {
+		return;
+	}
+	if (from->incomplete) {
+		into->incomplete = true;
+		return;
+	}
+	for (i = 0; i < from->count; i++) {
+		addVerifyDependency(into, from->classes[i]);
+	}
+}
+
+void
+freeVerifyDeps(VerifyDeps* deps)
+{
+	if (deps == NULL) {
+		return;
+	}
+	if (deps->classes != NULL) {
+		KFREE(deps->classes);
+	}
+	KFREE(deps);
+}
+
+void
+recordVerifyCache(Hjava_lang_Class* class, VerifyDeps* deps)
+{
+	uint8 key[DIGEST_SIZE];
+	const char* name;
+	unsigned char* p;
+	uint8* digests;
+	vfyEntry* rec;
+	vfyEntry** prev;
+	vfyEntry* e;
+	uint32 nameLen;
+	uint32 len;
+	size_t size;
+	int i;
+
+	if (deps == NULL || deps->incomplete) {
+		return;
+	}
+	if (!classDigest(class, key)) {
+		return;
+	}
+
+	name = CLASS_CNAME(class);
+	nameLen = (uint32)strlen(name);
+	size = ENTRY_SIZE + nameLen;
+	digests = KMALLOC((deps->count + 1) * DIGEST_SIZE);
+	if (digests == NULL) {
+		return;
+	}
+	for (i = 0; i < deps->count; i++) {
+		if (!classDigest(deps->classes[i], digests + i * DIGEST_SIZE)) {
+			KFREE(digests);
+			return;
+		}
+		size += DEP_SIZE + strlen(CLASS_CNAME(deps->classes[i]));
+	}
+
+	rec = KMALLOC(sizeof(vfyEntry) + size);
+	if (rec == NULL) {
+		KFREE(digests);
+		return;
+	}
+	p = (unsigned char*)(rec + 1);
+	rec->raw = p;
+	rec->rawLen = size;
+	memcpy(rec->key, key, DIGEST_SIZE);
+	rec->name = (const char*)p + ENTRY_SIZE;
+	rec->nameLen = nameLen;
+	rec->ndeps = (uint32)deps->count;
+	memcpy(p, key, DIGEST_SIZE);
+	memcpy(p + DIGEST_SIZE, &nameLen, 4);
+	memcpy(p + DIGEST_SIZE + 4, &rec->ndeps, 4);
+	memcpy(p + ENTRY_SIZE, name, nameLen);
+	p += ENTRY_SIZE + nameLen;
+	for (i = 0; i < deps->count; i++) {
+		len = (uint32)strlen(CLASS_CNAME(deps->classes[i]));
+		memcpy(p, digests + i * DIGEST_SIZE, DIGEST_SIZE);
+		memcpy(p + DIGEST_SIZE, &len, 4);
+		memcpy(p + DEP_SIZE, CLASS_CNAME(deps->classes[i]), len);
+		p += DEP_SIZE + len;
+	}
+	KFREE(digests);
+
+	lockStaticMutex(&recordLock);
+	/*
+	 * Every older entry of the name is outdated, whatever its key:
+	 * otherwise an entry would be kept for every revision of a class.
+	 */
+	if (nbuckets != 0) {
+		for (e = buckets[nameBucket(name, nameLen)]; e != NULL; e = e->next) {
+			if (e->nameLen == nameLen
+			    && memcmp(e->name, name, nameLen) == 0) {
+				e->replaced = true;
+			}
+		}
+	}
+	for (prev = &records; *prev != NULL; ) {
+		e = *prev;
+		if (e->nameLen == nameLen && memcmp(e->name, name, nameLen) == 0) {
+			*prev = e->next;
+			KFREE(e);
+			nrecords--;
+		}
+		else {
+			prev = &e->next;
+		}
+	}
+	rec->next = records;
+	records = rec;
+	nrecords++;
+	unlockStaticMutex(&recordLock);
+}
@@ -0,0 +1,64 @@
+/*
+ * verify-cache.h
+ *
+ * Copyright (c) 2026
+ *   Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ *
+ * Interface to the on-disk cache of the classes that passed verify3.
+ */
+
+#if !defined(VERIFY_CACHE_H)
+#define VERIFY_CACHE_H
+
+#include "gtypes.h"
+
+struct VerifyDeps;
+
+/*
+ * Use the verification cache in the given file.  Must be called before
+ * the VM is initialised, so that every class read gets a digest.
+ */
+extern void KaffeVM_setVerifyCache(const char* file);
+
+/*
+ * Read the cache file and arrange for it to be written at exit.
+ * Called by initBaseClasses.
+ */
+extern void initVerifyCache(void);
+
+/*
+ * True if -Xverifycache was given.
+ */
+extern bool isVerifyCacheEnabled(void);
+
+/*
+ * The SHA-256 digest of a class file, kept in the class for the cache.
+ */
+extern void verifyCacheDigest(const unsigned char* data, size_t len,
+			      uint8* digest);
+
+/*
+ * True if the class, its supertypes and every class its verification
+ * depended on are unchanged since it last passed verify3.  Loads the
+ * classes it depended on if they are not loaded yet.
+ */
+extern bool checkVerifyCache(Hjava_lang_Class* class);
+
+/*
+ * Start collecting the classes verify3 resolves for a class.  Returns
+ * NULL when the cache is off; the other calls accept NULL.
+ */
+extern struct VerifyDeps* newVerifyDeps(Hjava_lang_Class* class);
+extern void addVerifyDependency(struct VerifyDeps* deps, Hjava_lang_Class* class);
+extern void mergeVerifyDeps(struct VerifyDeps* into, struct VerifyDeps* from);
+extern void freeVerifyDeps(struct VerifyDeps* deps);
+
+/*
+ * Record that the class passed verify3, depending on deps.
+ */
+extern void recordVerifyCache(Hjava_lang_Class* class, struct VerifyDeps* deps);
+
+#endif /* !defined(VERIFY_CACHE_H) */
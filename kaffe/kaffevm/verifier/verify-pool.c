@@ -0,0 +1,198 @@
+/*
+ * verify-pool.c
+ *
+ * Copyright (c) 2026
+ *   Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ *
+ * Threads that verify the methods of a class in parallel.
+ *
+ * The pool runs one class at a time: the thread linking it hands out
+ * the methods as tasks and works on them itself until all are done.
+ * A second class verified meanwhile by another thread is verified on
+ * that thread alone, so that no thread ever waits for the pool while
+ * holding the lock of a class a worker could need.
+ *
+ * A task that throws, say because it ran out of memory, is counted as
+ * done all the same: the thread linking the class waits for every task
+ * and must not wait for one that is never finished.  The task has to
+ * leave a mark so that its caller can redo it.
+ */
+
+#include "config.h"
+#include "debug.h"
+#include "config-std.h"
+#include "gtypes.h"
+#include "locks.h"
+#include "thread.h"
+#include "errors.h"
+#include "exception.h"
+#include "stats.h"
+#include "jni_i.h"
+
+#include "verify-pool.h"
+
+#define	VERIFY_STACKSIZE	(128 * 1024)
+
+static int			verifyThreads;
+static iStaticLock		poolLock;
+static bool			poolStarting;
+static int			poolWorkers;
+
+/* the tasks being run, guarded by poolLock */
+static verifyTask		taskFunc;
+static void*			taskArg;
+static int			taskCount;
+static int			taskNext;
+static int			taskDone;
+static bool			poolBusy;
+
+static counter			poolClasses;
+
+void
+KaffeVM_setVerifyThreads(int threads)
+{
+	verifyThreads = threads;
+}
+
+void
+initVerifyPool(void)
+{
+	initStaticLock(&poolLock);
+}
+
+bool
+isVerifyPoolEnabled(void)
+{
+	return (verifyThreads > 0);
+}
+
+/*
+ * Run one task, catching what it throws.
+ */
+static void
+runTask(int task)
+{
+	BEGIN_EXCEPTION_HANDLING_VOID();
+
+	taskFunc(taskArg, task);
+
+	END_EXCEPTION_HANDLING();
+}
+
+/*
+ * Run tasks until none is left to hand out.  Called, and returns, with
+ * poolLock held.
+ */
+static void
+runTasks(void)
+{
+	int task;
+
+	while (taskNext < taskCount) {
+		task = taskNext++;
+		unlockStaticMutex(&poolLock);
+		runTask(task);
+		if (THREAD_DATA()->exceptObj != NULL) {
+			DBG(VERIFY3, dprintf("verify task %d threw, left to the caller\n", task); );
+			THREAD_DATA()->exceptObj = NULL;
+		}
+		lockStaticMutex(&poolLock);
+		taskDone++;
+		if (taskDone == taskCount) {
+			broadcastStaticCond(&poolLock);
+		}
+	}
+}
+
+static void NONRETURNING
+verifyWorker(void* arg UNUSED)
+{
+	lockStaticMutex(&poolLock);
+	for (;;) {
+		while (taskNext >= taskCount) {
+			waitStaticCond(&poolLock, (jlong)0);
+		}
+		runTasks();
+	}
+}
+
+/*
+ * Start the workers, the first time a class is verified on the pool.
+ * Returns false while another thread is starting them, or if none
+ * could be started.
+ */
+static bool
+startWorkers(void)
+{
+	errorInfo info;
+	int started;
+	int i;
+
+	lockStaticMutex(&poolLock);
+	if (poolStarting) {
+		unlockStaticMutex(&poolLock);
+		return (poolWorkers > 0);
+	}
+	poolStarting = true;
+	unlockStaticMutex(&poolLock);
+
+	/* not under poolLock: starting a thread runs Java code */
+	started = 0;
+	for (i = 0; i < verifyThreads; i++) {
+		if (createDaemon(&verifyWorker, "verifier", NULL,
+				 java_lang_Thread_NORM_PRIORITY,
+				 VERIFY_STACKSIZE, &info) == NULL) {
+			discardErrorInfo(&info);
+			break;
+		}
+		started++;
+	}
+
+	lockStaticMutex(&poolLock);
+	poolWorkers = started;
+	unlockStaticMutex(&poolLock);
+	DBG(VERIFY3, dprintf("started %d of %d verifier threads\n", started, verifyThreads); );
+	return (started > 0);
+}
+
+bool
+runVerifyTasks(verifyTask func, void* arg, int count)
+{
+	if (verifyThreads <= 0 || count <= 0) {
+		return false;
+	}
+	if (poolWorkers == 0 && !startWorkers()) {
+		return false;
+	}
+
+	lockStaticMutex(&poolLock);
+	if (poolBusy) {
+		unlockStaticMutex(&poolLock);
+		return false;
+	}
+	poolBusy = true;
+	hitCounter(&poolClasses, "verifypool-classes");
+
+	taskFunc = func;
+	taskArg = arg;
+	taskCount = count;
+	taskNext = 0;
+	taskDone = 0;
+	broadcastStaticCond(&poolLock);
+
+	runTasks();
+	while (taskDone < taskCount) {
+		waitStaticCond(&poolLock, (jlong)0);
+	}
+
+	taskFunc = NULL;
+	taskArg = NULL;
+	taskCount = 0;
+	taskNext = 0;
+	poolBusy = false;
+	unlockStaticMutex(&poolLock);
+	return true;
+}
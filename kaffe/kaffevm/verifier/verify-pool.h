@@ -0,0 +1,47 @@
+/*
+ * verify-pool.h
+ *
+ * Copyright (c) 2026
+ *   Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ *
+ * Interface to the threads that verify the methods of a class in parallel.
+ */
+
+#if !defined(VERIFY_POOL_H)
+#define VERIFY_POOL_H
+
+#include "gtypes.h"
+
+typedef void (*verifyTask)(void* arg, int task);
+
+/*
+ * Verify the methods of large classes on the given number of threads
+ * besides the one linking the class.  Must be called before the VM is
+ * initialised.  Called again later, it turns the pool off (0) or on;
+ * threads already started are kept.
+ */
+extern void KaffeVM_setVerifyThreads(int threads);
+
+/*
+ * Set up the pool.  The threads are only started when the first class
+ * is verified on them.  Called by initBaseClasses.
+ */
+extern void initVerifyPool(void);
+
+/*
+ * True if -Xverifythreads asked for threads.
+ */
+extern bool isVerifyPoolEnabled(void);
+
+/*
+ * Run func(arg, 0) .. func(arg, count - 1) on the pool and the calling
+ * thread, and return once all of them returned.  The tasks run in no
+ * particular order and must not load classes.  Returns false, without
+ * running any task, if the pool is off or busy with another class.
+ */
+extern bool runVerifyTasks(verifyTask func, void* arg, int count);
+
+#endif /* !defined(VERIFY_POOL_H) */
@@ -22,6 +22,7 @@
 #include "verify-debug.h"
 #include "verify-type.h"
 #include "verify-uninit.h"
+#include "verify-cache.h"
 
 /*
  * types for type checking (pass 3b)
@@ -262,6 +263,107 @@ initVerifierPrimTypes(void)
 }
 
 
+/**
+ * Resolve the shared types that typecheck() resolves in place, so that
+ * the threads of the verify pool only ever read them.  Returns false if
+ * one of them cannot be loaded.
+ */
+bool
+resolveVerifierTypes(Hjava_lang_Class* class, errorInfo* einfo)
+{
+	Type* types[] = {
+		TOBJ, TOBJARR, TSTRING,
+		TCHARARR, TBYTEARR, TBOOLARR, TSHORTARR,
+		TINTARR, TLONGARR, TFLOATARR, TDOUBLEARR
+	};
+	Verifier v;
+	unsigned int i;
+	
+	memset(&v, 0, sizeof(v));
+	v.einfo = einfo;
+	v.class = class;
+	for (i = 0; i < sizeof(types) / sizeof(types[0]); i++) {
+		if (types[i]->tinfo != TINFO_CLASS) {
+			resolveType(&v, types[i]);
+		}
+		if (types[i]->data.class == NULL) {
+			return false;
+		}
+	}
+	return true;
+}
+
+/**
+ * Find the class of a signature among those the loader of the class
+ * being verified has linked, without loading anything.
+ */
+static Hjava_lang_Class*
+findLinkedClass(Verifier* v, const char* sig)
+{
+	Hjava_lang_Class* class;
+	classEntry* centry;
+	Utf8Const* name;
+	const char* end;
+	int dims;
+	
+	for (dims = 0; *sig == '['; sig++) {
+		dims++;
+	}
+	if (*sig == 'L') {
+		end = strchr(sig, ';');
+		if (end == NULL || end[1] != '\0') {
+			return NULL;
+		}
+		name = utf8ConstNew(sig + 1, end - sig - 1);
+		if (name == NULL) {
+			return NULL;
+		}
+		centry = lookupClassEntryInternal(name, v->class->loader);
+		utf8ConstRelease(name);
+		if (centry == NULL || centry->state != NMS_DONE) {
+			return NULL;
+		}
+		class = centry->data.cl;
+		if (class != v->class && class->state < CSTATE_LINKED) {
+			return NULL;
+		}
+	}
+	else if (sig[0] != '\0' && sig[1] == '\0') {
+		class = getPrimitiveClassFromSignature(*sig);
+	}
+	else {
+		return NULL;
+	}
+	
+	for (; dims > 0 && class != NULL; dims--) {
+		class = lookupArray(class, v->einfo);
+	}
+	return class;
+}
+
+/**
+ * Get the class of a signature from the loader of the class being
+ * verified.  The threads of the verify pool do not load classes: when
+ * one is not linked yet the method is verified again by the thread
+ * linking the class.
+ */
+static Hjava_lang_Class*
+getVerifierClass(Verifier* v, const char* sig)
+{
+	Hjava_lang_Class* class;
+	
+	if (v->deferred == NULL) {
+		return getClassFromSignature(sig, v->class->loader, v->einfo);
+	}
+	
+	class = findLinkedClass(v, sig);
+	if (class == NULL) {
+		DBG(VERIFY3, dprintf("%s    %s is not linked, deferring method\n", indent, sig); );
+		*v->deferred = true;
+	}
+	return class;
+}
+
 /**
  *  If the given type is a simply a signature or class name, we
  *  resolve it to be a pointer to an actual Class object in memory.
@@ -273,7 +375,8 @@ resolveType(Verifier* v, Type *t)
 	    *t->data.name == '[') {
 		
 		t->tinfo = TINFO_CLASS;
-		t->data.class = getClassFromSignature(t->data.sig, v->class->loader, v->einfo);	    
+		t->data.class = getVerifierClass(v, t->data.sig);
+		addVerifyDependency(v->deps, t->data.class);
 	}
 	else if (t->tinfo & TINFO_NAME) {
 		char* tmp = NULL;
@@ -285,7 +388,8 @@ resolveType(Verifier* v, Type *t)
 		
 		DBG(VERIFY3, dprintf("%s    converted name to sig \"%s\" and about to load...\n", indent, sig); );
 		t->tinfo = TINFO_CLASS;
-		t->data.class = getClassFromSignature(sig, v->class->loader, v->einfo);
+		t->data.class = getVerifierClass(v, sig);
+		addVerifyDependency(v->deps, t->data.class);
 		
 		if (tmp) {
 			gc_free(tmp);
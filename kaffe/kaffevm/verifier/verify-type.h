@@ -117,6 +117,8 @@ extern Type* getTDOUBLEARR(void);
 extern Type* getTSTRING(void);
 
 extern void initVerifierPrimTypes(void);
+extern bool resolveVerifierTypes(Hjava_lang_Class* class,
+				 errorInfo* einfo);
 
 extern bool isNull(const Type * t);
 extern bool isWide(const Type * t);
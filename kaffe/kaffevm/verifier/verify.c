@@ -36,7 +36,9 @@
 #include "exception.h"
 #include "errors.h"
 #include "itypes.h"
+#include "locks.h"
 #include "lookup.h"
+#include "stats.h"
 #include "utf8const.h"
 
 #include "verify.h"
@@ -46,10 +48,21 @@
 #include "verify-type.h"
 #include "verify-uninit.h"
 #include "verify-errors.h"
+#include "verify-cache.h"
+#include "verify-pool.h"
 
 /*********************************************************************************
  * Type Descriptor Parsing Methods
  *********************************************************************************/
+static bool lazyVerify;
+static counter lazyMethods;
+
+void
+KaffeVM_setLazyVerify(bool lazy)
+{
+	lazyVerify = lazy;
+}
+
 /*
  * Returns whether the given class is "trusted" (i.e. does not require verification).
  */
@@ -231,7 +244,13 @@ const uint8 insnLen[256] = {
  * Methods for Pass 3 Verification
  ***********************************************************************************/
 static bool               verifyMethod(errorInfo* einfo,
-				       Method* method);
+				       Method* method,
+				       struct VerifyDeps* deps,
+				       bool* deferred);
+static bool               verifyMethodsOnPool(Hjava_lang_Class* class,
+					      errorInfo* einfo,
+					      struct VerifyDeps* deps,
+					      bool* success);
 static bool               loadInitialArgs(Verifier* v);
 
 
@@ -251,6 +270,7 @@ verify3(Hjava_lang_Class* class, errorInfo *einfo)
 	uint32 n;
 	bool success = true;
 	Method* method;
+	struct VerifyDeps* deps;
 	
 	/* see if verification is turned on, and whether the class we're about to verify requires verification
 	 *
@@ -260,6 +280,13 @@ verify3(Hjava_lang_Class* class, errorInfo *einfo)
 		return true;
 	}
 	
+	/* skip classes that passed in an earlier run and did not change since */
+	if (checkVerifyCache(class)) {
+		DBG(VERIFY3, dprintf("\nPass 3 of Class \"%s\" found in the verification cache\n", CLASS_CNAME(class)); );
+		return true;
+	}
+	deps = newVerifyDeps(class);
+	
 	
 	/* make sure it's initialized...we had some problems because of this */
 	einfo->type = 0;
@@ -283,6 +310,10 @@ verify3(Hjava_lang_Class* class, errorInfo *einfo)
 	});
 	
 	
+	if (!lazyVerify && verifyMethodsOnPool(class, einfo, deps, &success)) {
+		goto done;
+	}
+	
 	for (n = CLASS_NMETHODS(class), method = Kaffe_get_class_methods(class);
 	     n > 0;
 	     --n, ++method) {
@@ -302,7 +333,11 @@ verify3(Hjava_lang_Class* class, errorInfo *einfo)
 				success = false;
 				goto done;
 			}
-			else if (!verifyMethod(einfo, method)) {
+			else if (lazyVerify) {
+				/* see verifyMethodLazily */
+				method->kFlags |= KFLAG_VERIFY_PENDING;
+			}
+			else if (!verifyMethod(einfo, method, deps, NULL)) {
 				if (einfo->type == 0) {
 					postExceptionMessage(einfo, JAVA_LANG(InternalError),
 							     "failure to verify method %s.%s ... reason unspecified",
@@ -316,10 +351,210 @@ verify3(Hjava_lang_Class* class, errorInfo *einfo)
 	
 	
  done:
+	/* a class verified lazily has not passed verify3 yet */
+	if (success && !lazyVerify) {
+		recordVerifyCache(class, deps);
+	}
+	freeVerifyDeps(deps);
+	
 	DBG(VERIFY3, dprintf("\nDone Pass 3 Verifying Class \"%s\"\n", CLASS_CNAME(class)); );
 	return success;
 }
 
+
+/* classes with less bytecode than this are verified on one thread */
+#define VERIFY_POOL_MIN_CODE	4096
+
+/*
+ * A method verified on the verify pool.
+ */
+typedef struct _methodTask {
+	Method*			method;
+	errorInfo		einfo;
+	struct VerifyDeps*	deps;
+	bool			success;
+	bool			deferred;
+} methodTask;
+
+static void
+verifyMethodTask(void* arg, int task)
+{
+	methodTask* t = &((methodTask*)arg)[task];
+	bool deferred;
+	
+	/* verify3 reports a bad signature when it gets to the method */
+	if (!parseMethodTypeDescriptor(METHOD_SIGD(t->method))) {
+		return;
+	}
+	
+	/* stays set if verifyMethod throws, so the linker redoes it */
+	t->deferred = true;
+	deferred = false;
+	t->success = verifyMethod(&t->einfo, t->method, t->deps, &deferred);
+	t->deferred = deferred;
+}
+
+/*
+ * Verify the methods of a large class on the verify pool.  The pool
+ * does not load classes, so the methods that needed one not linked yet
+ * are verified again on this thread, as are those whose verification
+ * threw.  The first method, in class order,
+ * that fails is reported, as when they are verified one by one.
+ *
+ * Returns false if the class is not verified on the pool.
+ */
+static bool
+verifyMethodsOnPool(Hjava_lang_Class* class, errorInfo* einfo,
+		    struct VerifyDeps* deps, bool* success)
+{
+	methodTask* tasks;
+	Method* method;
+	uint32 codelen;
+	int count;
+	int n;
+	int i;
+	
+	if (!isVerifyPoolEnabled() || class->loader == NULL) {
+		return false;
+	}
+	
+	count = 0;
+	codelen = 0;
+	for (n = CLASS_NMETHODS(class), method = Kaffe_get_class_methods(class);
+	     n > 0;
+	     --n, ++method) {
+		if (!(METHOD_IS_ABSTRACT(method) || methodIsNative(method))) {
+			count++;
+			codelen += METHOD_BYTECODE_LEN(method);
+		}
+	}
+	if (count < 2 || codelen < VERIFY_POOL_MIN_CODE) {
+		return false;
+	}
+	
+	/* the serial verifier reports why these cannot be resolved */
+	if (!resolveVerifierTypes(class, einfo)) {
+		discardErrorInfo(einfo);
+		einfo->type = 0;
+		return false;
+	}
+	
+	tasks = KMALLOC(count * sizeof(methodTask));
+	if (tasks == NULL) {
+		return false;
+	}
+	i = 0;
+	for (n = CLASS_NMETHODS(class), method = Kaffe_get_class_methods(class);
+	     n > 0;
+	     --n, ++method) {
+		if (!(METHOD_IS_ABSTRACT(method) || methodIsNative(method))) {
+			tasks[i].method = method;
+			tasks[i].deps = newVerifyDeps(class);
+			i++;
+		}
+	}
+	for (i = 0; i < count; i++) {
+		if (isVerifyCacheEnabled() && tasks[i].deps == NULL) {
+			break;
+		}
+	}
+	
+	DBG(VERIFY3, dprintf("  verifying %d methods of %s on the verify pool\n", count, CLASS_CNAME(class)); );
+	
+	if (i < count || !runVerifyTasks(verifyMethodTask, tasks, count)) {
+		for (i = 0; i < count; i++) {
+			freeVerifyDeps(tasks[i].deps);
+		}
+		KFREE(tasks);
+		return false;
+	}
+	
+	*success = true;
+	for (i = 0; i < count && *success; i++) {
+		method = tasks[i].method;
+		
+		if (!parseMethodTypeDescriptor(METHOD_SIGD(method))) {
+			postExceptionMessage(einfo, JAVA_LANG(ClassFormatError),
+					     "Method %s.%s has invalid signature, %s",
+					     CLASS_CNAME(class), METHOD_NAMED(method), METHOD_SIGD(method));
+			*success = false;
+		}
+		else if (tasks[i].deferred) {
+			DBG(VERIFY3, dprintf("  verifying deferred method %s\n", METHOD_NAMED(method)); );
+			*success = verifyMethod(einfo, method, deps, NULL);
+		}
+		else if (tasks[i].success) {
+			mergeVerifyDeps(deps, tasks[i].deps);
+		}
+		else {
+			*einfo = tasks[i].einfo;
+			tasks[i].einfo.type = 0;
+			*success = false;
+		}
+		
+		if (!*success && einfo->type == 0) {
+			postExceptionMessage(einfo, JAVA_LANG(InternalError),
+					     "failure to verify method %s.%s ... reason unspecified",
+					     CLASS_CNAME(class), METHOD_NAMED(method));
+		}
+	}
+	
+	for (i = 0; i < count; i++) {
+		if (tasks[i].einfo.type != 0) {
+			discardErrorInfo(&tasks[i].einfo);
+		}
+		freeVerifyDeps(tasks[i].deps);
+	}
+	KFREE(tasks);
+	return true;
+}
+
+/*
+ * Run pass 3 on a method of a class linked with lazy verification, the
+ * first time it is invoked.  Takes the class lock, as verify3 runs with
+ * it held when linking.  A method that fails with a VerifyError is left
+ * pending and marked as failed, so that every later invocation throws
+ * a VerifyError again without redoing the analysis; the message of the
+ * first one is not kept.  Other errors, such as running out of memory,
+ * may not happen again and leave the method to be verified anew.
+ */
+bool
+verifyMethodLazily(Method* method, errorInfo* einfo)
+{
+	Hjava_lang_Class* class = method->class;
+	bool success = true;
+	
+	lockClass(class);
+	if (METHOD_VERIFY_FAILED(method)) {
+		postExceptionMessage(einfo, JAVA_LANG(VerifyError),
+				     "Method %s.%s%s failed to verify",
+				     CLASS_CNAME(class), METHOD_NAMED(method), METHOD_SIGD(method));
+		success = false;
+	}
+	else if (METHOD_VERIFY_PENDING(method)) {
+		DBG(VERIFY3, dprintf("\nPass 3 Verifying Method %s.%s%s lazily\n",
+				     CLASS_CNAME(class), METHOD_NAMED(method), METHOD_SIGD(method)); );
+		hitCounter(&lazyMethods, "verifylazy-methods");
+		
+		einfo->type = 0;
+		success = verifyMethod(einfo, method, NULL, NULL);
+		if (success) {
+			method->kFlags &= ~KFLAG_VERIFY_PENDING;
+		}
+		else if (einfo->type == 0) {
+			postExceptionMessage(einfo, JAVA_LANG(InternalError),
+					     "failure to verify method %s.%s ... reason unspecified",
+					     CLASS_CNAME(class), METHOD_NAMED(method));
+		}
+		else if ((einfo->type & KERR_CODE_MASK) == KERR_EXCEPTION
+			 && strcmp(einfo->classname, JAVA_LANG(VerifyError)) == 0) {
+			method->kFlags |= KFLAG_VERIFY_FAILED;
+		}
+	}
+	unlockClass(class);
+	return success;
+}
+
 	
 /**************************************************************************************************
  * Memory Management Macros
@@ -365,10 +600,13 @@ failInVerifyMethod(Verifier* v)
  * Controls the verification of a single method.  It allocates most of the memory needed for
  * verification (when encountering JSRs, more memory will need to be allocated later),
  * loads the initial arguments, calls pass3a, then calls pass3b and cleans up.
+ *
+ * deferred is only given on the verify pool, see verifyMethodsOnPool().
  */
 static
 bool
-verifyMethod(errorInfo *einfo, Method* method)
+verifyMethod(errorInfo *einfo, Method* method, struct VerifyDeps* deps,
+	     bool* deferred)
 {
         /* to save some typing, etc. */
 	int codelen  = METHOD_BYTECODE_LEN(method);
@@ -384,6 +622,8 @@ verifyMethod(errorInfo *einfo, Method* method)
 	v.uninits = NULL;
 	v.supertypes = NULL;
 	v.uninits = NULL;
+	v.deps = deps;
+	v.deferred = deferred;
 	
 	
 	/**************************************************************************************************
@@ -90,6 +90,13 @@ typedef struct Verifier
 	struct SigStack*          sigs;
 	struct UninitializedType* uninits;
 	struct SupertypeSet*      supertypes;
+	
+	/* classes resolved, for the verification cache */
+	struct VerifyDeps*        deps;
+	
+	/* non-NULL on the threads of the verify pool, which must not load
+	 * classes: set when a class that is not linked yet was needed */
+	bool*                     deferred;
 } Verifier;
 
 /* frees the data allocated and stored in a Verifier */
@@ -100,6 +107,15 @@ extern void freeVerifierData(Verifier* v);
  * Methods used in both pass 2 and pass 3
  *****************************************************/
 extern bool isTrustedClass(Hjava_lang_Class* class);
+
+/*
+ * With lazy verification, verify3 leaves the data-flow analysis of each
+ * method to verifyMethodLazily, which the engines call through
+ * analyzeMethod when the method is first invoked.  Must be set before
+ * the VM is initialised.
+ */
+extern void KaffeVM_setLazyVerify(bool lazy);
+extern bool verifyMethodLazily(Method* method, errorInfo* einfo);
 extern const char* parseBaseTypeDescriptor(const char* sig);
 extern const char* parseObjectTypeDescriptor(const char* sig);
 extern const char* parseArrayTypeDescriptor(const char* sig);
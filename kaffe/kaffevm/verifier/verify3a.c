@@ -34,6 +34,7 @@
 #include "verify-block.h"
 #include "verify-debug.h"
 #include "verify-errors.h"
+#include "verify-cache.h"
 
 /*
  * Helper function for error reporting in BRANCH_IN_BOUNDS macro in verifyMethod3a.
@@ -740,6 +741,7 @@ verifyMethod3a(Verifier* v)
 					verifyError(v, "unresolvable catch type");
 					return;
 				}
+				addVerifyDependency(v->deps, entry->catch_type);
 				if (!instanceof(javaLangThrowable, entry->catch_type)) {
 					verifyError(v, "Exception to be handled by exception handler is not a subclass of Java/Lang/Throwable");
 					return;
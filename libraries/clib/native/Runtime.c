@@ -18,11 +18,14 @@
 #include "defs.h"
 #include "java_lang_String.h"
 #include "java_lang_VMRuntime.h"
+#include "org_kaffe_util_VMStats.h"
 #include "external.h"
 #include "gc.h"
 #include "support.h"
 #include "stringSupport.h"
 #include "external.h"
+#include "stackTrace.h"
+#include "stats.h"
 
 #ifndef LIBRARYPREFIX
 #define	LIBRARYPREFIX	"lib"
@@ -167,3 +170,119 @@ java_lang_VMRuntime_getLibSuffix(void)
 	return checkPtr(stringC2Java(LIBRARYSUFFIX));
 }
 
+/*
+ * Write the sampling profiler's stacks to a file.
+ */
+jboolean
+java_lang_VMRuntime_dumpSamples(struct Hjava_lang_String *jfile)
+{
+	char file[MAXPATHLEN];
+
+	if (jfile == NULL) {
+		return KaffeVM_dumpSamples(NULL);
+	}
+	stringJava2CBuf(jfile, file, sizeof(file));
+	return KaffeVM_dumpSamples(file);
+}
+
+/*
+ * Write the allocation profiler's sites to a file.
+ */
+jboolean
+java_lang_VMRuntime_dumpAllocationSites(struct Hjava_lang_String *jfile)
+{
+	char file[MAXPATHLEN];
+
+	if (jfile == NULL) {
+		return KaffeVM_dumpAllocationSites(NULL);
+	}
+	stringJava2CBuf(jfile, file, sizeof(file));
+	return KaffeVM_dumpAllocationSites(file);
+}
+
+/*
+ * org.kaffe.util.VMStats: live access to the counters in stats.c.
+ */
+jboolean
+org_kaffe_util_VMStats_isEnabled(void)
+{
+#if defined(KAFFE_STATS)
+	return true;
+#else
+	return false;
+#endif
+}
+
+jlong
+org_kaffe_util_VMStats_getCalls(struct Hjava_lang_String *jname)
+{
+#if defined(KAFFE_STATS)
+	char name[256];
+	jlong calls;
+	jlong value;
+
+	stringJava2CBuf(jname, name, sizeof(name));
+	if (statsLookup(name, &calls, &value)) {
+		return calls;
+	}
+#endif
+	return -1;
+}
+
+jlong
+org_kaffe_util_VMStats_getValue(struct Hjava_lang_String *jname)
+{
+#if defined(KAFFE_STATS)
+	char name[256];
+	jlong calls;
+	jlong value;
+
+	stringJava2CBuf(jname, name, sizeof(name));
+	if (statsLookup(name, &calls, &value)) {
+		return value;
+	}
+#endif
+	return -1;
+}
+
+struct Hjava_lang_String *
+org_kaffe_util_VMStats_snapshot0(jint format)
+{
+#if defined(KAFFE_STATS)
+	struct Hjava_lang_String *str;
+	char *buf;
+	int len;
+	int need;
+
+	len = 4096;
+	for (;;) {
+		buf = checkPtr(KMALLOC((size_t)len));
+		need = statsFormat(buf, len, format);
+		if (need < len) {
+			break;
+		}
+		KFREE(buf);
+		len = need + 1024;
+	}
+	str = stringC2Java(buf);
+	KFREE(buf);
+	checkPtr(str);
+	return str;
+#else
+	return NULL;
+#endif
+}
+
+jboolean
+org_kaffe_util_VMStats_dump0(struct Hjava_lang_String *jfile, jint format)
+{
+#if defined(KAFFE_STATS)
+	char file[MAXPATHLEN];
+
+	stringJava2CBuf(jfile, file, sizeof(file));
+	return statsDump(file, format);
+#else
+	return false;
+#endif
+}
+
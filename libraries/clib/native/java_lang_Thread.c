@@ -81,3 +81,21 @@ jint java_lang_VMThread_getState0(struct Hjava_lang_VMThread* this)
 {
    return KTHREAD(get_status)((jthread_t)unhand(this)->vmdata);
 }
+
+jlong java_lang_VMThread_getCpuTime(struct Hjava_lang_VMThread* this)
+{
+  jthread_t jt = (jthread_t)unhand(this)->vmdata;
+
+  if (jt == NULL)
+    return 0;
+  return KTHREAD(get_usage)(jt);
+}
+
+jlong java_lang_VMThread_getAllocatedBytes(struct Hjava_lang_VMThread* this)
+{
+  jthread_t jt = (jthread_t)unhand(this)->vmdata;
+
+  if (jt == NULL)
+    return 0;
+  return KTHREAD(get_data)(jt)->allocatedBytes;
+}
@@ -28,19 +28,17 @@
 
 static
 Hjava_util_zip_ZipEntry*
-makeZipEntry(ZZIP_FILE * entry, Hjava_lang_String* zname)
+makeZipEntry(jarEntry* entry, Hjava_lang_String* zname)
 {
 	Hjava_util_zip_ZipEntry* zentry;
-	ZZIP_STAT stat;
-	zzip_fstat(entry, &stat);
 
 	zentry = (Hjava_util_zip_ZipEntry*)
 	    execute_java_constructor("java.util.zip.ZipEntry", NULL, NULL, 
 				     "(Ljava/lang/String;)V", zname);
-	unhand(zentry)->size = stat.st_size;
+	unhand(zentry)->size = getJarEntrySize(entry);
 	unhand(zentry)->known |= java_util_zip_ZipEntry_KNOWN_SIZE;
-	unhand(zentry)->method = stat.d_compr;
-	unhand(zentry)->compressedSize = stat.d_csize;
+	unhand(zentry)->method = getJarEntryMethod(entry);
+	unhand(zentry)->compressedSize = getJarEntryCompressedSize(entry);
 	unhand(zentry)->dostime = -1;
 	
 	return (zentry);
@@ -49,11 +47,11 @@ makeZipEntry(ZZIP_FILE * entry, Hjava_lang_String* zname)
 struct Horg_kaffe_util_Ptr*
 java_util_zip_ZipFile_openZipFile0(Hjava_lang_String* fname)
 {
-	ZZIP_DIR* zip;
+	jarFile* zip;
 	char* str;
 
 	str = checkPtr(stringJava2C(fname));
-	zip = zzip_opendir(str);
+	zip = openJarFile(str);
 	gc_free(str);
 	return ((struct Horg_kaffe_util_Ptr*)zip);
 }
@@ -61,30 +59,23 @@ java_util_zip_ZipFile_openZipFile0(Hjava_lang_String* fname)
 void
 java_util_zip_ZipFile_closeZipFile0(struct Horg_kaffe_util_Ptr* zip)
 {
-	zzip_closedir((ZZIP_DIR*)zip);
+	closeJarFile((jarFile*)zip);
 }
 
 jint
 java_util_zip_ZipFile_getZipFileSize0(struct Horg_kaffe_util_Ptr* zip)
 {
-  jint size = 0;
-
-  zzip_rewinddir((ZZIP_DIR *) zip);
-
-  while(zzip_readdir((ZZIP_DIR *) zip) != NULL)
-    ++size;
-
-  return size;
+  return ((jarFile*)zip)->count;
 }
 
 static
-ZZIP_FILE* getZipEntry(struct Horg_kaffe_util_Ptr* zip, Hjava_lang_String* zname)
+jarEntry* getZipEntry(struct Horg_kaffe_util_Ptr* zip, Hjava_lang_String* zname)
 {
-	ZZIP_FILE* entry;
+	jarEntry* entry;
 	char* str;
 
 	str = checkPtr(stringJava2C(zname));
-	entry = zzip_file_open((ZZIP_DIR*)zip, str, 0);
+	entry = lookupJarEntry((jarFile*)zip, str);
 	gc_free(str);
 
 	return entry;
@@ -93,13 +84,12 @@ ZZIP_FILE* getZipEntry(struct Horg_kaffe_util_Ptr* zip, Hjava_lang_String* zname
 struct Hjava_util_zip_ZipEntry*
 java_util_zip_ZipFile_getZipEntry0(struct Horg_kaffe_util_Ptr* zip, Hjava_lang_String* zname)
 {
-  ZZIP_FILE* entry;
+  jarEntry* entry;
   Hjava_util_zip_ZipEntry* zentry = NULL;
 
   entry = getZipEntry(zip, zname);
   if (entry != NULL) {
     zentry = makeZipEntry(entry, zname);
-    zzip_file_close(entry);
   }
   
   return (zentry);
@@ -109,7 +99,7 @@ HArrayOfByte*
 java_util_zip_ZipFile_getZipData0(struct Horg_kaffe_util_Ptr* zip, struct Hjava_util_zip_ZipEntry* zentry)
 {
 	HArrayOfByte* array;
-	uint8* buf = NULL;
+	jarEntry* entry = NULL;
 	jlong size;
 
 	size = unhand(zentry)->size;
@@ -119,20 +109,17 @@ java_util_zip_ZipFile_getZipData0(struct Horg_kaffe_util_Ptr* zip, struct Hjava_
         }
 	if( size > 0 )
 	{
-	  ZZIP_FILE *entry = getZipEntry( zip, unhand(zentry)->name);
-	  if (entry != NULL) {
-	    buf = getDataJarFile(entry);
-	    zzip_file_close(entry);
-	  }
-	  if (buf == 0) {
+	  entry = getZipEntry( zip, unhand(zentry)->name);
+	  if (entry == NULL || (jlong)getJarEntrySize(entry) != size) {
 	    return (NULL);
 	  }
 	}
 	array = (HArrayOfByte*)AllocArray((jsize)size, TYPE_Byte);
-	if( buf )
+	/* Inflate straight into the array */
+	if( entry != NULL
+	    && !readJarEntry((jarFile*)zip, entry, unhand_array(array)->body) )
 	{
-		memcpy(unhand_array(array)->body, buf, (size_t)size);
-		gc_free(buf);
+		return (NULL);
 	}
 	return (array);
 }
@@ -141,12 +128,11 @@ Hjava_util_Vector*
 java_util_zip_ZipFile_getZipEntries0(struct Horg_kaffe_util_Ptr* zip)
 {
 	Hjava_util_Vector* vec;
-	ZZIP_DIR* zfile;
-	ZZIP_DIRENT * zip_entry = NULL; 
+	jarFile* zfile;
 	HObject** elems;
-	int i = 0;
+	int i;
 	jint num_entries = java_util_zip_ZipFile_getZipFileSize0(zip);
-	zfile = (ZZIP_DIR*)zip;
+	zfile = (jarFile*)zip;
 	
 	vec = (Hjava_util_Vector*)
 	  execute_java_constructor("java.util.Vector",
@@ -154,20 +140,10 @@ java_util_zip_ZipFile_getZipEntries0(struct Horg_kaffe_util_Ptr* zip)
 				   num_entries);
 	elems = unhand_array(unhand(vec)->elementData)->body;
 
-	zzip_rewinddir(zfile);
-	do {
-	  ZZIP_FILE* entry;
-
-	  zip_entry = zzip_readdir(zfile);
-	  if (NULL != zip_entry) {
-	    entry = zzip_file_open(zfile, zip_entry->d_name, 0);
-	    if (NULL != entry) {
-	      elems[i] = (HObject*)makeZipEntry(entry, stringC2Java(zip_entry->d_name));
-	      zzip_file_close(entry);
-	    }
-	    i++;
-	  }
-	}while (zip_entry != NULL);
+	for (i = 0; i < num_entries; i++) {
+	  elems[i] = (HObject*)makeZipEntry(&zfile->entries[i],
+					    stringC2Java(zfile->entries[i].name));
+	}
 
 	unhand(vec)->elementCount = num_entries;
 
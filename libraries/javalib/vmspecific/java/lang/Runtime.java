@@ -600,6 +600,84 @@ public class Runtime
     return VMRuntime.maxMemory();
   }
 
+  /**
+   * Kaffe specific: find out how much CPU time a thread has used.
+   *
+   * @param t the thread to look at
+   * @return the CPU time in nanoseconds, 0 if the thread system cannot
+   *         measure it, or -1 if the thread is not alive
+   * @throws NullPointerException if t is null
+   */
+  public long getThreadCpuTime(Thread t)
+  {
+    VMThread vt = t.vmThread;
+
+    if (vt == null)
+      return -1;
+    return vt.getCpuTime();
+  }
+
+  /**
+   * Kaffe specific: find out how many bytes of Java objects and arrays
+   * a thread has allocated since it was started.  Memory the VM
+   * allocates for itself, such as classes and compiled code, is not
+   * counted.
+   *
+   * @param t the thread to look at
+   * @return the number of bytes allocated, or -1 if the thread is not
+   *         alive
+   * @throws NullPointerException if t is null
+   */
+  public long getThreadAllocatedBytes(Thread t)
+  {
+    VMThread vt = t.vmThread;
+
+    if (vt == null)
+      return -1;
+    return vt.getAllocatedBytes();
+  }
+
+  /**
+   * Kaffe specific: write the Java stacks collected so far by the
+   * sampling profiler (see the -Xsample option) to a file, one line per
+   * distinct stack in the collapsed format read by flame graph tools.
+   *
+   * @param file the file to write, or <code>null</code> for the file
+   *        given with -Xsample_file
+   * @return false if sampling is off or the file could not be written
+   * @throws SecurityException if a file is given and the security
+   *         manager does not allow writing it
+   */
+  public boolean dumpSamples(String file)
+  {
+    SecurityManager sm = SecurityManager.current; // Be thread-safe!
+
+    if (sm != null && file != null)
+      sm.checkWrite(file);
+    return VMRuntime.dumpSamples(file);
+  }
+
+  /**
+   * Kaffe specific: write the top allocation sites recorded so far by
+   * the allocation profiler (see the -Xallocsample option) to a file,
+   * ranked by sampled bytes and by number of samples.
+   *
+   * @param file the file to write, or <code>null</code> for the file
+   *        given with -Xallocsample_file
+   * @return false if allocation sampling is off or the file could not
+   *         be written
+   * @throws SecurityException if a file is given and the security
+   *         manager does not allow writing it
+   */
+  public boolean dumpAllocationSites(String file)
+  {
+    SecurityManager sm = SecurityManager.current; // Be thread-safe!
+
+    if (sm != null && file != null)
+      sm.checkWrite(file);
+    return VMRuntime.dumpAllocationSites(file);
+  }
+
   /**
    * Run the garbage collector. This method is more of a suggestion than
    * anything. All this method guarantees is that the garbage collector will
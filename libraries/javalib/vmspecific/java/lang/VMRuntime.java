@@ -169,6 +169,27 @@ final class VMRuntime
     static native String getLibPrefix();
     static native String getLibSuffix();
 
+    /**
+     * Kaffe specific: write the stacks collected by the sampling
+     * profiler to a file.
+     *
+     * @param file the file to write, or <code>null</code> for the one
+     *        given with -Xsample_file
+     * @return false if sampling is off or the file could not be written
+     */
+    static native boolean dumpSamples(String file);
+
+    /**
+     * Kaffe specific: write the allocation sites recorded by the
+     * allocation profiler to a file.
+     *
+     * @param file the file to write, or <code>null</code> for the one
+     *        given with -Xallocsample_file
+     * @return false if allocation sampling is off or the file could not
+     *         be written
+     */
+    static native boolean dumpAllocationSites(String file);
+
     /**
      * Execute a process. The command line has already been tokenized, and
      * the environment should contain name=value mappings. If directory is null,
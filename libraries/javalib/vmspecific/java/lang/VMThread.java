@@ -492,4 +492,20 @@ final class VMThread
 	    return "BLOCKED";
 	}
     }
+
+    /**
+     * Kaffe specific: returns the CPU time used by this thread.
+     *
+     * @return the CPU time in nanoseconds, or 0 if the thread system
+     *         cannot measure it
+     */
+    native long getCpuTime();
+
+    /**
+     * Kaffe specific: returns the number of bytes of Java objects and
+     * arrays allocated by this thread since it was started.
+     *
+     * @return the number of bytes allocated
+     */
+    native long getAllocatedBytes();
 }
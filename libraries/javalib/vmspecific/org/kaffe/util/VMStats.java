@@ -0,0 +1,92 @@
+/*
+ * Java core library component.
+ *
+ * Copyright (c) 2026
+ *      Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+package org.kaffe.util;
+
+/**
+ * Live access to the VM's internal statistics counters: gc pauses and
+ * heap usage, lock contention, jit time, class loading and every other
+ * counter the VM registers.  Counters are only kept by a VM configured
+ * with --with-stats; otherwise every lookup fails.
+ */
+public final class VMStats {
+
+  /** Report format: a single JSON object. */
+  public static final int FORMAT_JSON = 0;
+
+  /** Report format: the Prometheus text exposition format. */
+  public static final int FORMAT_PROMETHEUS = 1;
+
+  private VMStats() {
+  }
+
+  /**
+   * @return true if this VM keeps statistics
+   */
+  public static native boolean isEnabled();
+
+  /**
+   * Get the number of times a counter was hit, or a timer was run.
+   *
+   * @param name the counter name, such as "gctime-pause-us"
+   * @return the count, or -1 if there is no such counter
+   */
+  public static native long getCalls(String name);
+
+  /**
+   * Get the value of a counter: the running total of a cumulative
+   * counter, the hit count of a hit counter and the user plus system
+   * microseconds of a timer.
+   *
+   * @param name the counter name, such as "locks-contended"
+   * @return the value, or -1 if there is no such counter
+   */
+  public static native long getValue(String name);
+
+  /**
+   * Get a report of all counters and heap gauges.
+   *
+   * @param format FORMAT_JSON or FORMAT_PROMETHEUS
+   * @return the report, or <code>null</code> if statistics are off
+   */
+  public static String snapshot(int format) {
+    checkFormat(format);
+    return snapshot0(format);
+  }
+
+  /**
+   * Write a report of all counters and heap gauges to a file.
+   *
+   * @param file the file to write
+   * @param format FORMAT_JSON or FORMAT_PROMETHEUS
+   * @return false if statistics are off or the file could not be written
+   * @throws SecurityException if the security manager does not allow
+   *         writing the file
+   */
+  public static boolean dump(String file, int format) {
+    SecurityManager sm = System.getSecurityManager();
+
+    if (file == null)
+      throw new NullPointerException();
+    checkFormat(format);
+    if (sm != null)
+      sm.checkWrite(file);
+    return dump0(file, format);
+  }
+
+  private static void checkFormat(int format) {
+    if (format != FORMAT_JSON && format != FORMAT_PROMETHEUS)
+      throw new IllegalArgumentException("unknown format " + format);
+  }
+
+  private static native String snapshot0(int format);
+
+  private static native boolean dump0(String file, int format);
+}
@@ -43,6 +43,7 @@
 
 #define repsem_init sem_init
 #define repsem_wait sem_wait
+#define repsem_trywait sem_trywait
 #define repsem_getvalue sem_getvalue
 #define repsem_post sem_post
 #define repsem_destroy sem_destroy
@@ -0,0 +1,25 @@
+/*
+ * Defined in class loaders of its own by verifyCacheTest: verifying
+ * catch() resolves VerifyCacheError, which the verification cache
+ * then records as a dependency.
+ */
+class VerifyCacheTarget
+{
+    public static int run(int a)
+    {
+	try
+	{
+	    if (a < 0)
+		throw new VerifyCacheError();
+	    return a;
+	}
+	catch(VerifyCacheError e)
+	{
+	    return -a;
+	}
+    }
+}
+
+class VerifyCacheError extends RuntimeException
+{
+}
@@ -0,0 +1,224 @@
+/*
+ * idleConnBench.c
+ * Time blocking I/O wakeups while many other threads wait on idle
+ * descriptors.
+ *
+ * Usage: idleConnBench [idle [roundtrips]]
+ *
+ * Starts idle threads (1000 by default) that each block reading a pipe
+ * nobody writes to, then passes a byte back and forth between the main
+ * thread and an echo thread over two more pipes.  With poll or select
+ * every wakeup costs time in the number of descriptors waited on; with
+ * epoll it should not.  Compare the time per round trip of two builds,
+ * or of two idle counts, to see what the idle descriptors cost.
+ *
+ * The pipes are reopened through /dev/fd so that they go through the
+ * VM's open; the test is skipped where that does not work.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-io.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+#include <sys/time.h>
+#include <sys/resource.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "jsyscall.h"
+#include "thread.h"
+#include "java_lang_Thread.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* automake's exit status for a skipped test */
+#define	EXIT_SKIP	77
+
+#define	IDLE_STACKSIZE		(16 * 1024)
+
+/* round trips made before timing */
+#define	WARMUP			100
+
+/* descriptors left for the VM itself */
+#define	SPARE_FDS		64
+
+static int pingFd;		/* read by the echo thread */
+static int pingWrite;
+static int pongFd;		/* read by the main thread */
+static int pongWrite;
+
+/*
+ * Make a pipe whose read end was opened by the VM.  Returns false if
+ * that cannot be done here.
+ */
+static bool
+openPipe(int* readFd, int* writeFd)
+{
+	char path[32];
+	int p[2];
+	int rc;
+
+	if (pipe(p) != 0) {
+		return (false);
+	}
+	snprintf(path, sizeof(path), "/dev/fd/%d", p[0]);
+	rc = KOPEN(path, O_RDONLY, 0, readFd);
+	close(p[0]);
+	if (rc != 0) {
+		close(p[1]);
+		return (false);
+	}
+	*writeFd = p[1];
+	return (true);
+}
+
+/*
+ * Wait on a pipe that stays quiet.
+ */
+static void
+idleReader(void* arg)
+{
+	int fd = (int)(intptr_t)arg;
+	ssize_t n;
+	char c;
+
+	while (KREAD(fd, &c, 1, &n) == 0 && n > 0) {
+		continue;
+	}
+}
+
+/*
+ * Send every byte of the ping pipe back on the pong pipe.
+ */
+static void
+echo(void* arg UNUSED)
+{
+	ssize_t n;
+	char c;
+
+	while (KREAD(pingFd, &c, 1, &n) == 0 && n > 0) {
+		if (write(pongWrite, &c, 1) != 1) {
+			break;
+		}
+	}
+}
+
+static bool
+roundTrip(void)
+{
+	ssize_t n;
+	char c = 'x';
+
+	return (write(pingWrite, &c, 1) == 1
+		&& KREAD(pongFd, &c, 1, &n) == 0 && n == 1);
+}
+
+int
+main(int argc, char *argv[])
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+	errorInfo info;
+	struct rlimit rl;
+	struct timeval start;
+	struct timeval end;
+	double secs;
+	int roundtrips;
+	int idle;
+	int readFd;
+	int writeFd;
+	int i;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+
+	idle = (argc > 1) ? atoi(argv[1]) : 1000;
+	roundtrips = (argc > 2) ? atoi(argv[2]) : 10000;
+	if (idle < 0 || roundtrips <= 0) {
+		fprintf(stderr, "usage: %s [idle [roundtrips]]\n", argv[0]);
+		return (EXIT_FAILURE);
+	}
+
+	/* every idle thread holds both ends of its pipe */
+	if (getrlimit(RLIMIT_NOFILE, &rl) == 0 && rl.rlim_cur != RLIM_INFINITY
+	    && (rlim_t)(2 * idle + SPARE_FDS) > rl.rlim_cur) {
+		idle = ((int)rl.rlim_cur - SPARE_FDS) / 2;
+		if (idle < 0) {
+			idle = 0;
+		}
+		fprintf(stderr, "only %d idle threads fit in %d descriptors\n",
+			idle, (int)rl.rlim_cur);
+	}
+
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (EXIT_FAILURE);
+	}
+
+	if (!openPipe(&pingFd, &pingWrite) || !openPipe(&pongFd, &pongWrite)) {
+		fprintf(stderr, "cannot reopen pipes through /dev/fd\n");
+		return (EXIT_SKIP);
+	}
+	if (createDaemon(&echo, "echo", NULL, java_lang_Thread_NORM_PRIORITY,
+			 IDLE_STACKSIZE, &info) == NULL) {
+		fprintf(stderr, "cannot start the echo thread\n");
+		return (EXIT_FAILURE);
+	}
+	for (i = 0; i < idle; i++) {
+		if (!openPipe(&readFd, &writeFd)) {
+			fprintf(stderr, "cannot open idle pipe %d\n", i);
+			return (EXIT_FAILURE);
+		}
+		if (createDaemon(&idleReader, "idle", (void*)(intptr_t)readFd,
+				 java_lang_Thread_NORM_PRIORITY,
+				 IDLE_STACKSIZE, &info) == NULL) {
+			fprintf(stderr, "cannot start idle thread %d\n", i);
+			return (EXIT_FAILURE);
+		}
+	}
+
+	/* lets the idle threads get to their reads */
+	for (i = 0; i < WARMUP; i++) {
+		if (!roundTrip()) {
+			fprintf(stderr, "round trip failed\n");
+			return (EXIT_FAILURE);
+		}
+	}
+
+	gettimeofday(&start, NULL);
+	for (i = 0; i < roundtrips; i++) {
+		if (!roundTrip()) {
+			fprintf(stderr, "round trip failed\n");
+			return (EXIT_FAILURE);
+		}
+	}
+	gettimeofday(&end, NULL);
+
+	secs = (end.tv_sec - start.tv_sec)
+		+ (end.tv_usec - start.tv_usec) / 1000000.0;
+	if (secs <= 0.0) {
+		secs = 1e-6;
+	}
+	printf("%d idle threads, %d round trips in %.3fs\n",
+	       idle, roundtrips, secs);
+	printf("%.1f us per round trip\n", secs * 1000000.0 / roundtrips);
+
+	return (EXIT_SUCCESS);
+}
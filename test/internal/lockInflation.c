@@ -0,0 +1,157 @@
+/*
+ * lockInflation.c
+ * Inflate static locks while their owner re-enters them.
+ *
+ * Usage: lockInflation [rounds]
+ *
+ * In every round the main thread takes a fresh, thin static lock and
+ * lets a second thread block on it, which inflates it to its heavy
+ * lock.  Meanwhile the main thread keeps entering the lock again and
+ * leaving it as often.  It must still hold the lock afterwards: a
+ * recursion count lost to the inflation releases the lock one unlock
+ * early.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "locks.h"
+#include "thread.h"
+#include "jthread.h"
+#include "support.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* times the owner enters the lock again in every round */
+#define	REENTRIES	64
+
+#define	CONTENDER_STACKSIZE	(32 * 1024)
+
+static iStaticLock testLock;
+static volatile int started;
+static volatile int finished;
+static int rounds;
+
+/*
+ * Block on the lock of every round, inflating it.
+ */
+static void
+contender(void* arg UNUSED)
+{
+	int r;
+
+	for (r = 1; r <= rounds; r++) {
+		while (started < r) {
+			KTHREAD(yield)();
+		}
+		lockStaticMutex(&testLock);
+		unlockStaticMutex(&testLock);
+		finished = r;
+	}
+}
+
+/*
+ * True if the current thread holds the lock, thin or heavy.
+ */
+static bool
+holdsLock(iStaticLock* slock, uint32 count)
+{
+	jthread_t cur = KTHREAD(current)();
+	iLock* lk = slock->lock;
+
+	if (lk == (iLock*)cur) {
+		return (count == 1);
+	}
+	if (lk == NULL || GET_HEAVYLOCK(lk) != &slock->heavyLock) {
+		return (false);
+	}
+	return (slock->heavyLock.holder == cur
+		&& slock->heavyLock.lockCount == count);
+}
+
+int
+main(int argc, char *argv[])
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+	errorInfo info;
+	int inflated;
+	int r;
+	int i;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+
+	rounds = (argc > 1) ? atoi(argv[1]) : 1000;
+	if (rounds <= 0) {
+		fprintf(stderr, "usage: %s [rounds]\n", argv[0]);
+		return (EXIT_FAILURE);
+	}
+
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (EXIT_FAILURE);
+	}
+
+	if (createDaemon(&contender, "contender", NULL, THREAD_MAXPRIO,
+			 CONTENDER_STACKSIZE, &info) == NULL) {
+		fprintf(stderr, "cannot start the contending thread\n");
+		return (EXIT_FAILURE);
+	}
+
+	inflated = 0;
+	for (r = 1; r <= rounds; r++) {
+		initStaticLock(&testLock);
+		lockStaticMutex(&testLock);
+		started = r;
+
+		for (i = 0; i < REENTRIES; i++) {
+			lockStaticMutex(&testLock);
+			KTHREAD(yield)();
+		}
+		if (!holdsLock(&testLock, REENTRIES + 1)) {
+			fprintf(stderr, "round %d: recursion count lost "
+				"after entering\n", r);
+			return (EXIT_FAILURE);
+		}
+		for (i = 0; i < REENTRIES; i++) {
+			unlockStaticMutex(&testLock);
+		}
+		if (!holdsLock(&testLock, 1)) {
+			fprintf(stderr, "round %d: lock released early\n", r);
+			return (EXIT_FAILURE);
+		}
+		if (GET_HEAVYLOCK(testLock.lock) == &testLock.heavyLock) {
+			inflated++;
+		}
+		unlockStaticMutex(&testLock);
+
+		while (finished < r) {
+			KTHREAD(yield)();
+		}
+		destroyStaticLock(&testLock);
+	}
+
+	printf("%d rounds, %d inflated while held\n", rounds, inflated);
+	return (EXIT_SUCCESS);
+}
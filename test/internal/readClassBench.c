@@ -0,0 +1,209 @@
+/*
+ * readClassBench.c
+ * Parse every class of a jar with readClass and report the throughput.
+ *
+ * Usage: readClassBench [jar [rounds]]
+ *
+ * Without a jar the first jar or zip on BOOTCLASSPATH is used, so
+ * "make check" parses the whole class library once and fails if any
+ * class of it cannot be read.  Compare the classes/s of two builds to
+ * measure a change to the class file parser.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+#include <sys/time.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "file.h"
+#include "jar.h"
+#include "object.h"
+#include "classMethod.h"
+#include "readClass.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* automake's exit status for a skipped test */
+#define	EXIT_SKIP	77
+
+typedef struct {
+	const char*		name;
+	unsigned char*		data;
+	size_t			length;
+} benchClass;
+
+/*
+ * Find the first jar or zip in a class path.
+ */
+static char*
+findJar(const char* cp)
+{
+	const char* start;
+	const char* end;
+	char* jar;
+	size_t len;
+
+	for (start = cp; start != NULL && *start != '\0'; start = end) {
+		end = strchr(start, ':');
+		len = (end != NULL) ? (size_t)(end - start) : strlen(start);
+		if (len > 4 && (strncmp(start + len - 4, ".jar", 4) == 0
+				|| strncmp(start + len - 4, ".zip", 4) == 0)) {
+			jar = malloc(len + 1);
+			memcpy(jar, start, len);
+			jar[len] = '\0';
+			return (jar);
+		}
+		if (end != NULL) {
+			end++;
+		}
+	}
+	return (NULL);
+}
+
+/*
+ * Read every class of the jar into memory, so that only parsing is
+ * timed.
+ */
+static int
+loadClasses(jarFile* jar, benchClass* classes, size_t* total)
+{
+	int i;
+	size_t len;
+	int n;
+
+	n = 0;
+	*total = 0;
+	for (i = 0; i < jar->count; i++) {
+		jarEntry* entry = &jar->entries[i];
+
+		len = strlen(entry->name);
+		if (len <= 6 || strcmp(entry->name + len - 6, ".class") != 0) {
+			continue;
+		}
+		classes[n].name = entry->name;
+		classes[n].length = getJarEntrySize(entry);
+		if (classes[n].length == 0) {
+			continue;
+		}
+		classes[n].data = malloc(classes[n].length);
+		if (classes[n].data == NULL
+		    || !readJarEntry(jar, entry, classes[n].data)) {
+			fprintf(stderr, "cannot read %s\n", entry->name);
+			return (-1);
+		}
+		*total += classes[n].length;
+		n++;
+	}
+	return (n);
+}
+
+int
+main(int argc, char *argv[])
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+	benchClass* classes;
+	jarFile* jar;
+	char* path;
+	struct timeval start;
+	struct timeval end;
+	size_t total;
+	double secs;
+	int rounds;
+	int failed;
+	int n;
+	int r;
+	int i;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+	/* Let the parsed classes be collected between rounds */
+	vmargs.enableClassGC = 1;
+
+	path = (argc > 1) ? argv[1] : findJar(vmargs.bootClasspath);
+	rounds = (argc > 2) ? atoi(argv[2]) : 1;
+	if (path == NULL) {
+		fprintf(stderr, "no jar given and none on %s\n", BOOTCLASSPATH);
+		return (EXIT_SKIP);
+	}
+	if (rounds <= 0) {
+		fprintf(stderr, "usage: %s [jar [rounds]]\n", argv[0]);
+		return (EXIT_FAILURE);
+	}
+
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (EXIT_FAILURE);
+	}
+
+	jar = openJarFile(path);
+	if (jar == NULL) {
+		fprintf(stderr, "cannot open %s\n", path);
+		return (EXIT_FAILURE);
+	}
+	classes = calloc(jar->count, sizeof(benchClass));
+	n = loadClasses(jar, classes, &total);
+	if (n <= 0) {
+		fprintf(stderr, "no classes in %s\n", path);
+		return (EXIT_FAILURE);
+	}
+
+	failed = 0;
+	gettimeofday(&start, NULL);
+	for (r = 0; r < rounds; r++) {
+		for (i = 0; i < n; i++) {
+			Hjava_lang_Class* cls;
+			classFile hand;
+			errorInfo info;
+
+			cls = newClass();
+			if (cls == NULL) {
+				fprintf(stderr, "out of memory\n");
+				return (EXIT_FAILURE);
+			}
+			classFileInit(&hand, NULL, classes[i].data,
+				      classes[i].length, CP_BYTEARRAY);
+			if (readClass(cls, &hand, NULL, &info) == NULL) {
+				if (r == 0) {
+					fprintf(stderr, "cannot parse %s\n",
+						classes[i].name);
+					failed++;
+				}
+				discardErrorInfo(&info);
+			}
+		}
+	}
+	gettimeofday(&end, NULL);
+
+	secs = (end.tv_sec - start.tv_sec)
+		+ (end.tv_usec - start.tv_usec) / 1000000.0;
+	if (secs <= 0.0) {
+		secs = 1e-6;
+	}
+	printf("%s: %d classes, %lu bytes, %d rounds in %.3fs\n",
+	       path, n, (unsigned long)total, rounds, secs);
+	printf("%.0f classes/s, %.2f MB/s\n",
+	       (double)n * rounds / secs,
+	       (double)total * rounds / secs / (1024.0 * 1024.0));
+
+	return (failed == 0 ? EXIT_SUCCESS : EXIT_FAILURE);
+}
@@ -0,0 +1,288 @@
+/*
+ * statsExport.c
+ * Register counters from several threads at once and export them.
+ *
+ * Usage: statsExport [threads]
+ *
+ * Every thread hits the same fresh counters, racing to register them.
+ * Each counter must then be reported with its full count by
+ * statsLookup, in a JSON and a Prometheus report written by statsDump,
+ * and in the report the exporter thread writes when asked to, as on
+ * SIGQUIT.  A counter published before its kind is set is left out of
+ * the reports.  Skipped unless the VM was built with statistics.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "locks.h"
+#include "thread.h"
+#include "jthread.h"
+#include "support.h"
+#include "stats.h"
+#include "java_lang_Thread.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* automake's exit status for a skipped test */
+#define	EXIT_SKIP	77
+
+#if defined(KAFFE_STATS)
+
+#define	NCOUNTERS		8
+#define	HITS			1000
+
+#define	HITTER_STACKSIZE	(32 * 1024)
+
+#define	EXPORT_FILE		"statsExport.json"
+#define	JSON_FILE		"statsDump.json"
+#define	PROMETHEUS_FILE		"statsDump.prom"
+
+/* how long the exporter gets to write its report, in milliseconds */
+#define	EXPORT_WAIT		10000
+#define	EXPORT_POLL		50
+
+static counter testCounters[NCOUNTERS];
+static char* counterNames[NCOUNTERS] = {
+	"statstest-0", "statstest-1", "statstest-2", "statstest-3",
+	"statstest-4", "statstest-5", "statstest-6", "statstest-7"
+};
+
+static volatile int go;
+static volatile int finished;
+static iStaticLock finishLock;
+
+static void
+hitter(void* arg UNUSED)
+{
+	int i;
+	int c;
+
+	while (!go) {
+		KTHREAD(yield)();
+	}
+	for (i = 0; i < HITS; i++) {
+		for (c = 0; c < NCOUNTERS; c++) {
+			hitCounter(&testCounters[c], counterNames[c]);
+		}
+	}
+	lockStaticMutex(&finishLock);
+	finished++;
+	unlockStaticMutex(&finishLock);
+}
+
+/*
+ * Read a whole file, or NULL.
+ */
+static char*
+readFile(const char* file)
+{
+	FILE* fp;
+	char* buf;
+	long len;
+
+	fp = fopen(file, "r");
+	if (fp == NULL) {
+		return (NULL);
+	}
+	if (fseek(fp, 0L, SEEK_END) != 0 || (len = ftell(fp)) < 0
+	    || fseek(fp, 0L, SEEK_SET) != 0) {
+		fclose(fp);
+		return (NULL);
+	}
+	buf = malloc((size_t)len + 1);
+	if (buf == NULL || fread(buf, 1, (size_t)len, fp) != (size_t)len) {
+		free(buf);
+		fclose(fp);
+		return (NULL);
+	}
+	buf[len] = '\0';
+	fclose(fp);
+	return (buf);
+}
+
+/*
+ * Count the counters missing from a report, or reported with another
+ * count.  prometheus selects the format.
+ */
+static int
+checkReport(const char* file, const char* report, bool prometheus,
+	    int calls)
+{
+	char line[128];
+	char name[64];
+	char* p;
+	int missing;
+	int c;
+
+	missing = 0;
+	for (c = 0; c < NCOUNTERS; c++) {
+		if (prometheus) {
+			strcpy(name, counterNames[c]);
+			for (p = name; *p != '\0'; p++) {
+				if (*p == '-') {
+					*p = '_';
+				}
+			}
+			snprintf(line, sizeof(line), "\nkaffe_%s_total %d\n",
+				 name, calls);
+		}
+		else {
+			snprintf(line, sizeof(line), "\"%s\": {\"type\": "
+				 "\"count\", \"calls\": %d}",
+				 counterNames[c], calls);
+		}
+		if (strstr(report, line) == NULL) {
+			fprintf(stderr, "%s: no %s with %d hits\n", file,
+				counterNames[c], calls);
+			missing++;
+		}
+	}
+	return (missing);
+}
+
+static int
+checkDump(const char* file, int format, int calls)
+{
+	char* report;
+	int missing;
+
+	if (!statsDump(file, format)) {
+		fprintf(stderr, "cannot write %s\n", file);
+		return (1);
+	}
+	report = readFile(file);
+	if (report == NULL) {
+		fprintf(stderr, "cannot read %s\n", file);
+		return (1);
+	}
+	missing = checkReport(file, report,
+			      format == STATS_FORMAT_PROMETHEUS, calls);
+	free(report);
+	remove(file);
+	return (missing);
+}
+
+/*
+ * Ask the exporter for a report and wait for it.
+ */
+static int
+checkExport(int calls)
+{
+	char* report;
+	int missing;
+	int waited;
+
+	statsRequestDump();
+	report = NULL;
+	for (waited = 0; waited < EXPORT_WAIT; waited += EXPORT_POLL) {
+		report = readFile(EXPORT_FILE);
+		if (report != NULL) {
+			break;
+		}
+		KTHREAD(sleep)((jlong)EXPORT_POLL);
+	}
+	if (report == NULL) {
+		fprintf(stderr, "the exporter wrote no %s\n", EXPORT_FILE);
+		return (1);
+	}
+	missing = checkReport(EXPORT_FILE, report, false, calls);
+	free(report);
+	return (missing);
+}
+
+int
+main(int argc, char *argv[])
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+	errorInfo info;
+	jlong calls;
+	jlong value;
+	int threads;
+	int failed;
+	int c;
+	int t;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+
+	threads = (argc > 1) ? atoi(argv[1]) : 8;
+	if (threads <= 0) {
+		fprintf(stderr, "usage: %s [threads]\n", argv[0]);
+		return (EXIT_FAILURE);
+	}
+
+	remove(EXPORT_FILE);
+	statsSetExportFile(EXPORT_FILE);
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (EXIT_FAILURE);
+	}
+
+	initStaticLock(&finishLock);
+	for (t = 0; t < threads; t++) {
+		if (createDaemon(&hitter, "hitter", NULL,
+				 java_lang_Thread_NORM_PRIORITY,
+				 HITTER_STACKSIZE, &info) == NULL) {
+			fprintf(stderr, "cannot start thread %d\n", t);
+			return (EXIT_FAILURE);
+		}
+	}
+	go = 1;
+	while (finished < threads) {
+		KTHREAD(yield)();
+	}
+
+	failed = 0;
+	for (c = 0; c < NCOUNTERS; c++) {
+		if (!statsLookup(counterNames[c], &calls, &value)
+		    || calls != (jlong)threads * HITS) {
+			fprintf(stderr, "%s not registered or miscounted\n",
+				counterNames[c]);
+			failed++;
+		}
+	}
+	failed += checkDump(JSON_FILE, STATS_FORMAT_JSON, threads * HITS);
+	failed += checkDump(PROMETHEUS_FILE, STATS_FORMAT_PROMETHEUS,
+			    threads * HITS);
+	failed += checkExport(threads * HITS);
+
+	if (failed != 0) {
+		return (EXIT_FAILURE);
+	}
+	printf("%d counters hit by %d threads, all exported\n",
+	       NCOUNTERS, threads);
+	return (EXIT_SUCCESS);
+}
+
+#else /* !defined(KAFFE_STATS) */
+
+int
+main(void)
+{
+	fprintf(stderr, "the VM was built without statistics\n");
+	return (EXIT_SKIP);
+}
+
+#endif /* defined(KAFFE_STATS) */
@@ -0,0 +1,275 @@
+/*
+ * verifyCacheTest.c
+ * Check that the verification cache hits, misses and is invalidated.
+ *
+ * Usage: verifyCacheTest
+ *
+ * A first VM, run in a child process, links VerifyCacheTarget, which
+ * must miss the empty cache, and writes the cache at exit.  A second
+ * VM then defines the class again in a new class loader, where it must
+ * hit, and once more with its dependency VerifyCacheError changed,
+ * where it must miss.  The classes are read from the current
+ * directory.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-io.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+#include <sys/wait.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "object.h"
+#include "classMethod.h"
+#include "verify-cache.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* automake's exit status for a skipped test */
+#define	EXIT_SKIP	77
+
+#define	CACHE_FILE	"verifyCacheTest.cache"
+
+typedef struct {
+	const char*		name;
+	unsigned char*		data;
+	size_t			length;
+} testClass;
+
+static testClass target = { "VerifyCacheTarget", NULL, 0 };
+static testClass dependency = { "VerifyCacheError", NULL, 0 };
+
+static bool
+readClassFile(testClass* c)
+{
+	char path[64];
+	FILE* fp;
+	long len;
+
+	snprintf(path, sizeof(path), "%s.class", c->name);
+	fp = fopen(path, "rb");
+	if (fp == NULL) {
+		return (false);
+	}
+	if (fseek(fp, 0L, SEEK_END) != 0 || (len = ftell(fp)) <= 0
+	    || fseek(fp, 0L, SEEK_SET) != 0) {
+		fclose(fp);
+		return (false);
+	}
+	c->length = (size_t)len;
+	c->data = malloc(c->length);
+	if (c->data == NULL || fread(c->data, 1, c->length, fp) != c->length) {
+		fclose(fp);
+		return (false);
+	}
+	fclose(fp);
+	return (true);
+}
+
+static JNIEnv*
+startVM(void)
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+
+	KaffeVM_setVerifyCache(CACHE_FILE);
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (NULL);
+	}
+	return (env);
+}
+
+/*
+ * A class loader with nothing on its class path.
+ */
+static jobject
+newLoader(JNIEnv* env)
+{
+	jclass loaderClass;
+	jclass urlClass;
+	jmethodID init;
+	jobjectArray urls;
+
+	loaderClass = (*env)->FindClass(env, "java/net/URLClassLoader");
+	urlClass = (*env)->FindClass(env, "java/net/URL");
+	if (loaderClass == NULL || urlClass == NULL) {
+		return (NULL);
+	}
+	init = (*env)->GetMethodID(env, loaderClass, "<init>",
+				   "([Ljava/net/URL;)V");
+	urls = (*env)->NewObjectArray(env, 0, urlClass, NULL);
+	if (init == NULL || urls == NULL) {
+		return (NULL);
+	}
+	return ((*env)->NewObject(env, loaderClass, init, urls));
+}
+
+static Hjava_lang_Class*
+defineClass(JNIEnv* env, jobject loader, testClass* c)
+{
+	jclass cls;
+
+	cls = (*env)->DefineClass(env, c->name, loader,
+				  (const jbyte*)c->data, (jsize)c->length);
+	if (cls == NULL) {
+		(*env)->ExceptionClear(env);
+		fprintf(stderr, "cannot define %s\n", c->name);
+	}
+	return ((Hjava_lang_Class*)cls);
+}
+
+static bool
+advanceClass(Hjava_lang_Class* cls, int state)
+{
+	errorInfo info;
+
+	if (!processClass(cls, state, &info)) {
+		discardErrorInfo(&info);
+		fprintf(stderr, "cannot process %s\n", CLASS_CNAME(cls));
+		return (false);
+	}
+	return (true);
+}
+
+/*
+ * Define both classes in a new loader, changing the digest of the
+ * dependency if asked to, and look the target up in the cache.
+ * Returns -1 on error.
+ */
+static int
+lookUp(JNIEnv* env, bool changeDependency)
+{
+	Hjava_lang_Class* dep;
+	Hjava_lang_Class* cls;
+	jobject loader;
+
+	loader = newLoader(env);
+	if (loader == NULL) {
+		fprintf(stderr, "cannot create a class loader\n");
+		return (-1);
+	}
+	dep = defineClass(env, loader, &dependency);
+	if (dep == NULL) {
+		return (-1);
+	}
+	if (changeDependency) {
+		/* as if its class file had been edited */
+		dep->digest[0] ^= 1;
+	}
+	cls = defineClass(env, loader, &target);
+	if (cls == NULL || !advanceClass(cls, CSTATE_PREPARED)) {
+		return (-1);
+	}
+	return (checkVerifyCache(cls) ? 1 : 0);
+}
+
+/*
+ * The first run: miss, then link so that the class is recorded.
+ */
+static int
+record(void)
+{
+	Hjava_lang_Class* cls;
+	jobject loader;
+	JNIEnv* env;
+
+	env = startVM();
+	if (env == NULL) {
+		return (EXIT_FAILURE);
+	}
+	loader = newLoader(env);
+	if (loader == NULL) {
+		fprintf(stderr, "cannot create a class loader\n");
+		return (EXIT_FAILURE);
+	}
+	if (defineClass(env, loader, &dependency) == NULL) {
+		return (EXIT_FAILURE);
+	}
+	cls = defineClass(env, loader, &target);
+	if (cls == NULL || !advanceClass(cls, CSTATE_PREPARED)) {
+		return (EXIT_FAILURE);
+	}
+	if (checkVerifyCache(cls)) {
+		fprintf(stderr, "hit in an empty cache\n");
+		return (EXIT_FAILURE);
+	}
+	if (!advanceClass(cls, CSTATE_LINKED)) {
+		return (EXIT_FAILURE);
+	}
+	return (EXIT_SUCCESS);
+}
+
+int
+main(void)
+{
+	struct stat sbuf;
+	JNIEnv* env;
+	pid_t pid;
+	int status;
+	int rc;
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	if (!readClassFile(&target) || !readClassFile(&dependency)) {
+		fprintf(stderr, "cannot read the test classes\n");
+		return (EXIT_SKIP);
+	}
+	remove(CACHE_FILE);
+
+	/* the cache is read at startup and written at exit */
+	pid = fork();
+	if (pid < 0) {
+		fprintf(stderr, "cannot fork\n");
+		return (EXIT_SKIP);
+	}
+	if (pid == 0) {
+		exit(record());
+	}
+	if (waitpid(pid, &status, 0) != pid || !WIFEXITED(status)
+	    || WEXITSTATUS(status) != EXIT_SUCCESS) {
+		fprintf(stderr, "the first run failed\n");
+		return (EXIT_FAILURE);
+	}
+	if (stat(CACHE_FILE, &sbuf) != 0) {
+		fprintf(stderr, "the first run wrote no cache\n");
+		return (EXIT_FAILURE);
+	}
+
+	env = startVM();
+	if (env == NULL) {
+		return (EXIT_FAILURE);
+	}
+	rc = lookUp(env, false);
+	if (rc != 1) {
+		fprintf(stderr, "%s\n", rc < 0 ? "error" : "unchanged class missed");
+		return (EXIT_FAILURE);
+	}
+	rc = lookUp(env, true);
+	if (rc != 0) {
+		fprintf(stderr, "%s\n", rc < 0 ? "error" : "hit with a changed dependency");
+		return (EXIT_FAILURE);
+	}
+
+	remove(CACHE_FILE);
+	printf("miss, hit and invalidation as expected\n");
+	return (EXIT_SUCCESS);
+}
@@ -0,0 +1,306 @@
+/*
+ * verifyPoolBench.c
+ * Link the classes of a jar with and without the verify pool.
+ *
+ * Usage: verifyPoolBench [jar [threads]]
+ *
+ * Every class of the jar outside of java/ is defined in a class loader
+ * of its own round and linked, which runs the verifier on it.  A first
+ * round warms up the classes the verifier loads, a second one verifies
+ * every method on the linking thread and a third one verifies large
+ * classes on the verify pool.  Each class must link, or fail with the
+ * same error, in the second and third rounds; the time spent linking
+ * in both is reported.  Without a jar the first jar or zip on
+ * BOOTCLASSPATH is used, with 4 threads.
+ *
+ * Copyright (c) 2026
+ *	Kaffe.org contributors. See ChangeLog for details. All rights reserved.
+ *
+ * See the file "license.terms" for information on usage and redistribution
+ * of this file.
+ */
+
+#include "config.h"
+#include "config-std.h"
+#include "config-mem.h"
+
+#include <stdio.h>
+#include <sys/time.h>
+
+#include <jni.h>
+#include <ltdl.h>
+#include "kaffe_jni.h"
+#include "gtypes.h"
+#include "errors.h"
+#include "file.h"
+#include "jar.h"
+#include "object.h"
+#include "classMethod.h"
+#include "verify-pool.h"
+
+#define	BOOTCLASSPATH	"BOOTCLASSPATH"
+
+/* automake's exit status for a skipped test */
+#define	EXIT_SKIP	77
+
+typedef struct {
+	char*			name;	/* without .class */
+	unsigned char*		data;
+	size_t			length;
+	char*			result;	/* NULL if it linked */
+} benchClass;
+
+/*
+ * Find the first jar or zip in a class path.
+ */
+static char*
+findJar(const char* cp)
+{
+	const char* start;
+	const char* end;
+	char* jar;
+	size_t len;
+
+	for (start = cp; start != NULL && *start != '\0'; start = end) {
+		end = strchr(start, ':');
+		len = (end != NULL) ? (size_t)(end - start) : strlen(start);
+		if (len > 4 && (strncmp(start + len - 4, ".jar", 4) == 0
+				|| strncmp(start + len - 4, ".zip", 4) == 0)) {
+			jar = malloc(len + 1);
+			memcpy(jar, start, len);
+			jar[len] = '\0';
+			return (jar);
+		}
+		if (end != NULL) {
+			end++;
+		}
+	}
+	return (NULL);
+}
+
+/*
+ * Read the classes of the jar that a class loader may define.
+ */
+static int
+loadClasses(jarFile* jar, benchClass* classes)
+{
+	int i;
+	size_t len;
+	int n;
+
+	n = 0;
+	for (i = 0; i < jar->count; i++) {
+		jarEntry* entry = &jar->entries[i];
+
+		len = strlen(entry->name);
+		if (len <= 6 || strcmp(entry->name + len - 6, ".class") != 0
+		    || strncmp(entry->name, "java/", 5) == 0) {
+			continue;
+		}
+		classes[n].length = getJarEntrySize(entry);
+		if (classes[n].length == 0) {
+			continue;
+		}
+		classes[n].name = malloc(len - 5);
+		classes[n].data = malloc(classes[n].length);
+		if (classes[n].name == NULL || classes[n].data == NULL
+		    || !readJarEntry(jar, entry, classes[n].data)) {
+			fprintf(stderr, "cannot read %s\n", entry->name);
+			return (-1);
+		}
+		memcpy(classes[n].name, entry->name, len - 6);
+		classes[n].name[len - 6] = '\0';
+		n++;
+	}
+	return (n);
+}
+
+/*
+ * A class loader with nothing on its class path.
+ */
+static jobject
+newLoader(JNIEnv* env)
+{
+	jclass loaderClass;
+	jclass urlClass;
+	jmethodID init;
+	jobjectArray urls;
+
+	loaderClass = (*env)->FindClass(env, "java/net/URLClassLoader");
+	urlClass = (*env)->FindClass(env, "java/net/URL");
+	if (loaderClass == NULL || urlClass == NULL) {
+		return (NULL);
+	}
+	init = (*env)->GetMethodID(env, loaderClass, "<init>",
+				   "([Ljava/net/URL;)V");
+	urls = (*env)->NewObjectArray(env, 0, urlClass, NULL);
+	if (init == NULL || urls == NULL) {
+		return (NULL);
+	}
+	return ((*env)->NewObject(env, loaderClass, init, urls));
+}
+
+static char*
+errorName(errorInfo* info)
+{
+	const char* name;
+
+	switch (info->type & KERR_CODE_MASK) {
+	case KERR_RETHROW:
+		name = CLASS_CNAME(OBJECT_CLASS((Hjava_lang_Object*)info->throwable));
+		break;
+	case KERR_OUT_OF_MEMORY:
+		name = "java.lang.OutOfMemoryError";
+		break;
+	default:
+		name = (info->classname != NULL) ? info->classname : "error";
+		break;
+	}
+	return (strdup(name));
+}
+
+/*
+ * Define all classes in a new loader and link them.  Returns the time
+ * spent linking, or a negative value if the loader cannot be made.
+ * With check set, every class must end as it did the last time.
+ */
+static double
+linkClasses(JNIEnv* env, benchClass* classes, int n, bool check,
+	    int* mismatches)
+{
+	struct timeval start;
+	struct timeval end;
+	jobject loader;
+	jclass cls;
+	errorInfo info;
+	char* result;
+	double secs;
+	int i;
+
+	loader = newLoader(env);
+	if (loader == NULL) {
+		return (-1.0);
+	}
+
+	secs = 0.0;
+	for (i = 0; i < n; i++) {
+		result = NULL;
+		cls = (*env)->DefineClass(env, classes[i].name, loader,
+					  (const jbyte*)classes[i].data,
+					  (jsize)classes[i].length);
+		if (cls == NULL) {
+			(*env)->ExceptionClear(env);
+			result = strdup("undefined");
+		}
+		else {
+			gettimeofday(&start, NULL);
+			if (!processClass((Hjava_lang_Class*)cls,
+					  CSTATE_LINKED, &info)) {
+				result = errorName(&info);
+				discardErrorInfo(&info);
+			}
+			gettimeofday(&end, NULL);
+			secs += (end.tv_sec - start.tv_sec)
+				+ (end.tv_usec - start.tv_usec) / 1000000.0;
+			(*env)->DeleteLocalRef(env, cls);
+		}
+
+		if (check
+		    && !(result == NULL && classes[i].result == NULL)
+		    && (result == NULL || classes[i].result == NULL
+			|| strcmp(result, classes[i].result) != 0)) {
+			fprintf(stderr, "%s: %s, was %s\n", classes[i].name,
+				result != NULL ? result : "linked",
+				classes[i].result != NULL
+				? classes[i].result : "linked");
+			(*mismatches)++;
+		}
+		free(classes[i].result);
+		classes[i].result = result;
+	}
+
+	(*env)->DeleteLocalRef(env, loader);
+	return (secs);
+}
+
+int
+main(int argc, char *argv[])
+{
+	KaffeVM_Arguments vmargs;
+	JavaVM* vm;
+	JNIEnv* env;
+	benchClass* classes;
+	jarFile* jar;
+	char* path;
+	double serial;
+	double pooled;
+	int mismatches;
+	int threads;
+	int n;
+
+	vmargs.version = JNI_VERSION_1_1;
+	JNI_GetDefaultJavaVMInitArgs(&vmargs);
+
+	/* set up libtool/libltdl dlopen emulation */
+	LTDL_SET_PRELOADED_SYMBOLS();
+
+	vmargs.bootClasspath = getenv(BOOTCLASSPATH);
+	/* Let the classes of a round be collected in the next one */
+	vmargs.enableClassGC = 1;
+
+	path = (argc > 1) ? argv[1] : findJar(vmargs.bootClasspath);
+	threads = (argc > 2) ? atoi(argv[2]) : 4;
+	if (path == NULL) {
+		fprintf(stderr, "no jar given and none on %s\n", BOOTCLASSPATH);
+		return (EXIT_SKIP);
+	}
+	if (threads <= 0) {
+		fprintf(stderr, "usage: %s [jar [threads]]\n", argv[0]);
+		return (EXIT_FAILURE);
+	}
+
+	KaffeVM_setVerifyThreads(threads);
+	if (JNI_CreateJavaVM(&vm, (void**)&env, &vmargs) < 0) {
+		fprintf(stderr, "Cannot create the Java VM\n");
+		return (EXIT_FAILURE);
+	}
+
+	jar = openJarFile(path);
+	if (jar == NULL) {
+		fprintf(stderr, "cannot open %s\n", path);
+		return (EXIT_FAILURE);
+	}
+	classes = calloc(jar->count, sizeof(benchClass));
+	n = loadClasses(jar, classes);
+	if (n < 0) {
+		return (EXIT_FAILURE);
+	}
+	if (n == 0) {
+		fprintf(stderr, "no classes outside of java/ in %s\n", path);
+		return (EXIT_SKIP);
+	}
+
+	mismatches = 0;
+	KaffeVM_setVerifyThreads(0);
+	if (linkClasses(env, classes, n, false, &mismatches) < 0.0) {
+		fprintf(stderr, "cannot create a class loader\n");
+		return (EXIT_FAILURE);
+	}
+	serial = linkClasses(env, classes, n, true, &mismatches);
+	KaffeVM_setVerifyThreads(threads);
+	pooled = linkClasses(env, classes, n, true, &mismatches);
+
+	printf("%s: %d classes\n", path, n);
+	printf("linked in %.3fs on one thread, %.3fs with %d verifier threads",
+	       serial, pooled, threads);
+	if (pooled > 0.0) {
+		printf(", speedup %.2f", serial / pooled);
+	}
+	printf("\n");
+
+	if (mismatches != 0) {
+		fprintf(stderr, "%d classes linked differently\n", mismatches);
+		return (EXIT_FAILURE);
+	}
+	return (EXIT_SUCCESS);
+}
@@ -0,0 +1,102 @@
+/*
+ * Class initialisers run once, and when the class is first used, even
+ * when later uses in the same method are not checked again.
+ */
+public class ClinitOnce {
+	static class A {
+		static int x = init("A", 1);
+		static int y = 2;
+
+		static int f() {
+			return x + y;
+		}
+	}
+
+	static class B {
+		static int x = init("B", 3);
+
+		static int g() {
+			System.out.println("B.g");
+			return x + h();
+		}
+
+		static int h() {
+			return x;
+		}
+	}
+
+	static class C {
+		static int x = init("C", 4);
+	}
+
+	static class D {
+		static int x = init("D", 5);
+	}
+
+	static class E {
+		static int x = init("E", 6);
+	}
+
+	static class F {
+		static int x = init("F", 7);
+
+		static void set(int v) {
+			x = v;
+		}
+	}
+
+	static int init(String name, int v) {
+		System.out.println(name + " init");
+		return v;
+	}
+
+	/* all uses of A are in one basic block */
+	static int same() {
+		System.out.println("before A");
+		int v = A.x + A.y + A.f() + A.x;
+		System.out.println("after A");
+		return v;
+	}
+
+	/* C is only used in a loop that never runs */
+	static int never(int n) {
+		int s = 0;
+		for (int i = 0; i < n; i++) {
+			s += C.x;
+		}
+		return s;
+	}
+
+	public static void main(String[] args) {
+		System.out.println("same: " + same());
+		System.out.println("same: " + same());
+		System.out.println("g: " + B.g());
+		System.out.println("never: " + never(0));
+		System.out.println("loop: " + never(3));
+		System.out.println("order: " + (D.x * 10 + E.x));
+		F.set(8);
+		F.set(F.x + 1);
+		System.out.println("F: " + F.x);
+	}
+}
+
+/* Expected Output:
+before A
+A init
+after A
+same: 7
+before A
+after A
+same: 7
+B init
+B.g
+g: 6
+never: 0
+C init
+loop: 12
+D init
+E init
+order: 56
+F init
+F: 9
+*/
@@ -0,0 +1,154 @@
+/*
+ * Array accesses in counted loops.  jit3 drops the bounds checks of
+ * a[i] in "for (i = 0; i < a.length; i++)"; every other index must
+ * still be checked.
+ */
+public class CountedLoopBounds {
+
+	static int sum(int[] a) {
+		int s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static void fill(Object[] a) {
+		for (int i = 0; i < a.length; i++) {
+			a[i] = "x" + i;
+		}
+	}
+
+	/* a[i + 1] runs past the end in the last iteration */
+	static int next(int[] a) {
+		int s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += a[i] + a[i + 1];
+		}
+		return s;
+	}
+
+	/* a[i - 1] is before the start in the first one */
+	static int previous(int[] a) {
+		int s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += a[i - 1];
+		}
+		return s;
+	}
+
+	/* b is shorter than the array bounding the loop */
+	static void copy(byte[] a, byte[] b) {
+		for (int i = 0; i < a.length; i++) {
+			b[i] = a[i];
+		}
+	}
+
+	/* the loop runs one past the end */
+	static long edge(long[] a) {
+		long s = 0;
+		for (int i = 0; i <= a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	/* the index starts out negative */
+	static double negative(double[] a) {
+		double s = 0;
+		for (int i = -1; i < a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	/* the index counts down */
+	static char down(char[] a) {
+		char c = 0;
+		for (int i = 0; i < a.length; i--) {
+			c = a[i];
+		}
+		return c;
+	}
+
+	/* the loop starts past the end */
+	static int late(int[] a) {
+		int s = 0;
+		for (int i = 7; i < a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static void report(String name, Throwable t) {
+		System.out.println(name + ": " + t.getClass().getName());
+	}
+
+	public static void main(String[] args) {
+		int[] ints = { 1, 2, 3, 4, 5 };
+		Object[] objs = new Object[3];
+
+		System.out.println("sum: " + sum(ints));
+		System.out.println("sum of none: " + sum(new int[0]));
+		fill(objs);
+		System.out.println("fill: " + objs[0] + " " + objs[1] + " " + objs[2]);
+		System.out.println("late: " + late(ints));
+
+		try {
+			System.out.println("next: " + next(ints));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("next", e);
+		}
+		try {
+			System.out.println("previous: " + previous(ints));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("previous", e);
+		}
+
+		byte[] from = { 1, 2, 3, 4 };
+		byte[] to = new byte[2];
+		try {
+			copy(from, to);
+			System.out.println("copy: no exception");
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("copy", e);
+		}
+		System.out.println("copied: " + to[0] + " " + to[1]);
+
+		try {
+			System.out.println("edge: " + edge(new long[] { 1, 2, 3 }));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("edge", e);
+		}
+		try {
+			System.out.println("negative: " + negative(new double[] { 1.0 }));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("negative", e);
+		}
+		try {
+			System.out.println("down: " + (int)down(new char[] { 'a', 'b' }));
+		}
+		catch (ArrayIndexOutOfBoundsException e) {
+			report("down", e);
+		}
+	}
+}
+
+/* Expected Output:
+sum: 15
+sum of none: 0
+fill: x0 x1 x2
+late: 0
+next: java.lang.ArrayIndexOutOfBoundsException
+previous: java.lang.ArrayIndexOutOfBoundsException
+copy: java.lang.ArrayIndexOutOfBoundsException
+copied: 1 2
+edge: java.lang.ArrayIndexOutOfBoundsException
+negative: java.lang.ArrayIndexOutOfBoundsException
+down: java.lang.ArrayIndexOutOfBoundsException
+*/
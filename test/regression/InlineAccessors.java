@@ -0,0 +1,257 @@
+/*
+ * Calls to plain getters and setters are replaced by their bodies when
+ * only one method can be called.  They must still throw on a null
+ * receiver, must not be inlined where a subclass overrides them, and
+ * must read the field as it is at the time of the call.  Setters of
+ * every type of field are inlined, not just those of int fields.
+ */
+public class InlineAccessors {
+
+	static class Base {
+		protected int x;
+		final int y;
+
+		Base(int x) {
+			this.x = x;
+			System.out.println("y in Base: " + getY());
+			this.y = x * 10;
+			System.out.println("y after: " + getY());
+		}
+
+		/* may be inlined */
+		final int getX() {
+			return x;
+		}
+
+		final void setX(int v) {
+			x = v;
+		}
+
+		final int getY() {
+			return y;
+		}
+
+		/* overridden below */
+		int value() {
+			return x;
+		}
+
+		void store(int v) {
+			x = v;
+		}
+
+		private int secret() {
+			return x;
+		}
+
+		int viaPrivate() {
+			return secret();
+		}
+	}
+
+	static class Derived extends Base {
+		Derived(int x) {
+			super(x);
+			/* writes the field of Base the final getter reads */
+			this.x = x + 1;
+		}
+
+		int value() {
+			return -x;
+		}
+
+		void store(int v) {
+			x = v * 2;
+		}
+
+		int superValue() {
+			return super.value();
+		}
+
+		void bump() {
+			x += 100;
+		}
+	}
+
+	static final class Leaf {
+		private int z;
+
+		int getZ() {
+			return z;
+		}
+
+		void setZ(int v) {
+			z = v;
+		}
+
+		/* setters of every other kind of field */
+		private long l;
+		private float f;
+		private double d;
+		private String s;
+		private int[] a;
+
+		long getL() {
+			return l;
+		}
+
+		void setL(long v) {
+			l = v;
+		}
+
+		float getF() {
+			return f;
+		}
+
+		void setF(float v) {
+			f = v;
+		}
+
+		double getD() {
+			return d;
+		}
+
+		void setD(double v) {
+			d = v;
+		}
+
+		String getS() {
+			return s;
+		}
+
+		void setS(String v) {
+			s = v;
+		}
+
+		int[] getA() {
+			return a;
+		}
+
+		void setA(int[] v) {
+			a = v;
+		}
+	}
+
+	static int readValue(Base b) {
+		return b.value();
+	}
+
+	static void writeValue(Base b, int v) {
+		b.store(v);
+	}
+
+	public static void main(String[] args) {
+		Base b = new Base(1);
+		Derived d = new Derived(2);
+
+		System.out.println("getX: " + b.getX() + " " + d.getX());
+		d.bump();
+		System.out.println("after bump: " + d.getX());
+		d.setX(7);
+		System.out.println("setX: " + d.getX() + " " + d.value());
+
+		System.out.println("value: " + readValue(b) + " " + readValue(d));
+		System.out.println("super: " + d.superValue());
+		writeValue(b, 5);
+		writeValue(d, 5);
+		System.out.println("store: " + b.getX() + " " + d.getX());
+		System.out.println("private: " + b.viaPrivate() + " " + d.viaPrivate());
+		System.out.println("getY: " + b.getY() + " " + d.getY());
+
+		Leaf leaf = new Leaf();
+		leaf.setZ(9);
+		System.out.println("leaf: " + leaf.getZ());
+		leaf.setL(0x123456789abcdef0L);
+		leaf.setF(2.5f);
+		leaf.setD(1.5e300);
+		leaf.setS("text");
+		leaf.setA(new int[] { 4, 5 });
+		System.out.println("long: " + Long.toHexString(leaf.getL()));
+		System.out.println("float: " + leaf.getF());
+		System.out.println("double: " + leaf.getD());
+		System.out.println("string: " + leaf.getS());
+		System.out.println("array: " + leaf.getA()[0] + " " + leaf.getA()[1]);
+		leaf.setS(null);
+		leaf.setA(null);
+		System.out.println("nulls: " + leaf.getS() + " " + leaf.getA());
+
+		Base nb = null;
+		Leaf nl = null;
+		try {
+			System.out.println(nb.getX());
+		}
+		catch (NullPointerException e) {
+			System.out.println("null getX: " + e.getClass().getName());
+		}
+		try {
+			nb.setX(1);
+			System.out.println("null setX: no exception");
+		}
+		catch (NullPointerException e) {
+			System.out.println("null setX: " + e.getClass().getName());
+		}
+		try {
+			System.out.println(nl.getZ());
+		}
+		catch (NullPointerException e) {
+			System.out.println("null getZ: " + e.getClass().getName());
+		}
+		try {
+			nl.setZ(1);
+			System.out.println("null setZ: no exception");
+		}
+		catch (NullPointerException e) {
+			System.out.println("null setZ: " + e.getClass().getName());
+		}
+		try {
+			nl.setL(1L);
+			System.out.println("null setL: no exception");
+		}
+		catch (NullPointerException e) {
+			System.out.println("null setL: " + e.getClass().getName());
+		}
+		try {
+			nl.setD(1.0);
+			System.out.println("null setD: no exception");
+		}
+		catch (NullPointerException e) {
+			System.out.println("null setD: " + e.getClass().getName());
+		}
+		try {
+			nl.setS("x");
+			System.out.println("null setS: no exception");
+		}
+		catch (NullPointerException e) {
+			System.out.println("null setS: " + e.getClass().getName());
+		}
+	}
+}
+
+/* Expected Output:
+y in Base: 0
+y after: 10
+y in Base: 0
+y after: 20
+getX: 1 3
+after bump: 103
+setX: 7 -7
+value: 1 -7
+super: 7
+store: 5 10
+private: 5 10
+getY: 10 20
+leaf: 9
+long: 123456789abcdef0
+float: 2.5
+double: 1.5E300
+string: text
+array: 4 5
+nulls: null null
+null getX: java.lang.NullPointerException
+null setX: java.lang.NullPointerException
+null getZ: java.lang.NullPointerException
+null setZ: java.lang.NullPointerException
+null setL: java.lang.NullPointerException
+null setD: java.lang.NullPointerException
+null setS: java.lang.NullPointerException
+*/
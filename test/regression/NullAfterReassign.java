@@ -0,0 +1,113 @@
+/*
+ * A reference that was checked for null once must be checked again
+ * after it is reassigned, directly or with the result of a call.
+ */
+public class NullAfterReassign {
+	int x;
+	NullAfterReassign next;
+
+	NullAfterReassign(int x) {
+		this.x = x;
+	}
+
+	static NullAfterReassign make(boolean really) {
+		return really ? new NullAfterReassign(2) : null;
+	}
+
+	int get() {
+		return x;
+	}
+
+	/* reads this over and over; this is never null */
+	int twice() {
+		return x + get() + this.x;
+	}
+
+	static void assigned() {
+		NullAfterReassign o = new NullAfterReassign(1);
+		int s = o.x;
+		o = null;
+		s += o.x;
+		System.out.println("assigned: no exception " + s);
+	}
+
+	static void called() {
+		NullAfterReassign o = make(true);
+		int s = o.x;
+		o = make(false);
+		s += o.x;
+		System.out.println("called: no exception " + s);
+	}
+
+	static void invoked() {
+		NullAfterReassign o = make(true);
+		int s = o.get();
+		o = make(false);
+		s += o.get();
+		System.out.println("invoked: no exception " + s);
+	}
+
+	static void stored() {
+		NullAfterReassign o = make(true);
+		o.x = 3;
+		o = o.next;
+		o.x = 4;
+		System.out.println("stored: no exception");
+	}
+
+	static int walk(NullAfterReassign o) {
+		int s = 0;
+		for (int i = 0; i < 5; i++) {
+			s += o.x;
+			o = o.next;
+		}
+		return s;
+	}
+
+	public static void main(String[] args) {
+		System.out.println("twice: " + new NullAfterReassign(5).twice());
+		try {
+			assigned();
+		}
+		catch (NullPointerException e) {
+			System.out.println("assigned: " + e.getClass().getName());
+		}
+		try {
+			called();
+		}
+		catch (NullPointerException e) {
+			System.out.println("called: " + e.getClass().getName());
+		}
+		try {
+			invoked();
+		}
+		catch (NullPointerException e) {
+			System.out.println("invoked: " + e.getClass().getName());
+		}
+		try {
+			stored();
+		}
+		catch (NullPointerException e) {
+			System.out.println("stored: " + e.getClass().getName());
+		}
+
+		NullAfterReassign list = new NullAfterReassign(1);
+		list.next = new NullAfterReassign(2);
+		list.next.next = new NullAfterReassign(3);
+		try {
+			System.out.println("walk: " + walk(list));
+		}
+		catch (NullPointerException e) {
+			System.out.println("walk: " + e.getClass().getName());
+		}
+	}
+}
+
+/* Expected Output:
+twice: 15
+assigned: java.lang.NullPointerException
+called: java.lang.NullPointerException
+invoked: java.lang.NullPointerException
+stored: java.lang.NullPointerException
+walk: java.lang.NullPointerException
+*/